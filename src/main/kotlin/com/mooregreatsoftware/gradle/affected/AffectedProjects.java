@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.affected;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import com.mooregreatsoftware.gradle.util.Integration;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.tasks.SourceSet;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.mooregreatsoftware.gradle.util.ProjectUtilsKt.sourceSets;
+
+/**
+ * Works out which projects a change affects: the projects that own the files changed since the base revision (see
+ * {@link #BASE_PROPERTY}), plus every project that depends on them, directly or not.
+ * <p>
+ * A change to the build itself (a ".gradle" file, "gradle.properties", or anything under "gradle/" or "buildSrc/"
+ * of the root project) affects every project.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AffectedProjects {
+
+    /**
+     * Project property for the revision to compare against. Defaults to {@value #DEFAULT_BASE}.
+     */
+    public static final String BASE_PROPERTY = "defaults.affectedBase";
+
+    public static final String DEFAULT_BASE = "origin/master";
+
+    private static final String CHANGED_FILES_STATE_KEY = AffectedProjects.class.getName() + ".changedFiles";
+
+
+    private AffectedProjects() {
+    }
+
+
+    /**
+     * The projects affected by the changes in the root project's git repository since the base revision. If the
+     * changes can't be found (see {@link #changedFiles(Project)}), that's all of the projects.
+     */
+    public static Set<Project> affectedProjects(Project project) {
+        val rootProject = project.getRootProject();
+        val changedFiles = changedFiles(rootProject);
+        if (changedFiles == null) {
+            if (!Integration.GRADLE_GIT.isAvailable()) {
+                rootProject.getLogger().warn("Can not find the changes, so all the projects are affected: to find " +
+                    "them, {}", Integration.GRADLE_GIT.howToEnable());
+            }
+            else {
+                rootProject.getLogger().warn("Can not find the changes since \"{}\", so all the projects are affected",
+                    base(rootProject));
+            }
+            return new LinkedHashSet<>(rootProject.getAllprojects());
+        }
+        rootProject.getLogger().info("Changed since {}: {}", base(rootProject), changedFiles);
+        return withDependents(owners(rootProject, changedFiles));
+    }
+
+
+    /**
+     * The files changed since the base revision, or null if there isn't a git repository (or gradle-git to read it)
+     * or the changes couldn't be found. It's only worked out once for the build (and kept in the {@link BuildState}).
+     */
+    public static @Nullable Set<File> changedFiles(Project project) {
+        if (!Integration.GRADLE_GIT.isAvailable()) return null;
+        val rootProject = project.getRootProject();
+        return BuildState.<@Nullable Set<File>>buildState(rootProject, CHANGED_FILES_STATE_KEY, () -> findChangedFiles(rootProject));
+    }
+
+
+    private static @Nullable Set<File> findChangedFiles(Project rootProject) {
+        val base = base(rootProject);
+        try {
+            val changedFiles = GitChanges.changedFiles(rootProject, base);
+            if (changedFiles == null) rootProject.getLogger().info("There is no git repository to find the changes in");
+            return changedFiles;
+        }
+        catch (GradleException e) {
+            rootProject.getLogger().warn("Could not find the changes since \"{}\": {}", base,
+                e.getCause() != null ? e.getCause().toString() : e.getMessage());
+            return null;
+        }
+    }
+
+
+    private static String base(Project rootProject) {
+        return rootProject.hasProperty(BASE_PROPERTY) ? String.valueOf(rootProject.property(BASE_PROPERTY)) : DEFAULT_BASE;
+    }
+
+
+    /**
+     * The projects that own the files: a file under a source directory belongs to that source set's project;
+     * otherwise it belongs to the project with the deepest directory it's in. A change to the build itself means
+     * every project.
+     */
+    static Set<Project> owners(Project rootProject, Collection<File> files) {
+        val sourceDirs = sourceDirs(rootProject);
+        val projectDirs = new HashMap<Path, Project>();
+        rootProject.getAllprojects().forEach(prj -> projectDirs.put(prj.getProjectDir().toPath(), prj));
+
+        val owners = new LinkedHashSet<Project>();
+        for (File file : files) {
+            if (isBuildFile(rootProject, file)) return new LinkedHashSet<>(rootProject.getAllprojects());
+            val fromSource = deepest(sourceDirs, file.toPath());
+            val owner = fromSource != null ? fromSource : deepest(projectDirs, file.toPath());
+            if (owner != null) owners.add(owner);
+        }
+        return owners;
+    }
+
+
+    private static @Nullable Project deepest(Map<Path, Project> dirs, Path file) {
+        Path dir = file.getParent();
+        while (dir != null) {
+            val project = dirs.get(dir);
+            if (project != null) return project;
+            dir = dir.getParent();
+        }
+        return null;
+    }
+
+
+    private static Map<Path, Project> sourceDirs(Project rootProject) {
+        val dirs = new HashMap<Path, Project>();
+        for (Project prj : rootProject.getAllprojects()) {
+            val sourceSets = sourceSets(prj.getConvention());
+            if (sourceSets == null) continue;
+            for (SourceSet sourceSet : sourceSets) {
+                sourceSet.getAllSource().getSrcDirs().forEach(dir -> dirs.put(dir.toPath(), prj));
+            }
+        }
+        return dirs;
+    }
+
+
+    /**
+     * Is the file part of the build as a whole: the root build script or properties, or something under "gradle"
+     * or "buildSrc"?
+     */
+    public static boolean isBuildFile(Project rootProject, File file) {
+        val rootDir = rootProject.getProjectDir().toPath();
+        val path = file.toPath();
+        if (!path.startsWith(rootDir)) return false;
+        val relative = rootDir.relativize(path);
+        val first = relative.getName(0).toString();
+        val name = path.getFileName().toString();
+        return first.equals("gradle") || first.equals("buildSrc") ||
+            (relative.getNameCount() == 1 && (name.endsWith(".gradle") || name.equals("gradle.properties")));
+    }
+
+
+    /**
+     * The projects, and every project that depends on them (directly or not) through a project dependency.
+     */
+    static Set<Project> withDependents(Set<Project> projects) {
+        if (projects.isEmpty()) return projects;
+        val dependents = new HashMap<Project, Set<Project>>();
+        for (Project prj : projects.iterator().next().getRootProject().getAllprojects()) {
+            prj.getConfigurations().forEach(conf ->
+                conf.getDependencies().withType(ProjectDependency.class).forEach(dependency ->
+                    dependents.computeIfAbsent(dependency.getDependencyProject(), p -> new LinkedHashSet<>()).add(prj)));
+        }
+
+        val affected = new LinkedHashSet<Project>(projects);
+        val toVisit = new ArrayDeque<Project>(projects);
+        while (!toVisit.isEmpty()) {
+            val prj = toVisit.pop();
+            for (Project dependent : dependents.getOrDefault(prj, new LinkedHashSet<>())) {
+                if (affected.add(dependent)) toVisit.push(dependent);
+            }
+        }
+        return affected;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.affected;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.language.base.plugins.LifecycleBasePlugin;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * Runs "build" in just the projects that {@link AffectedProjects} says the changes since the base revision affect.
+ * <p>
+ * The affected projects are only worked out when Gradle builds the task graph, so the git repository is not
+ * looked at unless this task is run.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BuildAffectedTask extends DefaultTask {
+    public static final String TASK_NAME = "buildAffected";
+
+    private @Nullable Set<Project> affected;
+
+
+    public BuildAffectedTask() {
+        setDescription("Builds the projects affected by the changes since \"" + AffectedProjects.BASE_PROPERTY +
+            "\" (default \"" + AffectedProjects.DEFAULT_BASE + "\"), and the projects that depend on them");
+        setGroup(LifecycleBasePlugin.BUILD_GROUP);
+        dependsOn((Callable<List<Task>>)this::buildTasks);
+    }
+
+
+    /**
+     * Adds the task to the project, unless it's already there.
+     */
+    public static void register(Project project) {
+        if (project.getTasks().findByName(TASK_NAME) == null) {
+            project.getTasks().create(TASK_NAME, BuildAffectedTask.class);
+        }
+    }
+
+
+    /**
+     * The affected projects (worked out the first time they are asked for).
+     */
+    public synchronized Set<Project> getAffected() {
+        if (affected == null) affected = AffectedProjects.affectedProjects(getProject());
+        return affected;
+    }
+
+
+    private List<Task> buildTasks() {
+        return getAffected().stream().
+            map(prj -> prj.getTasks().findByName(LifecycleBasePlugin.BUILD_TASK_NAME)).
+            filter(task -> task != null).
+            collect(Collectors.toList());
+    }
+
+
+    @TaskAction
+    public void report() {
+        val affected = getAffected();
+        getLogger().lifecycle("Built the {} affected of {} projects: {}", affected.size(),
+            getProject().getAllprojects().size(),
+            affected.stream().map(Project::getPath).sorted().collect(Collectors.joining(", ")));
+    }
+
+}
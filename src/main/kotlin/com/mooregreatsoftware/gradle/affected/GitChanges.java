@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.affected;
+
+import com.mooregreatsoftware.gradle.util.GrGitUtils;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Reads the changes from the git repository with JGit. Everything that refers to JGit is kept here, so that
+ * {@link AffectedProjects} can be loaded (and used) without gradle-git on the classpath; this is only loaded once
+ * {@link com.mooregreatsoftware.gradle.util.Integration#GRADLE_GIT} is known to be available.
+ */
+final class GitChanges {
+
+    private GitChanges() {
+    }
+
+
+    /**
+     * The files changed since HEAD branched from the base revision, plus the uncommitted changes, or null if there
+     * isn't a git repository.
+     *
+     * @throws GradleException if the changes couldn't be found
+     */
+    static @Nullable Set<File> changedFiles(Project rootProject, String base) {
+        val grgit = GrGitUtils.grgit(rootProject);
+        if (grgit == null) return null;
+
+        try {
+            val workTree = grgit.getRepository().getRootDir().toPath();
+            val changedFiles = new LinkedHashSet<File>();
+            changedPaths(grgit.getRepository().getJgit(), base).forEach(path -> changedFiles.add(workTree.resolve(path).toFile()));
+            return Collections.unmodifiableSet(changedFiles);
+        }
+        catch (IOException | GitAPIException e) {
+            throw new GradleException("Could not find the changes since \"" + base + "\"", e);
+        }
+    }
+
+
+    /**
+     * The paths (relative to the top of the working tree) changed since HEAD branched from the base revision, so a
+     * change that is only on the base branch doesn't count, plus the uncommitted changes (not counting ignored
+     * files).
+     */
+    static Set<String> changedPaths(Git git, String base) throws IOException, GitAPIException {
+        val repository = git.getRepository();
+        val baseId = repository.resolve(base);
+        if (baseId == null) {
+            throw new GradleException("\"" + base + "\" is not a known revision (see \"" +
+                AffectedProjects.BASE_PROPERTY + "\")");
+        }
+
+        val paths = new LinkedHashSet<String>();
+        val head = repository.resolve("HEAD");
+        if (head != null) {
+            try (ObjectReader reader = repository.newObjectReader()) {
+                val diff = git.diff().setShowNameAndStatusOnly(true).
+                    setOldTree(treeParser(reader, mergeBase(repository, baseId, head))).
+                    setNewTree(treeParser(reader, head));
+                for (DiffEntry entry : diff.call()) {
+                    if (!entry.getOldPath().equals(DiffEntry.DEV_NULL)) paths.add(entry.getOldPath());
+                    if (!entry.getNewPath().equals(DiffEntry.DEV_NULL)) paths.add(entry.getNewPath());
+                }
+            }
+        }
+
+        val status = git.status().call();
+        paths.addAll(status.getAdded());
+        paths.addAll(status.getChanged());
+        paths.addAll(status.getModified());
+        paths.addAll(status.getRemoved());
+        paths.addAll(status.getMissing());
+        paths.addAll(status.getUntracked());
+        return paths;
+    }
+
+
+    private static ObjectId mergeBase(Repository repository, ObjectId baseId, ObjectId head) throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(baseId));
+            walk.markStart(walk.parseCommit(head));
+            val mergeBase = walk.next();
+            return mergeBase == null ? baseId : mergeBase;
+        }
+    }
+
+
+    /**
+     * A parser for the tree of the commit, reading with the reader (which the caller closes once the parser is done).
+     */
+    private static CanonicalTreeParser treeParser(ObjectReader reader, ObjectId commitId) throws IOException {
+        try (RevWalk walk = new RevWalk(reader)) {
+            val parser = new CanonicalTreeParser();
+            parser.reset(reader, walk.parseCommit(commitId).getTree().getId());
+            return parser;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.analysis;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import lombok.val;
+import org.gradle.api.Project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares the classes that compiled code refers to with the classes in its dependencies.
+ * <p>
+ * A declared dependency none of whose classes are referred to is "unused": it's only making the compile classpath
+ * (and the consumers' classpaths) bigger. A dependency that only comes in transitively, but whose classes are
+ * referred to directly, is "undeclared": the code works only as long as whatever brings it in keeps doing so.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DependencyAnalysis {
+    private static final String STATE_KEY = DependencyAnalysis.class.getName() + ".classes";
+
+    private final SortedSet<String> unused;
+    private final SortedMap<String, SortedSet<String>> undeclared;
+
+
+    private DependencyAnalysis(SortedSet<String> unused, SortedMap<String, SortedSet<String>> undeclared) {
+        this.unused = unused;
+        this.undeclared = undeclared;
+    }
+
+
+    /**
+     * Does the analysis.
+     *
+     * @param usedClasses the classes the code refers to
+     * @param declared    the classes in each of the dependencies the code is allowed to use directly, by module
+     *                    (e.g., "group:name")
+     * @param checked     the modules in "declared" to check for being unused; e.g., not the "compileOnly" ones,
+     *                    since annotation processors are rarely referred to from the compiled code
+     * @param transitive  the classes in each of the other dependencies on the classpath, by module
+     */
+    public static DependencyAnalysis analyze(Set<String> usedClasses, Map<String, Set<String>> declared,
+                                             Collection<String> checked, Map<String, Set<String>> transitive) {
+        val unused = new TreeSet<String>();
+        for (String module : checked) {
+            val classes = declared.getOrDefault(module, Collections.emptySet());
+            // something without classes (e.g., just resources) can't be judged by its classes
+            if (!classes.isEmpty() && classes.stream().noneMatch(usedClasses::contains)) unused.add(module);
+        }
+
+        val declaredClasses = declared.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+        val undeclared = new TreeMap<String, SortedSet<String>>();
+        transitive.forEach((module, classes) -> {
+            if (declared.containsKey(module)) return;
+            val used = classes.stream().
+                filter(usedClasses::contains).
+                filter(className -> !declaredClasses.contains(className)).
+                collect(Collectors.toCollection(TreeSet::new));
+            if (!used.isEmpty()) undeclared.put(module, used);
+        });
+
+        return new DependencyAnalysis(unused, undeclared);
+    }
+
+
+    /**
+     * The declared dependencies that aren't used.
+     */
+    public SortedSet<String> unused() {
+        return Collections.unmodifiableSortedSet(unused);
+    }
+
+
+    /**
+     * The transitive dependencies that are used directly, with the classes that are used.
+     */
+    public SortedMap<String, SortedSet<String>> undeclared() {
+        return Collections.unmodifiableSortedMap(undeclared);
+    }
+
+
+    public boolean hasProblems() {
+        return !unused.isEmpty() || !undeclared.isEmpty();
+    }
+
+
+    /**
+     * The names of the classes in a JAR or a directory of class files.
+     * <p>
+     * Only the names of the entries are read. They're cached for the build (in the {@link BuildState}) by the
+     * file's path, size and modification time, since the same JARs are on the classpaths of most source sets.
+     */
+    public static Set<String> classesIn(Project project, File file) {
+        val key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        return classesCache(project).computeIfAbsent(key, k -> readClassesIn(file));
+    }
+
+
+    private static Map<String, Set<String>> classesCache(Project project) {
+        return BuildState.buildState(project, STATE_KEY, ConcurrentHashMap::new);
+    }
+
+
+    static Set<String> readClassesIn(File file) {
+        try {
+            if (file.isDirectory()) {
+                val root = file.toPath();
+                try (Stream<Path> paths = Files.walk(root)) {
+                    return paths.
+                        map(path -> root.relativize(path).toString().replace(File.separatorChar, '/')).
+                        filter(DependencyAnalysis::isClassFile).
+                        map(DependencyAnalysis::toClassName).
+                        collect(Collectors.toSet());
+                }
+            }
+            if (!file.isFile()) return Collections.emptySet();
+            try (ZipFile zipFile = new ZipFile(file)) {
+                val classes = new HashSet<String>();
+                zipFile.stream().map(entry -> entry.getName()).filter(DependencyAnalysis::isClassFile).
+                    forEach(name -> classes.add(toClassName(name)));
+                return Collections.unmodifiableSet(classes);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not read the classes in " + file, e);
+        }
+    }
+
+
+    private static boolean isClassFile(String path) {
+        return path.endsWith(".class") && !path.endsWith("module-info.class") && !path.startsWith("META-INF/");
+    }
+
+
+    private static String toClassName(String path) {
+        return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.analysis;
+
+import com.mooregreatsoftware.gradle.bytecode.ClassReferences;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedDependency;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.JavaBasePlugin;
+import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.mooregreatsoftware.gradle.util.ProjectUtilsKt.sourceSets;
+import static org.apache.commons.lang.StringUtils.capitalize;
+
+/**
+ * Reports, for a source set, the declared dependencies its compiled classes don't use and the transitive
+ * dependencies they use without declaring them. (See {@link DependencyAnalysis}.) The report is written to
+ * "build/{@value #REPORT_DIR}/&lt;source set&gt;.txt".
+ * <p>
+ * The compiled classes and the compile classpath are the inputs, so it's up-to-date (and costs nothing) unless one of
+ * them changed. It's only part of "check" if "{@value #CHECK_PROPERTY}" is true, and if "{@value #FAIL_PROPERTY}" is
+ * true, any problem fails the build.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DependencyAnalysisTask extends DefaultTask {
+    /**
+     * Project property to make "check" depend on the tasks.
+     */
+    public static final String CHECK_PROPERTY = "defaults.dependencyAnalysis";
+
+    /**
+     * Project property to make problems fail the build instead of only being reported.
+     */
+    public static final String FAIL_PROPERTY = "defaults.failOnDependencyProblems";
+
+    public static final String REPORT_DIR = "reports/defaults-dependencies";
+
+    private @Nullable SourceSet sourceSet;
+    private boolean failOnViolation;
+    private @Nullable File reportFile;
+
+
+    public DependencyAnalysisTask() {
+        failOnViolation = getProject().hasProperty(FAIL_PROPERTY) &&
+            Boolean.parseBoolean(String.valueOf(getProject().property(FAIL_PROPERTY)).trim());
+        setGroup(JavaBasePlugin.VERIFICATION_GROUP);
+    }
+
+
+    /**
+     * Adds a task for each source set of the project (e.g., "analyzeDependencies" and "analyzeTestDependencies"),
+     * unless it's already there, and makes "check" depend on it if "{@value #CHECK_PROPERTY}" is true.
+     */
+    public static void register(Project project) {
+        val sourceSets = sourceSets(project.getConvention());
+        if (sourceSets == null) return;
+        val partOfCheck = project.hasProperty(CHECK_PROPERTY) &&
+            Boolean.parseBoolean(String.valueOf(project.property(CHECK_PROPERTY)).trim());
+        sourceSets.all(sourceSet -> {
+            val taskName = sourceSet.getTaskName("analyze", "dependencies");
+            if (project.getTasks().findByName(taskName) != null) return;
+            val task = project.getTasks().create(taskName, DependencyAnalysisTask.class);
+            task.setSourceSet(sourceSet);
+            val check = project.getTasks().findByName(JavaBasePlugin.CHECK_TASK_NAME);
+            if (partOfCheck && check != null) check.dependsOn(task);
+        });
+    }
+
+
+    public void setSourceSet(SourceSet sourceSet) {
+        this.sourceSet = sourceSet;
+        this.reportFile = new File(getProject().getBuildDir(), REPORT_DIR + "/" + sourceSet.getName() + ".txt");
+        setDescription("Looks for unused and undeclared dependencies of the " + sourceSet.getName() + " classes");
+        dependsOn(sourceSet.getClassesTaskName());
+    }
+
+
+    private SourceSet sourceSet() {
+        if (sourceSet == null) throw new IllegalStateException("The source set has not been set for " + getPath());
+        return sourceSet;
+    }
+
+
+    @InputFiles
+    public FileCollection getClasses() {
+        return sourceSet().getOutput();
+    }
+
+
+    @InputFiles
+    public FileCollection getClasspath() {
+        return compileClasspath();
+    }
+
+
+    @Input
+    public boolean isFailOnViolation() {
+        return failOnViolation;
+    }
+
+
+    public void setFailOnViolation(boolean failOnViolation) {
+        this.failOnViolation = failOnViolation;
+    }
+
+
+    @OutputFile
+    public @Nullable File getReportFile() {
+        return reportFile;
+    }
+
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+
+    @TaskAction
+    public void analyze() {
+        val declared = new HashMap<String, Set<String>>();
+        val transitive = new HashMap<String, Set<String>>();
+        val firstLevel = compileClasspath().getResolvedConfiguration().getLenientConfiguration().
+            getFirstLevelModuleDependencies(Specs.SATISFIES_ALL);
+        for (ResolvedDependency dependency : firstLevel) {
+            declared.merge(moduleKey(dependency), moduleClasses(dependency), DependencyAnalysisTask::union);
+        }
+        val toVisit = new ArrayDeque<ResolvedDependency>(firstLevel);
+        val visited = new HashSet<ResolvedDependency>();
+        while (!toVisit.isEmpty()) {
+            val dependency = toVisit.pop();
+            if (!visited.add(dependency)) continue;
+            if (!firstLevel.contains(dependency)) {
+                transitive.merge(moduleKey(dependency), moduleClasses(dependency), DependencyAnalysisTask::union);
+            }
+            toVisit.addAll(dependency.getChildren());
+        }
+
+        val analysis = DependencyAnalysis.analyze(usedClasses(), declared, checkedModules(), transitive);
+        val report = report(analysis);
+        val file = reportFile;
+        if (file != null) {
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                throw new GradleException("Could not write " + file, e);
+            }
+        }
+
+        if (!analysis.hasProblems()) return;
+        if (failOnViolation) {
+            throw new GradleException("Dependency problems in the " + sourceSet().getName() + " classes of " +
+                getProject() + ":\n" + report);
+        }
+        getLogger().lifecycle("Dependency problems in the {} classes of {} (see {}):\n{}",
+            sourceSet().getName(), getProject(), file, report);
+    }
+
+
+    /**
+     * The classes referred to by the source set's compiled classes, other than themselves.
+     */
+    private Set<String> usedClasses() {
+        val own = new HashSet<String>();
+        val used = new HashSet<String>();
+        getClasses().getAsFileTree().matching(pattern -> pattern.include("**/*.class")).visit(details -> {
+            if (details.isDirectory()) return;
+            try {
+                val references = ClassReferences.read(details.getFile());
+                own.add(references.className());
+                used.addAll(references.references());
+            }
+            catch (IOException e) {
+                throw new GradleException("Could not read " + details.getFile(), e);
+            }
+        });
+        used.removeAll(own);
+        return used;
+    }
+
+
+    /**
+     * The modules declared directly for the source set (not inherited from another source set, and not
+     * "compileOnly"), which are the ones that are checked for being unused.
+     */
+    Set<String> checkedModules() {
+        val checked = new LinkedHashSet<String>();
+        for (String baseName : new String[]{"compile", "api", "implementation"}) {
+            val configuration = getProject().getConfigurations().findByName(configurationName(baseName));
+            if (configuration == null) continue;
+            for (Dependency dependency : configuration.getDependencies()) {
+                checked.add(dependency.getGroup() + ":" + dependency.getName());
+            }
+        }
+        return checked;
+    }
+
+
+    private Configuration compileClasspath() {
+        val configurations = getProject().getConfigurations();
+        val compileClasspath = configurations.findByName(configurationName("compileClasspath"));
+        return compileClasspath != null ? compileClasspath : configurations.getByName(sourceSet().getCompileConfigurationName());
+    }
+
+
+    /**
+     * The name of the source set's configuration; e.g., "compileClasspath" for "main" and "testCompileClasspath" for
+     * "test".
+     */
+    private String configurationName(String baseName) {
+        val name = sourceSet().getName();
+        return SourceSet.MAIN_SOURCE_SET_NAME.equals(name) ? baseName : name + capitalize(baseName);
+    }
+
+
+    private static String moduleKey(ResolvedDependency dependency) {
+        return dependency.getModuleGroup() + ":" + dependency.getModuleName();
+    }
+
+
+    private Set<String> moduleClasses(ResolvedDependency dependency) {
+        val classes = new HashSet<String>();
+        for (ResolvedArtifact artifact : dependency.getModuleArtifacts()) {
+            classes.addAll(DependencyAnalysis.classesIn(getProject(), artifact.getFile()));
+        }
+        return classes;
+    }
+
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        val union = new HashSet<String>(a);
+        union.addAll(b);
+        return union;
+    }
+
+
+    static String report(DependencyAnalysis analysis) {
+        val text = new StringBuilder();
+        if (!analysis.hasProblems()) {
+            text.append("No unused or undeclared dependencies\n");
+        }
+        if (!analysis.unused().isEmpty()) {
+            text.append("Unused declared dependencies:\n");
+            analysis.unused().forEach(module -> text.append("  ").append(module).append("\n"));
+        }
+        if (!analysis.undeclared().isEmpty()) {
+            text.append("Used undeclared (transitive) dependencies:\n");
+            analysis.undeclared().forEach((module, classes) -> {
+                text.append("  ").append(module).append("\n");
+                classes.forEach(className -> text.append("      ").append(className).append("\n"));
+            });
+        }
+        return text.toString();
+    }
+
+}
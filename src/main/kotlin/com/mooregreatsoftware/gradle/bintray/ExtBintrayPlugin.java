@@ -18,6 +18,7 @@ package com.mooregreatsoftware.gradle.bintray;
 import com.google.common.io.Files;
 import com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt;
 import com.mooregreatsoftware.gradle.maven.MavenPublishPublications;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
 import com.mooregreatsoftware.gradle.util.LangUtils;
 import lombok.val;
 import org.apache.commons.beanutils.BeanUtilsBean;
@@ -77,7 +78,7 @@ public class ExtBintrayPlugin implements Plugin<Project> {
         LOG.info("Applying com.jfrog.bintray to {}", project);
         project.getPlugins().apply("com.jfrog.bintray");
 
-        project.afterEvaluate(proj -> init(proj));
+        ConfigurationProfiler.afterEvaluate(project, "ExtBintrayPlugin.init", proj -> init(proj));
     }
 
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import lombok.Data;
+import lombok.ToString;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Configuration options for the build cache; see {@link BuildCacheSettings}.
+ */
+@Data
+@ToString(exclude = "password")
+@SuppressWarnings("WeakerAccess")
+public class BuildCacheExtension {
+    /**
+     * Should the local (directory) cache be used?
+     */
+    private boolean localEnabled = true;
+
+    /**
+     * Where the local cache is kept. If not set, it's Gradle's default (in the Gradle user home).
+     */
+    private @Nullable Object localDirectory;
+
+    /**
+     * The URL of the HTTP remote cache (e.g., "https://cache.example.com/cache/"). If not set, there is no remote
+     * cache.
+     */
+    private @Nullable String remoteUrl;
+
+    /**
+     * Should what's built be stored in the remote cache? If not set, it's only stored when building on a CI server
+     * (see {@link BuildCacheSettings#isCi(java.util.Map)}), so the cache only has the results of clean builds.
+     */
+    private @Nullable Boolean push;
+
+    /**
+     * The user name for the remote cache. If not set, it's the "{@value #USER_PROPERTY}" property.
+     */
+    private @Nullable String username;
+
+    /**
+     * The password for the remote cache. If not set, it's the "{@value #KEY_PROPERTY}" property. It's left out of
+     * {@link #toString()}, so it doesn't end up in the logs.
+     */
+    private @Nullable String password;
+
+    /**
+     * Should the report of the cache hit rate by task type be written at the end of the build?
+     */
+    private boolean report = true;
+
+
+    /**
+     * The name to register this under as a Gradle extension.
+     */
+    public static final String NAME = "buildCache";
+
+    public static final String USER_PROPERTY = "buildCacheUser";
+
+    public static final String KEY_PROPERTY = "buildCacheKey";
+
+}
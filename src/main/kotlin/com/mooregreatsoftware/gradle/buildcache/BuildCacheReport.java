@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import lombok.val;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.Task;
+import org.gradle.api.execution.TaskExecutionListener;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.tasks.TaskState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts, by type of task, how many tasks came from the build cache and how many had to run, and writes the hit
+ * rates to "build/{@value #REPORT_DIR}/build-cache.txt" of the root project at the end of the build.
+ * <p>
+ * Only tasks that have outputs are counted, since those are the only ones that could come from the cache.
+ * Up-to-date tasks are counted separately: they didn't need the cache at all.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BuildCacheReport extends BuildAdapter implements TaskExecutionListener {
+    private static final Logger LOG = LoggerFactory.getLogger(BuildCacheReport.class);
+
+    public static final String REPORT_DIR = "reports/defaults-build-cache";
+
+    static final String FROM_CACHE = "FROM-CACHE";
+    static final String UP_TO_DATE = "UP-TO-DATE";
+
+    private final Map<String, Counts> countsByType = new TreeMap<>();
+
+
+    /**
+     * Starts counting for the build.
+     */
+    public static BuildCacheReport register(Gradle gradle) {
+        val report = new BuildCacheReport();
+        gradle.addListener(report);
+        return report;
+    }
+
+
+    @Override
+    public void beforeExecute(Task task) {
+    }
+
+
+    @Override
+    public void afterExecute(Task task, TaskState state) {
+        if (!task.getOutputs().getHasOutput()) return;
+        record(taskType(task), state.getSkipMessage(), state.getDidWork() && !state.getSkipped());
+    }
+
+
+    synchronized void record(String taskType, String skipMessage, boolean executed) {
+        val counts = countsByType.computeIfAbsent(taskType, type -> new Counts());
+        if (FROM_CACHE.equals(skipMessage)) counts.fromCache++;
+        else if (UP_TO_DATE.equals(skipMessage)) counts.upToDate++;
+        else if (executed) counts.executed++;
+    }
+
+
+    @Override
+    public void buildFinished(BuildResult result) {
+        val text = report();
+        if (text.isEmpty()) return;
+
+        val reportDir = new File(result.getGradle().getRootProject().getBuildDir(), REPORT_DIR).toPath();
+        try {
+            Files.createDirectories(reportDir);
+            Files.write(reportDir.resolve("build-cache.txt"), text.getBytes(StandardCharsets.UTF_8));
+            LOG.info("Build cache report written to {}", reportDir);
+        }
+        catch (IOException e) {
+            LOG.error("Could not write the build cache report to " + reportDir, e);
+        }
+    }
+
+
+    /**
+     * The report, with the task types that missed the cache the most first; empty if no tasks were counted.
+     */
+    synchronized String report() {
+        if (countsByType.isEmpty()) return "";
+
+        val entries = new ArrayList<Map.Entry<String, Counts>>(countsByType.entrySet());
+        entries.sort(Comparator.comparingInt((Map.Entry<String, Counts> e) -> e.getValue().executed).reversed());
+
+        val total = new Counts();
+        val text = new StringBuilder();
+        text.append("Build cache hit rate by task type\n\n");
+        text.append(String.format("  %8s  %8s  %8s  %10s  %s%n", "hit rate", "cached", "executed", "up-to-date", "task type"));
+        for (Map.Entry<String, Counts> entry : entries) {
+            text.append(entry.getValue().format(entry.getKey()));
+            total.add(entry.getValue());
+        }
+        text.append('\n').append(total.format("(all)"));
+        return text.toString();
+    }
+
+
+    static String taskType(Task task) {
+        val name = task.getClass().getName();
+        return name.endsWith("_Decorated") ? name.substring(0, name.length() - "_Decorated".length()) : name;
+    }
+
+
+    private static final class Counts {
+        int fromCache;
+        int executed;
+        int upToDate;
+
+
+        void add(Counts other) {
+            fromCache += other.fromCache;
+            executed += other.executed;
+            upToDate += other.upToDate;
+        }
+
+
+        String format(String label) {
+            val looked = fromCache + executed;
+            val hitRate = looked == 0 ? "-" : Math.round(100.0 * fromCache / looked) + "%";
+            return String.format("  %8s  %8d  %8d  %10d  %s%n", hitRate, fromCache, executed, upToDate, label);
+        }
+    }
+
+}
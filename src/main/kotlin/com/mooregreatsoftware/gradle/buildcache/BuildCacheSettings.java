@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import com.mooregreatsoftware.gradle.util.GradleCompat;
+import groovy.lang.MissingPropertyException;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.gradle.api.GradleException;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.invocation.Gradle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Applies a {@link BuildCacheExtension} to Gradle's build cache configuration: the local directory cache, and an
+ * optional HTTP remote cache that is only pushed to from CI unless told otherwise.
+ * <p>
+ * The build cache needs Gradle 3.5 or later; with an earlier version this does nothing (other than warn if a remote
+ * cache was asked for). The configuration is done reflectively, since the API being compiled against predates it.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BuildCacheSettings {
+    private static final Logger LOG = LoggerFactory.getLogger(BuildCacheSettings.class);
+
+    static final String HTTP_BUILD_CACHE_CLASS_NAME = "org.gradle.caching.http.HttpBuildCache";
+
+    /**
+     * Environment variables that CI servers set. ("CI" covers most hosted services; the others are for servers
+     * that don't set it.)
+     */
+    public static final List<String> CI_ENVIRONMENT_VARIABLES =
+        Arrays.asList("CI", "JENKINS_URL", "TEAMCITY_VERSION", "TF_BUILD", "BAMBOO_BUILDKEY", "BUILDKITE");
+
+
+    private BuildCacheSettings() {
+    }
+
+
+    public static void configure(Settings settings, BuildCacheExtension extension) {
+        if (!GradleCompat.isAtLeast("3.5")) {
+            if (extension.getRemoteUrl() != null) {
+                LOG.warn("Gradle {} does not have a build cache (3.5 or later is needed), so not using {}",
+                    settings.getGradle().getGradleVersion(), extension.getRemoteUrl());
+            }
+            return;
+        }
+
+        final Class<?> httpBuildCacheType;
+        try {
+            httpBuildCacheType = Class.forName(HTTP_BUILD_CACHE_CLASS_NAME, true, Settings.class.getClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            throw new GradleException("Could not load " + HTTP_BUILD_CACHE_CLASS_NAME, e);
+        }
+
+        configure(InvokerHelper.getProperty(settings, "buildCache"), extension,
+            name -> property(settings, name), System.getenv(), httpBuildCacheType);
+    }
+
+
+    /**
+     * @param buildCache         Gradle's "BuildCacheConfiguration"
+     * @param properties         looks up a project property, returning null if it's not set
+     * @param environment        the environment variables, for deciding if this is a CI build
+     * @param httpBuildCacheType the type of remote cache to create
+     */
+    static void configure(Object buildCache, BuildCacheExtension extension, Function<String, @Nullable Object> properties,
+                          Map<String, String> environment, Class<?> httpBuildCacheType) {
+        val local = InvokerHelper.getProperty(buildCache, "local");
+        InvokerHelper.setProperty(local, "enabled", extension.isLocalEnabled());
+        if (extension.getLocalDirectory() != null) {
+            InvokerHelper.setProperty(local, "directory", extension.getLocalDirectory());
+        }
+
+        val remoteUrl = extension.getRemoteUrl();
+        if (remoteUrl == null) return;
+
+        val remote = InvokerHelper.invokeMethod(buildCache, "remote", httpBuildCacheType);
+        InvokerHelper.setProperty(remote, "url", remoteUrl);
+
+        val explicitPush = extension.getPush();
+        val push = explicitPush != null ? explicitPush : isCi(environment);
+        InvokerHelper.setProperty(remote, "push", push);
+
+        val username = extension.getUsername() != null ? extension.getUsername() : properties.apply(BuildCacheExtension.USER_PROPERTY);
+        val password = extension.getPassword() != null ? extension.getPassword() : properties.apply(BuildCacheExtension.KEY_PROPERTY);
+        if (username != null && password != null) {
+            val credentials = InvokerHelper.getProperty(remote, "credentials");
+            InvokerHelper.setProperty(credentials, "username", username.toString());
+            InvokerHelper.setProperty(credentials, "password", password.toString());
+        }
+        else if (username != null || password != null) {
+            LOG.warn("Both \"{}\" and \"{}\" need to be set to use credentials for the remote build cache",
+                BuildCacheExtension.USER_PROPERTY, BuildCacheExtension.KEY_PROPERTY);
+        }
+
+        LOG.info("Using the remote build cache at {} ({})", remoteUrl, push ? "pushing to it" : "not pushing to it");
+    }
+
+
+    /**
+     * Is the build cache turned on for this build (e.g., with "--build-cache" or "org.gradle.caching=true")?
+     */
+    public static boolean isEnabled(Gradle gradle) {
+        return GradleCompat.isAtLeast("3.5") &&
+            Boolean.TRUE.equals(InvokerHelper.getProperty(gradle.getStartParameter(), "buildCacheEnabled"));
+    }
+
+
+    /**
+     * Is this build running on a CI server?
+     */
+    public static boolean isCi(Map<String, String> environment) {
+        return CI_ENVIRONMENT_VARIABLES.stream().anyMatch(name -> {
+            val value = environment.get(name);
+            return value != null && !value.isEmpty() && !value.equalsIgnoreCase("false");
+        });
+    }
+
+
+    /**
+     * The value of a property (from "gradle.properties", "-P", etc.) as seen by the settings, or null.
+     */
+    private static @Nullable Object property(Settings settings, String name) {
+        try {
+            return InvokerHelper.getProperty(settings, name);
+        }
+        catch (MissingPropertyException e) {
+            return null;
+        }
+    }
+
+}
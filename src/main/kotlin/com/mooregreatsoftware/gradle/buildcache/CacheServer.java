@@ -0,0 +1,313 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import com.sun.net.httpserver.BasicAuthenticator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small build cache node that speaks Gradle's HTTP build cache protocol: "GET /cache/&lt;key&gt;" returns the entry
+ * (or 404) and "PUT /cache/&lt;key&gt;" stores it. The entries are kept in a {@link LruCacheStore}.
+ * <p>
+ * Since builds unpack what they get from the cache as their own outputs, anyone who can store an entry can change
+ * what other builds produce. So with credentials, every request to the cache needs them (using HTTP Basic
+ * authentication, which Gradle's HTTP build cache supports); without credentials, entries can't be stored and the
+ * server only listens on a loopback address.
+ * <p>
+ * "GET /metrics" returns the request counts, bytes and throughput as plain text.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CacheServer implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheServer.class);
+
+    public static final String CACHE_PATH = "/cache/";
+
+    public static final String METRICS_PATH = "/metrics";
+
+    private final LruCacheStore store;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Metrics metrics = new Metrics();
+    private final boolean authenticated;
+
+
+    /**
+     * @throws IllegalArgumentException if there aren't credentials and the address isn't a loopback address
+     */
+    public CacheServer(LruCacheStore store, InetSocketAddress address, int threads,
+                       @Nullable String username, @Nullable String password) throws IOException {
+        this.authenticated = username != null && password != null;
+        if (!authenticated && (address.getAddress() == null || !address.getAddress().isLoopbackAddress())) {
+            throw new IllegalArgumentException("Not listening on " + address.getHostString() +
+                " without credentials: anyone who can reach it could change what the builds using it produce");
+        }
+
+        this.store = store;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        val cacheContext = server.createContext(CACHE_PATH, this::handleCache);
+        if (username != null && password != null) cacheContext.setAuthenticator(new Credentials(username, password));
+        server.createContext(METRICS_PATH, this::handleMetrics);
+    }
+
+
+    public void start() {
+        server.start();
+        LOG.info("Build cache node listening on {}", url());
+    }
+
+
+    /**
+     * The URL to use as the remote cache's URL.
+     */
+    public String url() {
+        val address = server.getAddress();
+        val host = address.getAddress().isAnyLocalAddress() ? "localhost" : address.getHostString();
+        return "http://" + host + ":" + address.getPort() + CACHE_PATH;
+    }
+
+
+    /**
+     * The request counts, bytes, throughput and size of the store, by name.
+     */
+    public Map<String, Object> metrics() {
+        return metrics.toMap(store);
+    }
+
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+
+    private void handleCache(HttpExchange exchange) throws IOException {
+        try {
+            val key = exchange.getRequestURI().getPath().substring(CACHE_PATH.length());
+            if (!LruCacheStore.isValidKey(key)) {
+                respond(exchange, 400);
+                return;
+            }
+
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    get(exchange, key);
+                    break;
+                case "PUT":
+                    if (authenticated) {
+                        put(exchange, key);
+                    }
+                    else {
+                        metrics.rejected.incrementAndGet();
+                        respond(exchange, 403);
+                    }
+                    break;
+                default:
+                    respond(exchange, 405);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to handle {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.toString());
+            respond(exchange, 500);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        val start = System.nanoTime();
+        val path = store.get(key);
+        if (path == null) {
+            metrics.misses.incrementAndGet();
+            respond(exchange, 404);
+            return;
+        }
+
+        try {
+            val size = Files.size(path);
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, size);
+            try (OutputStream body = exchange.getResponseBody()) {
+                Files.copy(path, body);
+            }
+            metrics.hits.incrementAndGet();
+            metrics.bytesOut.addAndGet(size);
+            metrics.getNanos.addAndGet(System.nanoTime() - start);
+        }
+        catch (NoSuchFileException e) {
+            // evicted while being read
+            metrics.misses.incrementAndGet();
+            respond(exchange, 404);
+        }
+    }
+
+
+    private void put(HttpExchange exchange, String key) throws IOException {
+        val start = System.nanoTime();
+        val counting = new CountingInputStream(exchange.getRequestBody());
+        val stored = store.put(key, counting);
+        if (stored) {
+            metrics.puts.incrementAndGet();
+            metrics.bytesIn.addAndGet(counting.count);
+            metrics.putNanos.addAndGet(System.nanoTime() - start);
+            respond(exchange, 201);
+        }
+        else {
+            metrics.rejected.incrementAndGet();
+            respond(exchange, 413);
+        }
+    }
+
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            val body = metrics.format(store).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+
+    /**
+     * Checks the HTTP Basic credentials of a request, taking the same time whether they match or not.
+     */
+    private static final class Credentials extends BasicAuthenticator {
+        private final byte[] username;
+        private final byte[] password;
+
+
+        Credentials(String username, String password) {
+            super("build-cache");
+            this.username = username.getBytes(StandardCharsets.UTF_8);
+            this.password = password.getBytes(StandardCharsets.UTF_8);
+        }
+
+
+        @Override
+        public boolean checkCredentials(String username, String password) {
+            val usernameMatches = MessageDigest.isEqual(this.username, username.getBytes(StandardCharsets.UTF_8));
+            val passwordMatches = MessageDigest.isEqual(this.password, password.getBytes(StandardCharsets.UTF_8));
+            return usernameMatches & passwordMatches;
+        }
+    }
+
+
+    /**
+     * Counts of what the server has done since it started.
+     */
+    private static final class Metrics {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong puts = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong getNanos = new AtomicLong();
+        final AtomicLong putNanos = new AtomicLong();
+
+
+        Map<String, Object> toMap(LruCacheStore store) {
+            val map = new LinkedHashMap<String, Object>();
+            map.put("gets", hits.get() + misses.get());
+            map.put("hits", hits.get());
+            map.put("misses", misses.get());
+            map.put("puts", puts.get());
+            map.put("rejectedPuts", rejected.get());
+            map.put("bytesOut", bytesOut.get());
+            map.put("bytesIn", bytesIn.get());
+            map.put("getMBPerSecond", mbPerSecond(bytesOut.get(), getNanos.get()));
+            map.put("putMBPerSecond", mbPerSecond(bytesIn.get(), putNanos.get()));
+            map.put("entries", store.entryCount());
+            map.put("storedBytes", store.totalBytes());
+            map.put("maxBytes", store.maxBytes());
+            return map;
+        }
+
+
+        String format(LruCacheStore store) {
+            val text = new StringBuilder();
+            toMap(store).forEach((name, value) -> text.append(name).append(' ').append(value).append('\n'));
+            return text.toString();
+        }
+
+
+        private static double mbPerSecond(long bytes, long nanos) {
+            return nanos == 0 ? 0.0 : Math.round(bytes / (1024.0 * 1024.0) / (nanos / 1e9) * 10) / 10.0;
+        }
+    }
+
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            val b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            val read = super.read(buffer, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+    }
+
+}
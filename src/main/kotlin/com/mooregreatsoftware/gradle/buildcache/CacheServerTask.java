@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link CacheServer} until the build is stopped (e.g., with Ctrl-C), so a few machines can share build cache
+ * results without running a separate product. Point the remote cache of the builds at the URL it logs.
+ * <p>
+ * By default it only listens on 127.0.0.1. To serve other machines, and to store entries at all, it needs
+ * credentials: {@link #getUsername()} and {@link #getPassword()}, which default to the same properties the builds
+ * use for the remote cache ("{@value BuildCacheExtension#USER_PROPERTY}" and
+ * "{@value BuildCacheExtension#KEY_PROPERTY}").
+ */
+@SuppressWarnings("WeakerAccess")
+public class CacheServerTask extends DefaultTask {
+    public static final String TASK_NAME = "defaultsCacheServer";
+
+    public static final int DEFAULT_PORT = 5071;
+
+    public static final long DEFAULT_MAX_BYTES = 5L * 1024 * 1024 * 1024;
+
+    private static final long METRICS_INTERVAL_MINUTES = 5;
+
+    private int port = DEFAULT_PORT;
+    private String host = "127.0.0.1";
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private File directory;
+    private @Nullable String username;
+    private @Nullable String password;
+
+
+    public CacheServerTask() {
+        directory = new File(getProject().getGradle().getGradleUserHomeDir(), "defaults-cache-server");
+        setDescription("Runs a build cache node for other builds to share");
+        setGroup("build setup");
+        // it serves requests; there's nothing for it to be up-to-date with
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+
+    /**
+     * Adds the task to the project, unless it's already there.
+     */
+    public static void register(Project project) {
+        if (project.getTasks().findByName(TASK_NAME) == null) {
+            project.getTasks().create(TASK_NAME, CacheServerTask.class);
+        }
+    }
+
+
+    public int getPort() {
+        return port;
+    }
+
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+
+    /**
+     * The address to listen on. Defaults to the loopback address; use "0.0.0.0" (with credentials) so other machines
+     * can use it.
+     */
+    public String getHost() {
+        return host;
+    }
+
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+
+    /**
+     * The most bytes of entries to keep; the least recently used entries are removed past that.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+
+    public int getThreads() {
+        return threads;
+    }
+
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+
+    /**
+     * Where the entries are kept. Defaults to "defaults-cache-server" in the Gradle user home.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * The user name the builds have to give. Defaults to the "{@value BuildCacheExtension#USER_PROPERTY}" property.
+     */
+    public @Nullable String getUsername() {
+        return username != null ? username : propertyValue(BuildCacheExtension.USER_PROPERTY);
+    }
+
+
+    public void setUsername(@Nullable String username) {
+        this.username = username;
+    }
+
+
+    /**
+     * The password the builds have to give. Defaults to the "{@value BuildCacheExtension#KEY_PROPERTY}" property.
+     */
+    public @Nullable String getPassword() {
+        return password != null ? password : propertyValue(BuildCacheExtension.KEY_PROPERTY);
+    }
+
+
+    public void setPassword(@Nullable String password) {
+        this.password = password;
+    }
+
+
+    private @Nullable String propertyValue(String name) {
+        return getProject().hasProperty(name) ? String.valueOf(getProject().property(name)) : null;
+    }
+
+
+    @TaskAction
+    public void serve() {
+        val username = getUsername();
+        val password = getPassword();
+        if (username == null || password == null) {
+            getLogger().warn("The build cache node has no credentials, so it only serves this machine and entries can't " +
+                "be stored. Set \"{}\" and \"{}\" to change that.", BuildCacheExtension.USER_PROPERTY,
+                BuildCacheExtension.KEY_PROPERTY);
+        }
+        try (CacheServer server = new CacheServer(new LruCacheStore(directory.toPath(), maxBytes),
+            new InetSocketAddress(host, port), threads, username, password)) {
+            server.start();
+            getLogger().lifecycle("Build cache node running at {} (entries in {}). Stop the build to stop it.",
+                server.url(), directory);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    TimeUnit.MINUTES.sleep(METRICS_INTERVAL_MINUTES);
+                    getLogger().lifecycle("Build cache node: {}", server.metrics());
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                getLogger().lifecycle("Build cache node stopped: {}", server.metrics());
+            }
+        }
+        catch (IOException | IllegalArgumentException e) {
+            throw new GradleException("Could not run the build cache node on " + host + ":" + port, e);
+        }
+    }
+
+}
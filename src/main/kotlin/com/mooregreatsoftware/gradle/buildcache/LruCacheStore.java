@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The entries of a {@link CacheServer}, on disk, with the least recently used ones removed once they take up more
+ * than the maximum number of bytes.
+ * <p>
+ * An entry is stored under its key, which Gradle computes by hashing the task's inputs, so the same inputs are always
+ * stored in the same place ("&lt;dir&gt;/&lt;first two characters&gt;/&lt;key&gt;"). Only the keys and sizes are kept
+ * in memory, in access order. A file's modification time is updated when it's read, so the order survives a restart.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LruCacheStore {
+    private static final Logger LOG = LoggerFactory.getLogger(LruCacheStore.class);
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-fA-F]{8,128}");
+
+    private static final String TMP_DIR = "tmp";
+
+    private final Path dir;
+    private final long maxBytes;
+
+    // key -> size, least recently used first
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+
+
+    public LruCacheStore(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir.resolve(TMP_DIR));
+        load();
+    }
+
+
+    public static boolean isValidKey(String key) {
+        return KEY_PATTERN.matcher(key).matches();
+    }
+
+
+    /**
+     * The file for the entry, or null if there isn't one. Marks the entry as used.
+     */
+    public @Nullable Path get(String key) {
+        synchronized (this) {
+            if (!index.containsKey(key)) return null;
+        }
+        val path = path(key);
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return path;
+        }
+        catch (IOException e) {
+            // removed from under us
+            synchronized (this) {
+                val size = index.remove(key);
+                if (size != null) totalBytes -= size;
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Stores the entry, replacing any existing one, then removes the least recently used entries if there are now
+     * too many bytes.
+     *
+     * @return false if the entry was too big to store at all
+     */
+    public boolean put(String key, InputStream content) throws IOException {
+        val tmp = Files.createTempFile(dir.resolve(TMP_DIR), key, ".tmp");
+        try {
+            val size = Files.copy(content, tmp, StandardCopyOption.REPLACE_EXISTING);
+            if (size > maxBytes) return false;
+
+            val path = path(key);
+            Files.createDirectories(path.getParent());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+                val previous = index.put(key, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                evict();
+            }
+            return true;
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+
+    public synchronized int entryCount() {
+        return index.size();
+    }
+
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+
+    private void evict() {
+        val iterator = index.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            val eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            try {
+                Files.deleteIfExists(path(eldest.getKey()));
+            }
+            catch (IOException e) {
+                LOG.warn("Could not remove cache entry {}: {}", eldest.getKey(), e.toString());
+            }
+        }
+    }
+
+
+    private Path path(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+
+    /**
+     * Rebuilds the index from what's on disk, oldest first.
+     */
+    private synchronized void load() throws IOException {
+        final List<Path> files;
+        try (Stream<Path> paths = Files.walk(dir, 2)) {
+            files = paths.
+                filter(path -> Files.isRegularFile(path) && !path.getParent().endsWith(TMP_DIR) && isValidKey(path.getFileName().toString())).
+                collect(Collectors.toCollection(ArrayList::new));
+        }
+        files.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+        for (Path file : files) {
+            val size = file.toFile().length();
+            index.put(file.getFileName().toString(), size);
+            totalBytes += size;
+        }
+        evict();
+        LOG.info("Loaded {} build cache entries ({} bytes) from {}", index.size(), totalBytes, dir);
+    }
+
+}
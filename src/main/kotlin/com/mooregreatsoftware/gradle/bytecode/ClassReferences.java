@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.bytecode;
+
+import lombok.val;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * The classes a class file refers to, read from its constant pool: the classes it names directly (superclass,
+ * interfaces, classes whose members it uses, etc.) and the classes in the descriptors and signatures of the
+ * members and annotations it declares or uses.
+ * <p>
+ * Only the constant pool is read, so this is fast, and a reference that the compiler inlined (a "static final"
+ * constant) is not seen.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ClassReferences {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\p{javaJavaIdentifierPart}/]+)[;<]");
+
+    private final String className;
+    private final Set<String> references;
+
+
+    private ClassReferences(String className, Set<String> references) {
+        this.className = className;
+        this.references = references;
+    }
+
+
+    /**
+     * The name of the class (e.g., "com.example.Outer$Inner").
+     */
+    public String className() {
+        return className;
+    }
+
+
+    /**
+     * The names of the other classes it refers to (e.g., "java.lang.String"), not including itself or arrays.
+     */
+    public Set<String> references() {
+        return Collections.unmodifiableSet(references);
+    }
+
+
+    public static ClassReferences read(File classFile) throws IOException {
+        try (InputStream in = Files.newInputStream(classFile.toPath())) {
+            return read(in);
+        }
+    }
+
+
+    public static ClassReferences read(InputStream inputStream) throws IOException {
+        val in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) throw new IOException("Not a class file");
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        val count = in.readUnsignedShort();
+        val utf8 = new String[count];
+        // for each Class entry, the index of the Utf8 entry with its name
+        val classNameIndexes = new int[count];
+        for (int i = 1; i < count; i++) {
+            val tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.readUnsignedShort();
+                    break;
+                case 15: // MethodHandle
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.readInt();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.readLong();
+                    i++; // takes two entries
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + " at entry " + i);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        val thisClass = in.readUnsignedShort();
+        val thisName = thisClass < count ? utf8[classNameIndexes[thisClass]] : null;
+        if (thisName == null) throw new IOException("The class does not have a name");
+        val className = toClassName(thisName);
+
+        val references = new TreeSet<String>();
+        for (int nameIndex : classNameIndexes) {
+            val name = nameIndex == 0 ? null : utf8[nameIndex];
+            if (name != null) addInternalName(references, name);
+        }
+        for (String value : utf8) {
+            if (value != null && looksLikeDescriptor(value)) {
+                val matcher = DESCRIPTOR_CLASS.matcher(value);
+                while (matcher.find()) references.add(toClassName(matcher.group(1)));
+            }
+        }
+        references.remove(className);
+        return new ClassReferences(className, references);
+    }
+
+
+    private static boolean looksLikeDescriptor(String value) {
+        return !value.isEmpty() && (value.charAt(0) == '(' || value.charAt(0) == 'L' || value.charAt(0) == '[' ||
+            value.charAt(0) == '<') && value.indexOf(';') > 0;
+    }
+
+
+    private static void addInternalName(Set<String> references, String internalName) {
+        if (internalName.startsWith("[")) {
+            val matcher = DESCRIPTOR_CLASS.matcher(internalName);
+            while (matcher.find()) references.add(toClassName(matcher.group(1)));
+        }
+        else {
+            references.add(toClassName(internalName));
+        }
+    }
+
+
+    static String toClassName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+}
@@ -15,25 +15,31 @@
  */
 package com.mooregreatsoftware.gradle.checkerframework;
 
-import com.mooregreatsoftware.gradle.util.JavacUtils.Option;
+import com.mooregreatsoftware.gradle.defaults.BuildProfile;
 import com.mooregreatsoftware.gradle.lang.AbstractAnnotationProcessorPlugin;
+import com.mooregreatsoftware.gradle.util.JavacUtils.Option;
 import com.mooregreatsoftware.gradle.util.ProjectUtilsKt;
 import com.mooregreatsoftware.gradle.util.UtilsKt;
 import kotlin.Unit;
 import lombok.val;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
-import org.gradle.api.Task;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.compile.JavaCompile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
-import static com.mooregreatsoftware.gradle.util.JavacUtils.createJavacArgs;
+import static com.mooregreatsoftware.gradle.defaults.BuildProfile.buildProfile;
+import static com.mooregreatsoftware.gradle.util.JavacSettings.javacSettings;
 import static com.mooregreatsoftware.gradle.util.JavacUtils.registerAnnotationProcessorOptions;
 import static com.mooregreatsoftware.gradle.util.JavacUtils.registerBootClasspath;
 import static java.util.Arrays.asList;
@@ -45,11 +51,16 @@ import static java.util.Collections.singletonList;
  */
 @SuppressWarnings("Convert2MethodRef")
 public class CheckerFrameworkPlugin extends AbstractAnnotationProcessorPlugin {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckerFrameworkPlugin.class);
 
     public static final String PLUGIN_ID = "com.mooregreatsoftware.checker-framework";
 
     public static final String CHECKERFRAMEWORK_NULLNESS_CHECKER = "org.checkerframework.checker.nullness.NullnessChecker";
 
+    // "skipUses=javaslang"
+    // remove warns to turn the checks into errors
+    private static final List<Option> PROCESSOR_OPTIONS = asList(new Option("warns", "true"), new Option("lint", "-cast:unsafe"));
+
 
     @Override
     protected String pluginId() {
@@ -66,58 +77,77 @@ public class CheckerFrameworkPlugin extends AbstractAnnotationProcessorPlugin {
 
     @Override
     protected void registerWithJavac(Project project) {
+        if (buildProfile(project) == BuildProfile.DEV) {
+            nullnessCheckTask(project);
+            return;
+        }
+
         super.registerWithJavac(project);
 
-        // "skipUses=javaslang"
-        // remove warns to turn the checks into errors
-        val options = asList(new Option("warns", "true"), new Option("lint", "-cast:unsafe"));
-        registerAnnotationProcessorOptions(project, options);
+        registerAnnotationProcessorOptions(project, PROCESSOR_OPTIONS);
 
         registerBootClasspath(project, bootClasspathFiles(project));
 
-        project.getTasks().withType(JavaCompile.class, it -> this.configureJavac(project, it));
+        if (UtilsKt.isBuggyJavac()) {
+            // set with the compiler arguments (see ExtJavaPlugin), before any task runs
+            val forkCompiler = new ForkCompilerAction(compilerLibraryConf(project));
+            project.getGradle().getTaskGraph().addTaskExecutionGraphListener(graph ->
+                project.getTasks().withType(JavaCompile.class, forkCompiler));
+        }
     }
 
 
-    private Task configureJavac(Project project, JavaCompile jcTask) {
-        return jcTask.doFirst(new ConfigCompilerAction(project));
+    /**
+     * Instead of adding the checker to every compile, compile the main source with it in a task of its own.
+     */
+    private void nullnessCheckTask(Project project) {
+        if (project.getTasks().findByName(NullnessCheckTask.TASK_NAME) != null) return;
+        val sourceSets = ProjectUtilsKt.sourceSets(project.getConvention());
+        val main = sourceSets != null ? sourceSets.findByName(SourceSet.MAIN_SOURCE_SET_NAME) : null;
+        if (main == null) return;
+
+        val task = project.getTasks().create(NullnessCheckTask.TASK_NAME, NullnessCheckTask.class);
+        task.setSource(main.getJava());
+        task.setClasspath(main.getCompileClasspath());
+        task.setDestinationDir(new File(project.getBuildDir(), "checkerFramework/" + main.getName()));
+        task.setCompilerSettings(new NullnessCheckTask.CheckerCompilerSettings(javacSettings(project),
+            myProcessorLibFiles(project), myProcessorClassNames(), PROCESSOR_OPTIONS, bootClasspathFiles(project),
+            UtilsKt.isBuggyJavac() ? compilerLibraryConf(project) : null));
+        LOG.info("The Checker Framework is only run by \"{}\" for {} with the \"{}\" build profile",
+            NullnessCheckTask.TASK_NAME, project, BuildProfile.DEV.id());
     }
 
 
-    private class ConfigCompilerAction implements Action<Task> {
-        private final Project project;
+    /**
+     * Forks the compiler with the Checker Framework's own compiler library, for a JDK whose javac has trouble with
+     * the Checker Framework. Only holds onto the (unresolved) compiler library, not the project.
+     */
+    private static class ForkCompilerAction implements Action<JavaCompile> {
+        private final FileCollection compilerLibrary;
 
 
-        ConfigCompilerAction(Project project) {
-            this.project = project;
+        ForkCompilerAction(FileCollection compilerLibrary) {
+            this.compilerLibrary = compilerLibrary;
         }
 
 
         @Override
-        public void execute(Task javaCompileTask) {
-            val javaCompile = (JavaCompile)javaCompileTask;
+        public void execute(JavaCompile javaCompile) {
             val options = javaCompile.getOptions();
-
-            if (UtilsKt.isBuggyJavac()) {
-                options.setFork(true);
-                options.getForkOptions().
-                    setJvmArgs(singletonList("-Xbootclasspath/p:" + compilerLibraryFile(project).getAbsolutePath()));
-            }
-
-            val compilerArgs = createJavacArgs(javaCompileTask.getProject());
-
-            options.setCompilerArgs(compilerArgs);
+            options.setFork(true);
+            options.getForkOptions().
+                setJvmArgs(singletonList("-Xbootclasspath/p:" + compilerLibrary.getSingleFile().getAbsolutePath()));
         }
     }
 
 
-    private File compilerLibraryFile(Project project) {
+    private static Configuration compilerLibraryConf(Project project) {
         return ProjectUtilsKt.getConfiguration("checkerframework.compiler.lib.conf",
             deps -> {
                 deps.add(new DefaultExternalModuleDependency("org.checkerframework", "compiler", checkerFrameworkExtension(project).getVersion()));
                 return Unit.INSTANCE;
             },
-            project.getConfigurations()).getSingleFile();
+            project.getConfigurations());
     }
 
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.checkerframework;
+
+import com.mooregreatsoftware.gradle.util.JavacSettings;
+import com.mooregreatsoftware.gradle.util.JavacUtils.Option;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.JavaBasePlugin;
+import org.gradle.api.tasks.compile.JavaCompile;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static com.mooregreatsoftware.gradle.util.JavacUtils.createJavacArgs;
+import static java.util.Collections.singletonList;
+
+/**
+ * Compiles the main Java source with the Checker Framework, throwing away the classes. With the "dev"
+ * {@link com.mooregreatsoftware.gradle.defaults.BuildProfile} this is done instead of running the checker on every
+ * compile, so it's only paid for when asked for.
+ */
+@SuppressWarnings("WeakerAccess")
+public class NullnessCheckTask extends JavaCompile {
+    public static final String TASK_NAME = "checkNullness";
+
+    private @Nullable CheckerCompilerSettings compilerSettings;
+
+
+    public NullnessCheckTask() {
+        setDescription("Checks the main Java source with the Checker Framework");
+        setGroup(JavaBasePlugin.VERIFICATION_GROUP);
+        // added now so it runs after the compiler arguments for all the JavaCompile tasks have been set
+        doFirst(new ConfigCompilerAction());
+    }
+
+
+    void setCompilerSettings(CheckerCompilerSettings compilerSettings) {
+        this.compilerSettings = compilerSettings;
+    }
+
+
+    /**
+     * The project's javac settings, what the checker adds to them, and the compiler library to fork with if the
+     * JDK's javac is too buggy for the checker. Only these are held by the task action, not the project. The two
+     * are combined when the task runs, since the other processors register themselves after evaluation too.
+     */
+    static final class CheckerCompilerSettings implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final JavacSettings javacSettings;
+        private final Collection<File> processorLibFiles;
+        private final Collection<String> processorClassNames;
+        private final Collection<Option> processorOptions;
+        private final Collection<File> bootClasspath;
+        private final @Nullable FileCollection compilerLibrary;
+
+
+        CheckerCompilerSettings(JavacSettings javacSettings, Collection<File> processorLibFiles,
+                                Collection<String> processorClassNames, Collection<Option> processorOptions,
+                                Collection<File> bootClasspath, @Nullable FileCollection compilerLibrary) {
+            this.javacSettings = javacSettings;
+            this.processorLibFiles = new ArrayList<>(processorLibFiles);
+            this.processorClassNames = new ArrayList<>(processorClassNames);
+            this.processorOptions = new ArrayList<>(processorOptions);
+            this.bootClasspath = new ArrayList<>(bootClasspath);
+            this.compilerLibrary = compilerLibrary;
+        }
+
+
+        JavacSettings withChecker() {
+            return javacSettings.withProcessor(processorLibFiles, processorClassNames, processorOptions, bootClasspath);
+        }
+    }
+
+
+    private static final class ConfigCompilerAction implements Action<Task>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        public void execute(Task task) {
+            val checkTask = (NullnessCheckTask)task;
+            val settings = checkTask.compilerSettings;
+            if (settings == null) throw new IllegalStateException("The compiler settings have not been set for " + task);
+
+            val options = checkTask.getOptions();
+            if (settings.compilerLibrary != null) {
+                options.setFork(true);
+                options.getForkOptions().
+                    setJvmArgs(singletonList("-Xbootclasspath/p:" + settings.compilerLibrary.getSingleFile().getAbsolutePath()));
+            }
+            options.setCompilerArgs(createJavacArgs(settings.withChecker()));
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.defaults;
+
+import lombok.val;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension;
+
+/**
+ * Which of the expensive defaults a build pays for.
+ * <p>
+ * The profile is set with "defaults { profile = 'dev' }", and the "{@value #PROFILE_PROPERTY}" project property
+ * (e.g., "-Pdefaults.profile=ci") overrides that.
+ */
+public enum BuildProfile {
+    /**
+     * For local builds: the Checker Framework only runs in its own "checkNullness" task instead of on every compile,
+     * the sources and documentation JARs (and the documentation) aren't built, and only the files changed since the
+     * base revision have their license headers checked.
+     */
+    DEV,
+
+    /**
+     * Everything; the default.
+     */
+    CI;
+
+    /**
+     * Project property for the profile, which takes precedence over the "defaults" extension.
+     */
+    public static final String PROFILE_PROPERTY = "defaults.profile";
+
+
+    /**
+     * The name the profile is selected by; e.g., "dev"
+     */
+    public String id() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * The profile for the project. The extension's setting is only known once the project has been evaluated, so
+     * this shouldn't be asked before then.
+     */
+    public static BuildProfile buildProfile(Project project) {
+        val id = project.hasProperty(PROFILE_PROPERTY) ?
+            String.valueOf(project.property(PROFILE_PROPERTY)) :
+            defaultsExtension(project).getProfile();
+        return fromId(id);
+    }
+
+
+    public static BuildProfile fromId(String id) {
+        for (BuildProfile profile : values()) {
+            if (profile.id().equals(id.trim().toLowerCase(Locale.ROOT))) return profile;
+        }
+        throw new GradleException("\"" + id + "\" is not a build profile; the choices are " +
+            Arrays.stream(values()).map(BuildProfile::id).collect(Collectors.joining(", ")));
+    }
+
+}
@@ -29,10 +29,14 @@ import com.mooregreatsoftware.gradle.license.ExtLicenseExtension
 import com.mooregreatsoftware.gradle.license.ExtLicensePlugin.licenseExtension
 import com.mooregreatsoftware.gradle.lombok.LombokExtension
 import com.mooregreatsoftware.gradle.lombok.LombokPlugin.lombokExtension
+import com.mooregreatsoftware.gradle.repositories.RepositoryRoutes
+import com.mooregreatsoftware.gradle.testing.TestDefaultsExtension
+import com.mooregreatsoftware.gradle.testing.TestDefaultsPlugin.testDefaultsExtension
 import com.mooregreatsoftware.gradle.util.getCustomProperty
 import com.mooregreatsoftware.gradle.util.hasCustomProperty
 import com.mooregreatsoftware.gradle.util.isRootProject
 import com.mooregreatsoftware.gradle.util.setCustomProperty
+import org.gradle.api.Action
 import org.gradle.api.GradleException
 import org.gradle.api.JavaVersion
 import org.gradle.api.Project
@@ -46,7 +50,7 @@ import org.slf4j.LoggerFactory
  * @see [defaultsExtension]
  */
 @Suppress("unused", "ConvertLambdaToReference")
-open class DefaultsExtension(override val project: Project, override val license: ExtLicenseExtension, override val lombok: LombokExtension, override val checkerFramework: CheckerFrameworkExtension) : ReadableDefaultsExtension {
+open class DefaultsExtension(override val project: Project, override val license: ExtLicenseExtension, override val lombok: LombokExtension, override val checkerFramework: CheckerFrameworkExtension, override val test: TestDefaultsExtension) : ReadableDefaultsExtension {
 
     override var orgId: String
         get() = customProp(ORG_ID_KEY, {
@@ -188,6 +192,32 @@ open class DefaultsExtension(override val project: Project, override val license
     }
 
 
+    override var reproducibleArchives: Boolean
+        get() = customProp("com.mooregreatsoftware.property.reproducibleArchives", { false })!!
+        set(value) {
+            project.setCustomProperty("com.mooregreatsoftware.property.reproducibleArchives", value)
+        }
+
+    override var buildInfoFile: Boolean
+        get() = customProp("com.mooregreatsoftware.property.buildInfoFile", { true })!!
+        set(value) {
+            project.setCustomProperty("com.mooregreatsoftware.property.buildInfoFile", value)
+        }
+
+    override var profile: String
+        get() = customProp("com.mooregreatsoftware.property.profile", { BuildProfile.CI.id() })!!
+        set(value) {
+            project.setCustomProperty("com.mooregreatsoftware.property.profile", BuildProfile.fromId(value).id())
+        }
+
+
+    override val repositories = RepositoryRoutes()
+
+    fun repositories(action: Action<RepositoryRoutes>) {
+        action.execute(repositories)
+    }
+
+
     private fun <T> customProp(propName: String, defaultSupplier: (Project) -> T): T? {
         return when {
             project.hasCustomProperty(propName) -> project.getCustomProperty(propName)
@@ -196,11 +226,11 @@ open class DefaultsExtension(override val project: Project, override val license
     }
 
     fun inspect(): String {
-        return "DefaultsExtension(project=$project, lombok=$lombok, checkerFramework=$checkerFramework, license=$license)"
+        return "DefaultsExtension(project=$project, lombok=$lombok, checkerFramework=$checkerFramework, test=$test, repositories=$repositories, license=$license)"
     }
 
     override fun toString(): String {
-        return "DefaultsExtension(project=$project, lombok=$lombok, checkerFramework=$checkerFramework, orgId=$orgId, orgName=$orgName, orgUrl=$orgUrl, bintrayRepo=$bintrayRepo, bintrayPkg=$bintrayPkg, bintrayLabels=$bintrayLabels, isBintrayToCentral=$isBintrayToCentral, developers=$developers, contributors=$contributors, siteUrl=$siteUrl, issuesUrl=$issuesUrl, vcsReadUrl=$vcsReadUrl, vcsWriteUrl=$vcsWriteUrl, licenseKey='$licenseKey', licenseName='$licenseName', licenseUrl='$licenseUrl', copyrightYears=$copyrightYears, compatibilityVersion=$compatibilityVersion)"
+        return "DefaultsExtension(project=$project, lombok=$lombok, checkerFramework=$checkerFramework, test=$test, repositories=$repositories, orgId=$orgId, orgName=$orgName, orgUrl=$orgUrl, bintrayRepo=$bintrayRepo, bintrayPkg=$bintrayPkg, bintrayLabels=$bintrayLabels, isBintrayToCentral=$isBintrayToCentral, developers=$developers, contributors=$contributors, siteUrl=$siteUrl, issuesUrl=$issuesUrl, vcsReadUrl=$vcsReadUrl, vcsWriteUrl=$vcsWriteUrl, licenseKey='$licenseKey', licenseName='$licenseName', licenseUrl='$licenseUrl', copyrightYears=$copyrightYears, compatibilityVersion=$compatibilityVersion, reproducibleArchives=$reproducibleArchives, buildInfoFile=$buildInfoFile, profile=$profile)"
     }
 
 
@@ -239,4 +269,4 @@ open class DefaultsExtension(override val project: Project, override val license
 
 
 fun Project.defaultsExtension(): DefaultsExtension = extensions.findByType(DefaultsExtension::class.java) as DefaultsExtension? ?:
-    extensions.create(DefaultsExtension.NAME, DefaultsExtension::class.java, this, licenseExtension(project), lombokExtension(project), checkerFrameworkExtension(project))
+    extensions.create(DefaultsExtension.NAME, DefaultsExtension::class.java, this, licenseExtension(project), lombokExtension(project), checkerFrameworkExtension(project), testDefaultsExtension(project))
@@ -15,121 +15,304 @@
  */
 package com.mooregreatsoftware.gradle.defaults
 
-import com.jfrog.bintray.gradle.BintrayPlugin
+import com.mooregreatsoftware.gradle.affected.BuildAffectedTask
 import com.mooregreatsoftware.gradle.bintray.ExtBintrayPlugin
+import com.mooregreatsoftware.gradle.analysis.DependencyAnalysisTask
+import com.mooregreatsoftware.gradle.buildcache.CacheServerTask
 import com.mooregreatsoftware.gradle.checkerframework.CheckerFrameworkPlugin
+import com.mooregreatsoftware.gradle.doctor.DoctorTask
+import com.mooregreatsoftware.gradle.environment.BuildEnvironment
+import com.mooregreatsoftware.gradle.environment.BuildEnvironmentTask
 import com.mooregreatsoftware.gradle.ghpages.ExtGhPagesPlugin
 import com.mooregreatsoftware.gradle.groovy.ExtGroovyPlugin
 import com.mooregreatsoftware.gradle.ide.ExtIntellijPlugin
 import com.mooregreatsoftware.gradle.java.ExtJavaPlugin
 import com.mooregreatsoftware.gradle.kotlin.ExtKotlinPlugin
+import com.mooregreatsoftware.gradle.lang.ProcessorUsage
 import com.mooregreatsoftware.gradle.license.ExtLicensePlugin
 import com.mooregreatsoftware.gradle.lombok.LombokPlugin
+import com.mooregreatsoftware.gradle.mirror.MavenMirror
+import com.mooregreatsoftware.gradle.mirror.MirrorTask
+import com.mooregreatsoftware.gradle.prefetch.PrefetchTask
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler
 import com.mooregreatsoftware.gradle.release.ExtReleasePlugin
+import com.mooregreatsoftware.gradle.repositories.RepositoryRouting
 import com.mooregreatsoftware.gradle.scala.ExtScalaPlugin
+import com.mooregreatsoftware.gradle.testing.TestDefaultsPlugin
 import com.mooregreatsoftware.gradle.util.GrGitUtils
+import com.mooregreatsoftware.gradle.util.Integration
+import com.mooregreatsoftware.gradle.util.TaskOrderingRules
+import com.mooregreatsoftware.gradle.util.hasGitRepository
 import com.mooregreatsoftware.gradle.util.hasJavaSource
 import com.mooregreatsoftware.gradle.util.isRootProject
 import org.gradle.api.Plugin
 import org.gradle.api.Project
+import org.gradle.api.ProjectEvaluationListener
+import org.gradle.api.ProjectState
+import org.gradle.api.internal.IConventionAware
 import org.gradle.api.plugins.BasePlugin
 import org.gradle.api.publish.plugins.PublishingPlugin
 import org.gradle.api.tasks.compile.AbstractCompile
+import org.gradle.api.tasks.compile.JavaCompile
+import org.gradle.language.base.plugins.LifecycleBasePlugin
+import java.util.concurrent.Callable
 
 class DefaultsPlugin : Plugin<Project> {
 
     override fun apply(project: Project) {
-        if (project != project.rootProject) {
-            project.logger.warn("${this.javaClass.name} can only be applied to the root project")
-            return
+        if (project.isRootProject() && !perProjectPropertySet(project)) {
+            project.extensions.extraProperties.set(ALL_PROJECTS_KEY, true)
+            project.allprojects { prj -> configProject(prj) }
+        }
+        else {
+            configProjectTree(project)
         }
+    }
+
+
+    /**
+     * Configures the project now, and each of the projects under it only when Gradle gets around to configuring
+     * that project. Nothing is done to projects that Gradle does not configure (e.g., because of
+     * "configure on demand"), and nothing reaches across to the other projects.
+     */
+    private fun configProjectTree(project: Project) {
+        configProject(project)
+
+        project.subprojects.filter { it.state.executed }.forEach { configProject(it) }
+
+        project.gradle.addProjectEvaluationListener(object : ProjectEvaluationListener {
+            override fun beforeEvaluate(prj: Project) {
+                if (prj != project && prj.isUnder(project)) configProject(prj)
+            }
+
 
-        project.allprojects { prj -> configProject(prj) }
+            override fun afterEvaluate(prj: Project, state: ProjectState) {
+            }
+        })
+    }
+
+
+    private fun Project.isUnder(ancestor: Project): Boolean {
+        tailrec fun climb(prj: Project?): Boolean = when (prj) {
+            null -> false
+            ancestor -> true
+            else -> climb(prj.parent)
+        }
+        return climb(this.parent)
     }
 
 
     private fun configProject(prj: Project) {
+        val ext = prj.extensions.extraProperties
+        if (ext.has(CONFIGURED_KEY)) return
+        ext.set(CONFIGURED_KEY, true)
+
+        ConfigurationProfiler.time(prj, "DefaultsPlugin.configProject") { doConfigProject(prj) }
+    }
+
+
+    private fun doConfigProject(prj: Project) {
         val defaultsExtension = prj.defaultsExtension()
 
         prj.repositories.jcenter()
+        ConfigurationProfiler.afterEvaluate(prj, "DefaultsPlugin.repositories") {
+            if (MavenMirror.useMirror(prj)) MavenMirror.rewireRepositories(prj, MavenMirror.mirrorDir(prj))
+            else RepositoryRouting.apply(prj, prj.rootProject.defaultsExtension().repositories)
+        }
 
-        if (prj.isRootProject() && GrGitUtils.grgit(prj) != null) {
-            prj.plugins.apply(ExtReleasePlugin.PLUGIN_ID)
-            prj.plugins.apply(ExtGhPagesPlugin.PLUGIN_ID)
+        // looking for ".git" first means JGit isn't even loaded when there's no repository
+        if (prj.isRootProject() && prj.hasGitRepository()) {
+            if (!Integration.GRADLE_GIT.isAvailable()) {
+                prj.logger.warn("Not applying the release and GitHub Pages support: to use them, " +
+                    Integration.GRADLE_GIT.howToEnable())
+            }
+            else if (GrGitUtils.grgit(prj) != null) {
+                applyPlugin(prj, ExtReleasePlugin.PLUGIN_ID)
+                applyPlugin(prj, ExtGhPagesPlugin.PLUGIN_ID)
+            }
         }
 
-        prj.plugins.apply(ExtIntellijPlugin.PLUGIN_ID)
+        if (prj.isRootProject()) {
+            CacheServerTask.register(prj)
+            BuildEnvironmentTask.register(prj)
+            BuildAffectedTask.register(prj)
+            DoctorTask.register(prj)
+        }
+        PrefetchTask.register(prj)
+        MirrorTask.register(prj)
 
-        prj.afterEvaluate {
-            if (defaultsExtension.openSource)
-                prj.plugins.apply(ExtLicensePlugin.PLUGIN_ID)
+        ConfigurationProfiler.afterEvaluate(prj, "DefaultsPlugin.buildProfile") { logBuildProfile(prj) }
+
+        if (BuildEnvironment.autoApply(prj)) applyEnvironment(prj)
+
+        if (!prj.isRootProject() && prj.rootProject.plugins.hasPlugin(ExtGhPagesPlugin.GITHUB_PAGES_PLUGIN_ID) &&
+            isPerProjectMode(prj)) {
+            ExtGhPagesPlugin.associateDocTasks(prj)
         }
 
-        prj.plugins.withType(BintrayPlugin::class.java) {
-            prj.plugins.apply(ExtBintrayPlugin::class.java)
+        applyPlugin(prj, ExtIntellijPlugin.PLUGIN_ID)
+
+        ConfigurationProfiler.afterEvaluate(prj, "DefaultsPlugin.openSource") {
+            if (defaultsExtension.openSource) {
+                if (Integration.LICENSE.isAvailable()) applyPlugin(prj, ExtLicensePlugin.PLUGIN_ID)
+                else prj.logger.warn("Not applying the license support to the open-source {}: to use it, {}",
+                    prj, Integration.LICENSE.howToEnable())
+            }
+        }
+
+        // by id, rather than by type, so the Bintray classes are only loaded if the project uses Bintray
+        prj.plugins.withId(BINTRAY_PLUGIN_ID) {
+            applyPlugin(prj, ExtBintrayPlugin.PLUGIN_ID)
         }
 
         prj.plugins.withId("java") {
-            prj.plugins.apply(ExtJavaPlugin.PLUGIN_ID)
-            if (prj.hasJavaSource()) {
-                prj.plugins.apply(LombokPlugin.PLUGIN_ID)
-                prj.plugins.apply(CheckerFrameworkPlugin.PLUGIN_ID)
+            applyPlugin(prj, ExtJavaPlugin.PLUGIN_ID)
+            applyPlugin(prj, TestDefaultsPlugin.PLUGIN_ID)
+            DependencyAnalysisTask.register(prj)
+            // the build script may change the source directories, so only look at the source once it's done
+            ConfigurationProfiler.afterEvaluate(prj, "DefaultsPlugin.annotationProcessors") {
+                if (prj.hasJavaSource()) applyAnnotationProcessors(prj)
             }
         }
 
         prj.plugins.withId("groovy") {
-            prj.plugins.apply(ExtGroovyPlugin.PLUGIN_ID)
+            applyPlugin(prj, ExtGroovyPlugin.PLUGIN_ID)
         }
 
         prj.plugins.withId("scala") {
-            prj.plugins.apply(ExtScalaPlugin.PLUGIN_ID)
+            applyPlugin(prj, ExtScalaPlugin.PLUGIN_ID)
         }
 
         prj.plugins.withId("kotlin") {
-            prj.plugins.apply(ExtKotlinPlugin.PLUGIN_ID)
+            applyPlugin(prj, ExtKotlinPlugin.PLUGIN_ID)
         }
 
-        prj.tasks.withType(AbstractCompile::class.java, { abstractCompile ->
-            abstractCompile.doFirst({ task ->
-                val defaults = task.project.defaultsExtension()
-                abstractCompile.sourceCompatibility = defaults.compatibilityVersion.toString()
-                abstractCompile.targetCompatibility = defaults.compatibilityVersion.toString()
-            })
-        })
+        // registered after evaluation so it's mapped after (and so takes precedence over) the "java" plugin's mapping
+        ConfigurationProfiler.afterEvaluate(prj, "DefaultsPlugin.compatibility") {
+            prj.tasks.withType(AbstractCompile::class.java) { mapCompatibility(it, defaultsExtension) }
+        }
 
         addOrderingRules(prj)
     }
 
 
+    /**
+     * Applies Lombok and the Checker Framework, skipping Lombok if the source does not use it (unless
+     * "[ProcessorUsage.ONLY_WHEN_USED_PROPERTY]" is false), and the Checker Framework only if that's asked for with
+     * "[ProcessorUsage.CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY]".
+     */
+    private fun applyAnnotationProcessors(prj: Project) {
+        if (!ProcessorUsage.onlyWhenUsed(prj)) {
+            applyPlugin(prj, LombokPlugin.PLUGIN_ID)
+            applyPlugin(prj, CheckerFrameworkPlugin.PLUGIN_ID)
+            return
+        }
+
+        val usage = ConfigurationProfiler.timed(prj, "detect annotation processor usage") {
+            ProcessorUsage.processorUsage(prj)
+        }
+
+        if (usage.usesLombok()) applyPlugin(prj, LombokPlugin.PLUGIN_ID)
+        else prj.logger.lifecycle("Not applying Lombok to {}: none of its Java source refers to \"lombok.\"", prj)
+
+        if (!ProcessorUsage.checkerFrameworkOnlyWhenUsed(prj) || usage.usesCheckerFramework()) {
+            applyPlugin(prj, CheckerFrameworkPlugin.PLUGIN_ID)
+        }
+        else prj.logger.lifecycle("Not applying the Checker Framework to {}: none of its Java source refers to " +
+            "\"org.checkerframework.\"", prj)
+    }
+
+
+    /**
+     * Shows the build profile, so that a "dev" build isn't mistaken for a full one: for the root project, and for
+     * any other project whose profile is different.
+     */
+    private fun logBuildProfile(prj: Project) {
+        val profile = BuildProfile.buildProfile(prj)
+        if (prj.isRootProject()) {
+            prj.logger.lifecycle("Using the \"${profile.id()}\" build profile")
+        }
+        else if (prj.rootProject.state.executed && profile != BuildProfile.buildProfile(prj.rootProject)) {
+            prj.logger.lifecycle("Using the \"${profile.id()}\" build profile for ${prj.path}")
+        }
+    }
+
+
+    /**
+     * Applies the suggestions of the [BuildEnvironment] (see "[BuildEnvironment.AUTO_APPLY_PROPERTY]").
+     */
+    private fun applyEnvironment(prj: Project) {
+        val environment = BuildEnvironment.buildEnvironment(prj)
+        if (prj.isRootProject()) environment.addMissingGradleProperties(prj)
+        ConfigurationProfiler.afterEvaluate(prj, "DefaultsPlugin.compilerHeap") {
+            prj.tasks.withType(JavaCompile::class.java) { environment.applyCompilerHeap(it) }
+        }
+    }
+
+
+    /**
+     * Applies the plugin, timing it with the [ConfigurationProfiler].
+     */
+    private fun applyPlugin(prj: Project, pluginId: String) {
+        ConfigurationProfiler.time(prj, "apply $pluginId") { prj.plugins.apply(pluginId) }
+    }
+
+
     companion object {
         val PLUGIN_ID = "com.mooregreatsoftware.defaults"
 
+        /**
+         * Project property that, when "true", makes applying the plugin to the root project configure each project
+         * only as Gradle configures it, instead of configuring all of the projects up front.
+         */
+        const val PER_PROJECT_PROPERTY = "defaults.perProject"
 
-        private fun addOrderingRules(project: Project) {
-            project.plugins.withType(BasePlugin::class.java) {
-                allTasksShouldRunAfterClean(project)
-                publishingTasksShouldRunAfterBuild(project)
-            }
+        private const val BINTRAY_PLUGIN_ID = "com.jfrog.bintray"
+
+        private const val CONFIGURED_KEY = "com.mooregreatsoftware.defaults.configured"
+
+        private const val ALL_PROJECTS_KEY = "com.mooregreatsoftware.defaults.allProjects"
+
+
+        /**
+         * Is the plugin being applied one project at a time, rather than by the root project to all the projects?
+         *
+         * That's the case if "[PER_PROJECT_PROPERTY]" is true, or if the plugin has been applied to a project that
+         * is not the root.
+         */
+        @JvmStatic
+        fun isPerProjectMode(project: Project): Boolean =
+            !project.rootProject.extensions.extraProperties.has(ALL_PROJECTS_KEY)
+
+
+        private fun perProjectPropertySet(project: Project): Boolean =
+            project.hasProperty(PER_PROJECT_PROPERTY) && project.property(PER_PROJECT_PROPERTY).toString().toBoolean()
+
+
+        /**
+         * Maps the compile task's source and target compatibility to [DefaultsExtension.compatibilityVersion].
+         * The mapping is only evaluated when Gradle reads the value (e.g., to check if the task is up-to-date),
+         * and a value explicitly set on the task still wins.
+         */
+        private fun mapCompatibility(abstractCompile: AbstractCompile, defaultsExtension: DefaultsExtension) {
+            val conventionMapping = (abstractCompile as IConventionAware).conventionMapping
+            val compatibilityVersion = Callable { defaultsExtension.compatibilityVersion.toString() }
+            conventionMapping.map("sourceCompatibility", compatibilityVersion)
+            conventionMapping.map("targetCompatibility", compatibilityVersion)
         }
 
 
-        private fun allTasksShouldRunAfterClean(project: Project) {
-            val clean = project.tasks.getByName(BasePlugin.CLEAN_TASK_NAME)
-            project.tasks.forEach { task ->
-                if (task != clean) {
-                    task.shouldRunAfter(clean)
-                }
+        private fun addOrderingRules(project: Project) {
+            project.plugins.withType(BasePlugin::class.java) {
+                TaskOrderingRules.allTasksShouldRunAfterClean(project)
+                publishingTasksShouldRunAfterBuild(project)
             }
         }
 
 
         private fun publishingTasksShouldRunAfterBuild(project: Project) {
-            val build = project.tasks.getByName(BasePlugin.BUILD_GROUP)
-            project.tasks.forEach { task ->
-                if (task.group == PublishingPlugin.PUBLISH_TASK_GROUP) {
-                    task.shouldRunAfter(build)
-                }
-            }
+            TaskOrderingRules.taskOrderingRules(project).shouldRunAfter("publishingShouldRunAfterBuild",
+                LifecycleBasePlugin.BUILD_TASK_NAME, { task -> task.group == PublishingPlugin.PUBLISH_TASK_GROUP })
         }
     }
 
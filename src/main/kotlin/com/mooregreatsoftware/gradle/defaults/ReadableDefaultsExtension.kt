@@ -18,6 +18,8 @@ package com.mooregreatsoftware.gradle.defaults
 import com.mooregreatsoftware.gradle.checkerframework.CheckerFrameworkExtension
 import com.mooregreatsoftware.gradle.license.ExtLicenseExtension
 import com.mooregreatsoftware.gradle.lombok.LombokExtension
+import com.mooregreatsoftware.gradle.repositories.RepositoryRoutes
+import com.mooregreatsoftware.gradle.testing.TestDefaultsExtension
 import com.mooregreatsoftware.gradle.util.postEvalCreate
 import org.checkerframework.checker.nullness.qual.Nullable
 import org.gradle.api.JavaVersion
@@ -56,6 +58,17 @@ interface ReadableDefaultsExtension {
      */
     val checkerFramework: CheckerFrameworkExtension
 
+    /**
+     * Configuration for how the "Test" tasks are run (forks, heap, etc.)
+     */
+    val test: TestDefaultsExtension
+
+    /**
+     * The repositories for all the projects, and which groups come from which of them. Only the root project's
+     * value is used.
+     */
+    val repositories: RepositoryRoutes
+
     /**
      * The id of the organization (a user also counts as a one-person organization). Used as the default for
      * computing the default values of [siteUrl], [vcsReadUrl] and [vcsWriteUrl].
@@ -157,6 +170,31 @@ interface ReadableDefaultsExtension {
      * Defaults to the version of Java being used to run Gradle and compile the code.
      */
     val compatibilityVersion: JavaVersion
+
+    /**
+     * Should the jars be reproducible? If true, the entries are written in a consistent order with fixed timestamps
+     * (requires Gradle 3.4 or later), and only the stable attributes ("Implementation-Title" and
+     * "Implementation-Version") are put in MANIFEST.MF, so the same inputs produce the same bytes.
+     *
+     * Defaults to "false"
+     */
+    val reproducibleArchives: Boolean
+
+    /**
+     * When [reproducibleArchives] is true, should the build information that would have gone into MANIFEST.MF
+     * ("Built-By", "Built-Date", etc.) be written to "build/build-info.properties" instead?
+     *
+     * Defaults to "true"
+     */
+    val buildInfoFile: Boolean
+
+    /**
+     * The [BuildProfile] to use, by its name: "dev" to skip or defer the expensive defaults during local
+     * development, or "ci" for all of them. The "defaults.profile" project property takes precedence.
+     *
+     * Defaults to "ci"
+     */
+    val profile: String
 }
 
 class Developer(val id: String, val name: String, val email: String)
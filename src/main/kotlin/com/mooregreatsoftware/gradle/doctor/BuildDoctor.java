@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.doctor;
+
+import com.mooregreatsoftware.gradle.checkerframework.CheckerFrameworkPlugin;
+import com.mooregreatsoftware.gradle.defaults.BuildProfile;
+import com.mooregreatsoftware.gradle.defaults.DefaultsPlugin;
+import com.mooregreatsoftware.gradle.lang.AbstractLanguagePlugin;
+import com.mooregreatsoftware.gradle.lang.ProcessorUsage;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
+import com.mooregreatsoftware.gradle.util.GradleCompat;
+import com.mooregreatsoftware.gradle.util.JavacUtils;
+import com.mooregreatsoftware.gradle.util.UtilsKt;
+import lombok.val;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.compile.JavaCompile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension;
+
+/**
+ * Looks through the configured build for performance problems that the plugin (or a setting of it) can fix.
+ *
+ * @see DoctorTask
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BuildDoctor {
+    /**
+     * About what starting a forked compiler JVM costs.
+     */
+    static final long FORK_MS = 1500;
+
+    /**
+     * About what recompiling a source file that didn't need it costs.
+     */
+    static final long RECOMPILE_MS_PER_FILE = 10;
+
+    /**
+     * About what packaging a source file into an archive costs.
+     */
+    static final long ARCHIVE_MS_PER_FILE = 1;
+
+    /**
+     * Projects that took less than this to configure aren't worth mentioning.
+     */
+    static final long SLOW_CONFIGURATION_MS = 250;
+
+    /**
+     * The sources and documentation jars the language plugins add, which the "dev" build profile skips.
+     */
+    private static final List<String> EXTRA_ARCHIVE_TASK_NAMES = Arrays.asList(
+        AbstractLanguagePlugin.SOURCES_JAR_TASK_NAME, "javadocJar", "groovydocJar", "scaladocJar", "dokkaJar");
+
+
+    private BuildDoctor() {
+    }
+
+
+    /**
+     * Everything found in all of the projects, most expensive first.
+     */
+    public static List<Finding> examine(Project rootProject) {
+        val findings = new ArrayList<Finding>();
+        for (Project project : rootProject.getAllprojects()) {
+            findings.addAll(forkedCompilers(project));
+            findings.addAll(nonIncrementalCompiles(project));
+            findings.addAll(extraArchives(project));
+            findings.addAll(volatileManifests(project));
+        }
+        findings.addAll(eagerConfiguration(rootProject));
+        findings.sort(Comparator.comparingLong((Finding finding) -> finding.estimatedMs).reversed());
+        return findings;
+    }
+
+
+    /**
+     * Compilers running in their own JVM, including the ones the Checker Framework forks to patch an old javac.
+     */
+    static List<Finding> forkedCompilers(Project project) {
+        val findings = new ArrayList<Finding>();
+        val checkerForks = UtilsKt.isBuggyJavac() && project.getPlugins().hasPlugin(CheckerFrameworkPlugin.PLUGIN_ID);
+        project.getTasks().withType(JavaCompile.class).forEach(compile -> {
+            if (checkerForks) {
+                findings.add(new Finding("forked-compiler", project.getPath(), compile.getPath(),
+                    "the Checker Framework forks the compiler to patch javac " + System.getProperty("java.version"),
+                    FORK_MS, "a JVM start-up (~1.5s) per compile",
+                    "build with JDK 8u45 or later, where no patch is needed"));
+            }
+            else if (compile.getOptions().isFork()) {
+                findings.add(new Finding("forked-compiler", project.getPath(), compile.getPath(),
+                    "the compiler is forked", FORK_MS, "a JVM start-up (~1.5s) per compile",
+                    "remove \"options.fork = true\" unless a different JDK or heap is needed"));
+            }
+        });
+        return findings;
+    }
+
+
+    /**
+     * Compiles that can't be incremental because of the annotation processors: before Gradle 4.7 any processor
+     * turns it off, and the Checker Framework never supports it.
+     */
+    static List<Finding> nonIncrementalCompiles(Project project) {
+        val processors = JavacUtils.getAnnotationProcessorClassNames(project);
+        val usesChecker = processors.contains(CheckerFrameworkPlugin.CHECKERFRAMEWORK_NULLNESS_CHECKER);
+        if (processors.isEmpty() || (GradleCompat.isAtLeast("4.7") && !usesChecker)) return new ArrayList<>();
+
+        final String fix;
+        if (usesChecker) {
+            fix = ProcessorUsage.checkerFrameworkOnlyWhenUsed(project) ?
+                "only use the processors in the projects that need them; the Checker Framework is never incremental" :
+                "set \"" + ProcessorUsage.ONLY_WHEN_USED_PROPERTY + "=true\" and \"" +
+                    ProcessorUsage.CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY + "=true\" so the Checker Framework is only " +
+                    "applied where the source uses it";
+        }
+        else {
+            fix = ProcessorUsage.onlyWhenUsed(project) ?
+                "only use the processors in the projects that need them; " +
+                    "Gradle 4.7 and later keep incremental compilation with Lombok" :
+                "set \"" + ProcessorUsage.ONLY_WHEN_USED_PROPERTY + "=true\" so processors are only applied where " +
+                    "the source uses them";
+        }
+
+        val findings = new ArrayList<Finding>();
+        project.getTasks().withType(JavaCompile.class).forEach(compile -> {
+            if (!compile.getOptions().isIncremental()) return;
+            val sourceFiles = compile.getSource().getFiles().size();
+            if (sourceFiles == 0) return;
+            findings.add(new Finding("non-incremental-compile", project.getPath(), compile.getPath(),
+                "annotation processors (" + String.join(", ", processors) + ") turn off incremental compilation",
+                sourceFiles * RECOMPILE_MS_PER_FILE,
+                "all " + sourceFiles + " source files are recompiled on any change", fix));
+        });
+        return findings;
+    }
+
+
+    /**
+     * The sources and documentation jars the plugin adds to every build, though they're only needed to publish.
+     * Archives are never taken from the build cache, so they're rebuilt whenever the sources change. (Jars the build
+     * adds itself are left alone; the "dev" {@link BuildProfile} can't skip those.)
+     */
+    static List<Finding> extraArchives(Project project) {
+        val findings = new ArrayList<Finding>();
+        project.getTasks().withType(Jar.class).forEach(jar -> {
+            if (!EXTRA_ARCHIVE_TASK_NAMES.contains(jar.getName()) || !jar.getEnabled()) return;
+            val classifier = jar.getClassifier();
+            val files = jar.getSource().getFiles().size();
+            findings.add(new Finding("extra-archive", project.getPath(), jar.getPath(),
+                "the \"" + classifier + "\" jar is built with every \"assemble\", and is never cached",
+                files * ARCHIVE_MS_PER_FILE, "packaging " + files + " files (plus generating the docs, for a docs jar)",
+                "defaults { profile = '" + BuildProfile.DEV.id() + "' } for local builds (or \"-P" +
+                    BuildProfile.PROFILE_PROPERTY + "=" + BuildProfile.DEV.id() + "\"); it's only needed to publish"));
+        });
+        return findings;
+    }
+
+
+    /**
+     * Jars whose MANIFEST.MF has the build date (and so on), making every build's jar different.
+     */
+    static List<Finding> volatileManifests(Project project) {
+        if (!project.getPlugins().hasPlugin("java") || defaultsExtension(project).getReproducibleArchives()) {
+            return new ArrayList<>();
+        }
+        val findings = new ArrayList<Finding>();
+        project.getTasks().withType(Jar.class).forEach(jar -> findings.add(new Finding("volatile-manifest",
+            project.getPath(), jar.getPath(), "MANIFEST.MF has \"Built-Date\" and the like, so the jar is different every build",
+            0, "nothing that uses the jar can be up-to-date or come from the build cache",
+            "defaults { reproducibleArchives = true }")));
+        return findings;
+    }
+
+
+    /**
+     * Projects that took a long time to configure, when every project is configured whether the build needs it or
+     * not.
+     */
+    static List<Finding> eagerConfiguration(Project rootProject) {
+        val findings = new ArrayList<Finding>();
+        if (DefaultsPlugin.isPerProjectMode(rootProject)) return findings;
+        ConfigurationProfiler.configurationProfiler(rootProject).projectTotals().forEach((path, millis) -> {
+            if (millis < SLOW_CONFIGURATION_MS) return;
+            val project = rootProject.findProject(path);
+            val tasks = project == null ? 0 : project.getTasks().size();
+            findings.add(new Finding("eager-configuration", path, null,
+                "the project is configured (and its " + tasks + " tasks created) in every build, even when it isn't built",
+                Math.round(millis), Math.round(millis) + "ms of configuration",
+                "set \"" + DefaultsPlugin.PER_PROJECT_PROPERTY + "=true\" and use \"--configure-on-demand\""));
+        });
+        return findings;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.doctor;
+
+import groovy.json.JsonOutput;
+import lombok.val;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Shows what the {@link BuildDoctor} found, most expensive first, and writes it as JSON to
+ * "build/{@value #REPORT_DIR}/doctor.json" of the root project.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DoctorTask extends DefaultTask {
+    public static final String TASK_NAME = "defaultsDoctor";
+
+    public static final String REPORT_DIR = "reports/defaults-doctor";
+
+    private File reportDir;
+
+
+    public DoctorTask() {
+        reportDir = new File(getProject().getBuildDir(), REPORT_DIR);
+        setDescription("Looks for performance problems in the build that the defaults can fix");
+        setGroup("help");
+        // it reports on the configured build, which can change without any file changing
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+
+    /**
+     * Adds the task to the project, unless it's already there.
+     */
+    public static void register(Project project) {
+        if (project.getTasks().findByName(TASK_NAME) == null) {
+            project.getTasks().create(TASK_NAME, DoctorTask.class);
+        }
+    }
+
+
+    @OutputDirectory
+    public File getReportDir() {
+        return reportDir;
+    }
+
+
+    public void setReportDir(File reportDir) {
+        this.reportDir = reportDir;
+    }
+
+
+    @TaskAction
+    public void examine() {
+        val findings = BuildDoctor.examine(getProject().getRootProject());
+
+        val json = new LinkedHashMap<String, Object>();
+        json.put("gradleVersion", getProject().getGradle().getGradleVersion());
+        json.put("estimatedMs", findings.stream().mapToLong(finding -> finding.estimatedMs).sum());
+        json.put("findings", findings.stream().map(Finding::toMap).collect(Collectors.toList()));
+        val reportFile = new File(reportDir, "doctor.json");
+        try {
+            Files.createDirectories(reportDir.toPath());
+            Files.write(reportFile.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new GradleException("Could not write " + reportFile, e);
+        }
+
+        if (findings.isEmpty()) {
+            getLogger().lifecycle("No performance problems found");
+        }
+        else {
+            getLogger().lifecycle("{} performance problems found (see {}):\n\n{}", findings.size(), reportFile,
+                findings.stream().map(Finding::toString).collect(Collectors.joining("\n\n")));
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.doctor;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A performance problem found by the {@link BuildDoctor}, with what it is likely to cost and how to fix it.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Finding {
+    public final String id;
+    public final String projectPath;
+    public final @Nullable String taskPath;
+    public final String problem;
+    /**
+     * A rough estimate of the time lost, in milliseconds per build where it applies; 0 if it can't be put as a time.
+     */
+    public final long estimatedMs;
+    /**
+     * What the cost is, in words (e.g., "a JVM start-up (~1.5s) per compile").
+     */
+    public final String cost;
+    /**
+     * The setting (or other change) that fixes it.
+     */
+    public final String fix;
+
+
+    Finding(String id, String projectPath, @Nullable String taskPath, String problem, long estimatedMs,
+            String cost, String fix) {
+        this.id = id;
+        this.projectPath = projectPath;
+        this.taskPath = taskPath;
+        this.problem = problem;
+        this.estimatedMs = estimatedMs;
+        this.cost = cost;
+        this.fix = fix;
+    }
+
+
+    Map<String, Object> toMap() {
+        val map = new LinkedHashMap<String, Object>();
+        map.put("id", id);
+        map.put("project", projectPath);
+        if (taskPath != null) map.put("task", taskPath);
+        map.put("problem", problem);
+        map.put("estimatedMs", estimatedMs);
+        map.put("cost", cost);
+        map.put("fix", fix);
+        return map;
+    }
+
+
+    @Override
+    public String toString() {
+        return "[" + id + "] " + (taskPath != null ? taskPath : projectPath) + ": " + problem + "\n" +
+            "    cost: " + cost + "\n" +
+            "    fix:  " + fix;
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.environment;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import com.mooregreatsoftware.gradle.util.JdkVersion;
+import com.mooregreatsoftware.gradle.util.UtilsKt;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What the build is running on: the JDK, the number of cores and the amount of memory, taking container (cgroup)
+ * limits into account. It's worked out once per build (kept in the {@link BuildState}).
+ * <p>
+ * From that come suggestions for "org.gradle.workers.max", the daemon's heap ("org.gradle.jvmargs") and the heap
+ * of forked compilers, so a 64-core CI server and a 4-core laptop both get sensible values without hand-editing
+ * "gradle.properties". See {@link BuildEnvironmentTask} for the report, and {@link #AUTO_APPLY_PROPERTY} for
+ * applying them.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BuildEnvironment {
+    private static final Logger LOG = LoggerFactory.getLogger(BuildEnvironment.class);
+
+    private static final String STATE_KEY = BuildEnvironment.class.getName();
+
+    /**
+     * Project property that, when "true", applies the suggestions: missing "org.gradle.workers.max" and
+     * "org.gradle.jvmargs" are added to the "gradle.properties" in the Gradle user home directory (for the next
+     * build), and forked Java compilers without a maximum heap get the suggested one.
+     */
+    public static final String AUTO_APPLY_PROPERTY = "defaults.environment.autoApply";
+
+    public static final String WORKERS_MAX_PROPERTY = "org.gradle.workers.max";
+
+    public static final String JVM_ARGS_PROPERTY = "org.gradle.jvmargs";
+
+    /**
+     * About how much memory each worker (e.g., a compiler or a test JVM) needs.
+     */
+    static final long WORKER_MEMORY_MB = 768;
+
+    private static final long MB = 1024 * 1024;
+
+    // cgroup v1 reports "no limit" as a very large number
+    private static final long UNLIMITED = Long.MAX_VALUE / 2;
+
+    private final JdkVersion jdkVersion;
+    private final String vendor;
+    private final int availableCores;
+    private final @Nullable Integer cpuLimit;
+    private final long physicalMemory;
+    private final @Nullable Long memoryLimit;
+
+
+    BuildEnvironment(JdkVersion jdkVersion, String vendor, int availableCores, @Nullable Integer cpuLimit,
+                     long physicalMemory, @Nullable Long memoryLimit) {
+        this.jdkVersion = jdkVersion;
+        this.vendor = vendor;
+        this.availableCores = availableCores;
+        this.cpuLimit = cpuLimit;
+        this.physicalMemory = physicalMemory;
+        this.memoryLimit = memoryLimit;
+    }
+
+
+    /**
+     * Retrieves the environment for the build. It's probed if this is the first request.
+     */
+    public static BuildEnvironment buildEnvironment(Project project) {
+        return BuildState.buildState(project, STATE_KEY, () ->
+            probe(Paths.get("/sys/fs/cgroup"), Runtime.getRuntime().availableProcessors(), physicalMemory()));
+    }
+
+
+    /**
+     * Is {@link #AUTO_APPLY_PROPERTY} set to "true"?
+     */
+    public static boolean autoApply(Project project) {
+        return project.hasProperty(AUTO_APPLY_PROPERTY) &&
+            Boolean.parseBoolean(String.valueOf(project.property(AUTO_APPLY_PROPERTY)).trim());
+    }
+
+
+    static BuildEnvironment probe(Path cgroupRoot, int availableCores, long physicalMemory) {
+        return new BuildEnvironment(UtilsKt.jdkVersion(), System.getProperty("java.vendor", "unknown"),
+            availableCores, cpuLimit(cgroupRoot), physicalMemory, memoryLimit(cgroupRoot));
+    }
+
+
+    public JdkVersion getJdkVersion() {
+        return jdkVersion;
+    }
+
+
+    public String getVendor() {
+        return vendor;
+    }
+
+
+    /**
+     * The number of cores the build can use.
+     */
+    public int cores() {
+        return cpuLimit == null ? availableCores : Math.max(1, Math.min(availableCores, cpuLimit));
+    }
+
+
+    /**
+     * The amount of memory the build can use, in bytes, or 0 if it's not known.
+     */
+    public long memoryBytes() {
+        if (memoryLimit == null) return physicalMemory;
+        return physicalMemory == 0 ? memoryLimit : Math.min(physicalMemory, memoryLimit);
+    }
+
+
+    /**
+     * One worker per core, as long as there's enough memory for them.
+     */
+    public int suggestedWorkers() {
+        val memoryMb = memoryBytes() / MB;
+        if (memoryMb == 0) return cores();
+        return (int)Math.max(1, Math.min(cores(), (memoryMb - suggestedDaemonHeapMb()) / WORKER_MEMORY_MB));
+    }
+
+
+    /**
+     * A quarter of the memory, but at least 512MB and no more than 8GB.
+     */
+    public long suggestedDaemonHeapMb() {
+        val memoryMb = memoryBytes() / MB;
+        if (memoryMb == 0) return 1024;
+        return clamp(memoryMb / 4, 512, 8192);
+    }
+
+
+    /**
+     * Half of each worker's share of what the daemon doesn't use, but at least 256MB and no more than 1GB.
+     */
+    public long suggestedCompilerHeapMb() {
+        val memoryMb = memoryBytes() / MB;
+        if (memoryMb == 0) return 512;
+        val share = (memoryMb - suggestedDaemonHeapMb()) / Math.max(1, suggestedWorkers()) / 2;
+        return clamp(share, 256, 1024);
+    }
+
+
+    /**
+     * The suggested "gradle.properties" settings.
+     */
+    public Map<String, String> suggestedGradleProperties() {
+        val properties = new LinkedHashMap<String, String>();
+        properties.put(WORKERS_MAX_PROPERTY, Integer.toString(suggestedWorkers()));
+        properties.put(JVM_ARGS_PROPERTY, "-Xmx" + suggestedDaemonHeapMb() + "m");
+        return properties;
+    }
+
+
+    /**
+     * Adds the suggested settings that aren't set anywhere yet to the "gradle.properties" in the Gradle user home
+     * directory. They take effect with the next build, since the daemon is already running with what it was given.
+     * <p>
+     * The suggestions are for this machine, so they're never written to the project's own (checked-in) file.
+     */
+    public void addMissingGradleProperties(Project rootProject) {
+        addMissingGradleProperties(rootProject, rootProject.getGradle().getGradleUserHomeDir());
+    }
+
+
+    void addMissingGradleProperties(Project rootProject, File gradleUserHomeDir) {
+        val missing = new LinkedHashMap<String, String>();
+        suggestedGradleProperties().forEach((key, value) -> {
+            if (!rootProject.hasProperty(key)) missing.put(key, value);
+        });
+        if (missing.isEmpty()) return;
+
+        val text = new StringBuilder("\n# suggested for this machine (see \"" + AUTO_APPLY_PROPERTY + "\")\n");
+        missing.forEach((key, value) -> text.append(key).append('=').append(value).append('\n'));
+        val file = new File(gradleUserHomeDir, "gradle.properties").toPath();
+        try {
+            Files.createDirectories(gradleUserHomeDir.toPath());
+            Files.write(file, text.toString().getBytes(StandardCharsets.ISO_8859_1),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            rootProject.getLogger().lifecycle("Added {} to {}; they take effect with the next build", missing, file);
+        }
+        catch (IOException e) {
+            LOG.warn("Could not add {} to {}: {}", missing, file, e.toString());
+        }
+    }
+
+
+    /**
+     * Gives the compiler the suggested heap if it's forked and doesn't have a maximum heap set.
+     */
+    public void applyCompilerHeap(JavaCompile javaCompile) {
+        val options = javaCompile.getOptions();
+        if (options.isFork() && options.getForkOptions().getMemoryMaximumSize() == null) {
+            options.getForkOptions().setMemoryMaximumSize(suggestedCompilerHeapMb() + "m");
+        }
+    }
+
+
+    public String report() {
+        val text = new StringBuilder();
+        text.append("JDK:             ").append(System.getProperty("java.version")).append(" (").append(vendor).append(")\n");
+        text.append("Cores:           ").append(availableCores);
+        if (cpuLimit != null) text.append(" (limited to ").append(cpuLimit).append(" by the container)");
+        text.append('\n');
+        text.append("Memory:          ").append(physicalMemory == 0 ? "unknown" : physicalMemory / MB + "MB");
+        if (memoryLimit != null) text.append(" (limited to ").append(memoryLimit / MB).append("MB by the container)");
+        text.append('\n');
+        text.append("Compiler heap:   ").append(suggestedCompilerHeapMb()).append("m (for forked compilers)\n");
+        text.append("\nSuggested gradle.properties:\n");
+        suggestedGradleProperties().forEach((key, value) -> text.append(key).append('=').append(value).append('\n'));
+        return text.toString();
+    }
+
+
+    @Override
+    public String toString() {
+        return "BuildEnvironment{jdk=" + jdkVersion + ", vendor=" + vendor + ", cores=" + cores() +
+            ", memoryBytes=" + memoryBytes() + "}";
+    }
+
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+
+    private static long physicalMemory() {
+        val os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)os).getTotalPhysicalMemorySize();
+        }
+        return 0;
+    }
+
+
+    /**
+     * The CPU quota of the container, rounded up to whole cores, or null if there isn't one.
+     */
+    static @Nullable Integer cpuLimit(Path cgroupRoot) {
+        // cgroup v2: "<quota> <period>", or "max <period>"
+        val cpuMax = read(cgroupRoot.resolve("cpu.max"));
+        if (cpuMax != null) {
+            val parts = cpuMax.split("\\s+");
+            return (parts.length == 2 && !parts[0].equals("max")) ? cores(parts[0], parts[1]) : null;
+        }
+
+        // cgroup v1: a quota of -1 means there isn't one
+        val quota = read(cgroupRoot.resolve("cpu/cpu.cfs_quota_us"));
+        val period = read(cgroupRoot.resolve("cpu/cpu.cfs_period_us"));
+        return (quota != null && period != null && !quota.startsWith("-")) ? cores(quota, period) : null;
+    }
+
+
+    /**
+     * The memory limit of the container in bytes, or null if there isn't one.
+     */
+    static @Nullable Long memoryLimit(Path cgroupRoot) {
+        val limit = read(cgroupRoot.resolve("memory.max"));
+        val value = limit != null ? limit : read(cgroupRoot.resolve("memory/memory.limit_in_bytes"));
+        if (value == null || value.equals("max")) return null;
+        try {
+            val bytes = Long.parseLong(value);
+            return bytes >= UNLIMITED || bytes <= 0 ? null : bytes;
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    private static @Nullable Integer cores(String quota, String period) {
+        try {
+            val q = Long.parseLong(quota);
+            val p = Long.parseLong(period);
+            return p <= 0 || q <= 0 ? null : (int)Math.max(1, (q + p - 1) / p);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    private static @Nullable String read(Path file) {
+        if (!Files.isReadable(file)) return null;
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        }
+        catch (IOException e) {
+            LOG.debug("Could not read {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+}
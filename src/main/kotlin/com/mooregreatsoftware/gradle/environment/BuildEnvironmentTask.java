@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.environment;
+
+import lombok.val;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes what {@link BuildEnvironment} found, and what it suggests, to
+ * "build/reports/defaults-environment/environment.txt" of the root project, and shows it.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BuildEnvironmentTask extends DefaultTask {
+    public static final String TASK_NAME = "defaultsEnvironment";
+
+    private File reportFile;
+
+
+    public BuildEnvironmentTask() {
+        reportFile = new File(getProject().getBuildDir(), "reports/defaults-environment/environment.txt");
+        setDescription("Shows the cores and memory the build has, and the suggested Gradle settings for them");
+        setGroup("help");
+        // the machine can change under it (e.g., a different container), so it's never up-to-date
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+
+    /**
+     * Adds the task to the project, unless it's already there.
+     */
+    public static void register(Project project) {
+        if (project.getTasks().findByName(TASK_NAME) == null) {
+            project.getTasks().create(TASK_NAME, BuildEnvironmentTask.class);
+        }
+    }
+
+
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+
+    @TaskAction
+    public void writeReport() {
+        val report = BuildEnvironment.buildEnvironment(getProject()).report();
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            Files.write(reportFile.toPath(), report.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new GradleException("Could not write " + reportFile, e);
+        }
+        getLogger().lifecycle(report);
+    }
+
+}
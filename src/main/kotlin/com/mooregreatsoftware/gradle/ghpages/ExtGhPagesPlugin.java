@@ -15,8 +15,10 @@
  */
 package com.mooregreatsoftware.gradle.ghpages;
 
+import com.mooregreatsoftware.gradle.defaults.DefaultsPlugin;
 import com.mooregreatsoftware.gradle.defaults.ReadableDefaultsExtension;
 import com.mooregreatsoftware.gradle.defaults.ReadableDefaultsExtensionKt;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
 import lombok.val;
 import org.ajoberstar.gradle.git.ghpages.GithubPagesPlugin;
 import org.ajoberstar.gradle.git.ghpages.GithubPagesPluginExtension;
@@ -31,8 +33,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.mooregreatsoftware.gradle.util.LangUtils.tryGet;
 import static com.mooregreatsoftware.gradle.util.LangUtils.tryRun;
@@ -42,6 +49,9 @@ import static com.mooregreatsoftware.gradle.util.GrGitUtils.grgit;
  * Applies Andrew Oberstar's "GH-Pages" plugin
  * (see https://github.com/ajoberstar/gradle-git/wiki/Github%20Pages%20Plugin) and makes sure task
  * dependencies are correct.
+ * <p>
+ * The root project pulls in the API documentation of every project, looking the documentation tasks up by name when
+ * the task graph is built, so no other project has to reach into the root project's tasks.
  */
 @SuppressWarnings("Convert2MethodRef")
 public class ExtGhPagesPlugin implements Plugin<Project> {
@@ -52,6 +62,9 @@ public class ExtGhPagesPlugin implements Plugin<Project> {
 
     private static final String PREPARE_TASK_NAME = GithubPagesPlugin.getPREPARE_TASK_NAME();
 
+    private static final List<String> DOC_TASK_NAMES = Arrays.asList("javadoc", "groovydoc", "scaladoc", "dokka",
+        "dokkaJavadoc");
+
 
     @Override
     public void apply(Project project) {
@@ -70,10 +83,12 @@ public class ExtGhPagesPlugin implements Plugin<Project> {
         LOG.info("Applying plugin \'" + GITHUB_PAGES_PLUGIN_ID + "\'");
         project.getPlugins().apply(GITHUB_PAGES_PLUGIN_ID);
 
-        associateDocTasks(project);
+        // when the defaults are being applied project-by-project, each subproject sets up its own doc tasks
+        associateDocTasks(project, !DefaultsPlugin.isPerProjectMode(project));
         pagesCopySpec(project).addChild().from("src/gh-pages").into("/");
 
         val prepareTask = project.getTasks().getByName(PREPARE_TASK_NAME);
+        project.getAllprojects().forEach(prj -> DOC_TASK_NAMES.forEach(name -> addOutput(prepareTask, prj, name)));
         prepareTask.doFirst(it -> setRepoUri(project, readableDefaultsFuture));
     }
 
@@ -86,21 +101,27 @@ public class ExtGhPagesPlugin implements Plugin<Project> {
     }
 
 
-    private static void associateDocTasks(Project project) {
-        val plugins = project.getPlugins();
-        plugins.withId("org.gradle.java", it -> addOutput(project.getTasks().getByName("javadoc")));
-        plugins.withId("org.gradle.groovy", it -> addOutput(project.getTasks().getByName("groovydoc")));
-        plugins.withId("org.gradle.scala", it -> addOutput(project.getTasks().getByName("scaladoc")));
-        plugins.withId("kotlin", kotlinPlugin -> configKotlin(project));
+    private static void associateDocTasks(Project project, boolean includeSubprojects) {
+        associateDocTasks(project);
+
+        if (includeSubprojects)
+            project.getSubprojects().forEach(subproject -> associateDocTasks(subproject));
+    }
+
 
-        project.getSubprojects().forEach(subproject -> associateDocTasks(subproject));
+    /**
+     * Sets up the API documentation tasks of the project (but not its subprojects) that aren't there already, for the
+     * root project's GitHub Pages to pick up. Only the project itself is changed.
+     */
+    public static void associateDocTasks(Project project) {
+        project.getPlugins().withId("kotlin", kotlinPlugin -> configKotlin(project));
     }
 
 
     private static void configKotlin(Project project) {
         project.getPlugins().withId("org.jetbrains.dokka", dokkaPlugin -> configDokkaPlugin(project));
 
-        project.afterEvaluate(p -> {
+        ConfigurationProfiler.afterEvaluate(project, "ExtGhPagesPlugin.checkDokka", p -> {
             if (!project.getPlugins().hasPlugin("org.jetbrains.dokka")) {
                 LOG.warn("Using the Kotlin plugin, but Dokka is not being used for API documentation");
             }
@@ -109,15 +130,9 @@ public class ExtGhPagesPlugin implements Plugin<Project> {
 
 
     private static void configDokkaPlugin(Project project) {
-        Task dokkaTask = project.getTasks().getByName("dokka");
-        addOutput(dokkaTask);
-
-        Task dokkaJavadoc = project.getTasks().findByName("dokkaJavadoc");
-        if (dokkaJavadoc == null) {
-            dokkaJavadoc = tryGet(() -> createDokkaTask(project));
+        if (project.getTasks().findByName("dokkaJavadoc") == null) {
+            tryGet(() -> createDokkaTask(project));
         }
-
-        addOutput(dokkaJavadoc);
     }
 
 
@@ -137,15 +152,22 @@ public class ExtGhPagesPlugin implements Plugin<Project> {
     }
 
 
-    private static CopySpec addOutput(Task task) {
-        Project project = task.getProject();
-        LOG.info("Creating CopySpec for GhPages of " + project + " from " + task.getName());
-        val prepareTask = project.getRootProject().getTasks().getByName(PREPARE_TASK_NAME);
-        prepareTask.dependsOn(task);
-        FileCollection fromFiles = task.getOutputs().getFiles();
-        String intoDir = task.getPath().replace(':', '/');
-        LOG.info("Will copy {} to {}", fromFiles, intoDir);
-        return pagesCopySpec(project).addChild().into(intoDir).from(fromFiles);
+    /**
+     * Copies the output of the project's documentation task with the name (if it turns out to have one) into the
+     * root project's GitHub Pages, under the task's path.
+     */
+    private static CopySpec addOutput(Task prepareTask, Project project, String taskName) {
+        Callable<List<Task>> docTask = () -> {
+            Task task = project.getTasks().findByName(taskName);
+            return task == null ? Collections.emptyList() : Collections.singletonList(task);
+        };
+        prepareTask.dependsOn(docTask);
+        String intoDir = project.absoluteProjectPath(taskName).replace(':', '/');
+        LOG.info("Will copy the output of {} to {}", project.absoluteProjectPath(taskName), intoDir);
+        Callable<List<FileCollection>> fromFiles = () -> docTask.call().stream().
+            map(task -> task.getOutputs().getFiles()).
+            collect(Collectors.toList());
+        return pagesCopySpec(prepareTask.getProject()).addChild().into(intoDir).from(fromFiles);
     }
 
 
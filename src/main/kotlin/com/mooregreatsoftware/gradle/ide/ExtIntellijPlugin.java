@@ -38,8 +38,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static com.mooregreatsoftware.gradle.util.JavacUtils.PATH_SEPARATOR;
-import static com.mooregreatsoftware.gradle.util.JavacUtils.getMutableAnnotationProcessorClassNames;
-import static com.mooregreatsoftware.gradle.util.JavacUtils.getMutableAnnotationProcessorLibFiles;
+import static com.mooregreatsoftware.gradle.util.JavacUtils.getAnnotationProcessorClassNames;
+import static com.mooregreatsoftware.gradle.util.JavacUtils.getAnnotationProcessorLibFiles;
 import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension;
 import static com.mooregreatsoftware.gradle.util.xml.XmlUtilsKt.appendChild;
 import static com.mooregreatsoftware.gradle.util.xml.XmlUtilsKt.findByAttribute;
@@ -108,7 +108,7 @@ public class ExtIntellijPlugin implements Plugin<Project> {
         project.getPlugins().withId(ExtJavaPlugin.PLUGIN_ID, it -> {
             val profile = createProfileNode(project, annotationProcessing);
 
-            final List<File> bootClasspath = List.ofAll(JavacUtils.getMutableBootClasspath(project));
+            final List<File> bootClasspath = List.ofAll(JavacUtils.getBootClasspath(project));
             if (!bootClasspath.isEmpty()) {
                 val javacSettings = findByAttribute(componentNodes, "name", "JavacSettings",
                     () -> node.appendNode("component", mapOf("name", "JavacSettings"))
@@ -132,14 +132,14 @@ public class ExtIntellijPlugin implements Plugin<Project> {
     private static Node createProfileNode(Project project, Node node) {
         val profileAttrs = mapOf("default", "true", "name", "AnnotationProcessors", "enabled", "true");
 
-        final List<NodeBuilder> configurationFilesAsNodeBuilders = List.ofAll(getMutableAnnotationProcessorLibFiles(project)).
+        final List<NodeBuilder> configurationFilesAsNodeBuilders = List.ofAll(getAnnotationProcessorLibFiles(project)).
             sortBy(file -> file.getName()).
             map(file -> fileEntry(file));
 
-        val annotationProcessorOptions = JavacUtils.getMutableAnnotationProcessorOptions(project);
+        val annotationProcessorOptions = JavacUtils.getAnnotationProcessorOptions(project);
 
         val nodeBuilder = n("processorPath", mapOf("useClasspath", "false"), configurationFilesAsNodeBuilders);
-        val profileChildren = List.ofAll(getMutableAnnotationProcessorClassNames(project)).map(it -> n("processor", mapOf("name", it))).append(
+        val profileChildren = List.ofAll(getAnnotationProcessorClassNames(project)).map(it -> n("processor", mapOf("name", it))).append(
             nodeBuilder).appendAll(List.ofAll(annotationProcessorOptions).map(option -> n("option", mapOf("name", option.name, "value", option.value))));
 
         return XmlUtilsKt.appendChildren(node, "profile", profileAttrs, profileChildren);
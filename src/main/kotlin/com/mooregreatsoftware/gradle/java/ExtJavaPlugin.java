@@ -15,13 +15,16 @@
  */
 package com.mooregreatsoftware.gradle.java;
 
-import com.mooregreatsoftware.gradle.util.JavacUtils;
 import com.mooregreatsoftware.gradle.lang.AbstractLanguagePlugin;
+import com.mooregreatsoftware.gradle.util.GradleCompat;
+import com.mooregreatsoftware.gradle.util.JavacSettings;
+import com.mooregreatsoftware.gradle.util.JavacUtils;
 import lombok.val;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
-import org.gradle.api.Task;
 import org.gradle.api.tasks.compile.JavaCompile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static org.gradle.api.plugins.JavaPlugin.JAVADOC_TASK_NAME;
 
@@ -29,12 +32,27 @@ import static org.gradle.api.plugins.JavaPlugin.JAVADOC_TASK_NAME;
  * Extended Java Plugin.
  * <p>
  * Applies common defaults to how the Java plugin works.
+ * <p>
+ * If the "{@value #JAVA_LIBRARY_PROPERTY}" project property is true (and the version of Gradle is at least 3.4),
+ * the "java-library" plugin is applied as well, so dependencies can be declared as "api" (part of what consumers
+ * compile against) or "implementation" (only needed at runtime by consumers). A change to an "implementation"
+ * dependency then doesn't make the consumers recompile.
  */
 @SuppressWarnings("Convert2MethodRef")
 public class ExtJavaPlugin extends AbstractLanguagePlugin {
+    private static final Logger LOG = LoggerFactory.getLogger(ExtJavaPlugin.class);
 
     public static final String PLUGIN_ID = "com.mooregreatsoftware.java";
 
+    /**
+     * Project property to turn on the "java-library" plugin. It needs to be a project property (e.g., in
+     * "gradle.properties") rather than a setting in "defaults", since the "api" configuration has to exist before
+     * the build script's "dependencies" are declared.
+     */
+    public static final String JAVA_LIBRARY_PROPERTY = "defaults.javaLibrary";
+
+    private static final String JAVA_LIBRARY_PLUGIN_ID = "java-library";
+
 
     @Override
     protected String pluginId() {
@@ -50,12 +68,26 @@ public class ExtJavaPlugin extends AbstractLanguagePlugin {
 
     @Override
     protected void doApply(Project project) {
-        project.getTasks().withType(JavaCompile.class, new ConfigureJavaCompileTask());
+        if (useJavaLibrary(project)) project.getPlugins().apply(JAVA_LIBRARY_PLUGIN_ID);
+
+        // the annotation processor plugins register their settings after the project is evaluated, so the arguments
+        // are set once the task graph is ready: still before any task runs, so they're part of the compile's inputs
+        val configCompiler = new ConfigCompilerAction(JavacSettings.javacSettings(project));
+        project.getGradle().getTaskGraph().addTaskExecutionGraphListener(graph ->
+            project.getTasks().withType(JavaCompile.class, configCompiler));
     }
 
 
-    private static Task configureJavac(JavaCompile jcTask) {
-        return jcTask.doFirst(new ConfigCompilerAction());
+    private static boolean useJavaLibrary(Project project) {
+        if (!project.hasProperty(JAVA_LIBRARY_PROPERTY) ||
+            !Boolean.parseBoolean(String.valueOf(project.property(JAVA_LIBRARY_PROPERTY)).trim())) {
+            return false;
+        }
+        if (!GradleCompat.isAtLeast("3.4")) {
+            LOG.warn("Not applying \"{}\" to {}: it needs Gradle 3.4 or later", JAVA_LIBRARY_PLUGIN_ID, project);
+            return false;
+        }
+        return true;
     }
 
 
@@ -72,21 +104,21 @@ public class ExtJavaPlugin extends AbstractLanguagePlugin {
     // **********************************************************************
 
 
-    public static class ConfigCompilerAction implements Action<Task> {
-        @Override
-        public void execute(Task javaCompileTask) {
-            val compilerArgs = JavacUtils.createJavacArgs(javaCompileTask.getProject());
-            val javaCompile = (JavaCompile)javaCompileTask;
-            val options = javaCompile.getOptions();
+    /**
+     * Sets the compiler arguments from the project's {@link JavacSettings}.
+     */
+    public static class ConfigCompilerAction implements Action<JavaCompile> {
+        private final JavacSettings javacSettings;
 
-            options.setCompilerArgs(compilerArgs);
+
+        public ConfigCompilerAction(JavacSettings javacSettings) {
+            this.javacSettings = javacSettings;
         }
-    }
 
-    private static class ConfigureJavaCompileTask implements Action<JavaCompile> {
+
         @Override
         public void execute(JavaCompile javaCompile) {
-            ExtJavaPlugin.configureJavac(javaCompile);
+            javaCompile.getOptions().setCompilerArgs(JavacUtils.createJavacArgs(javacSettings));
         }
     }
 
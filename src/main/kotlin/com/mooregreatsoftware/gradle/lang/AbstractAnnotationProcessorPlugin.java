@@ -15,6 +15,7 @@
  */
 package com.mooregreatsoftware.gradle.lang;
 
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
 import com.mooregreatsoftware.gradle.util.JavacUtils;
 import lombok.val;
 import org.gradle.api.Plugin;
@@ -42,7 +43,7 @@ public abstract class AbstractAnnotationProcessorPlugin implements Plugin<Projec
         val plugins = project.getPlugins();
         plugins.apply("com.mooregreatsoftware.java");
         plugins.withId("org.gradle.idea", plugin -> plugins.apply("com.mooregreatsoftware.idea"));
-        project.afterEvaluate(proj -> {
+        ConfigurationProfiler.afterEvaluate(project, getClass().getSimpleName() + ".registerWithJavac", proj -> {
             registerWithJavac(project);
             addCompileOnlyDependencies(proj);
         });
@@ -79,6 +80,10 @@ public abstract class AbstractAnnotationProcessorPlugin implements Plugin<Projec
     protected abstract void addCompileOnlyDependencies(Project project);
 
 
+    /**
+     * Adds the dependency (e.g., the processor's annotations) to "compileOnly", so it's never part of what
+     * consumers of the project compile against, nor of the published POM.
+     */
     protected static void addCompileOnlyDependency(Project project, Dependency checkerDep) {
         project.getConfigurations().getByName(JavaPlugin.COMPILE_ONLY_CONFIGURATION_NAME).getDependencies().add(checkerDep);
     }
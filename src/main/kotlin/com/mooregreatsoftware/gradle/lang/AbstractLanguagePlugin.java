@@ -15,61 +15,120 @@
  */
 package com.mooregreatsoftware.gradle.lang;
 
-//import com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt;
+import com.mooregreatsoftware.gradle.defaults.BuildProfile;
 import com.mooregreatsoftware.gradle.maven.MavenPublishPublications;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
+import com.mooregreatsoftware.gradle.util.GradleCompat;
 import com.mooregreatsoftware.gradle.util.GrGitUtils;
 import com.mooregreatsoftware.gradle.util.ProjectUtilsKt;
 import lombok.val;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.plugins.BasePlugin;
 import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.publish.maven.tasks.AbstractPublishToMaven;
+import org.gradle.api.tasks.Upload;
 import org.gradle.api.tasks.bundling.Jar;
-import org.gradle.api.tasks.compile.AbstractCompile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import static com.mooregreatsoftware.gradle.defaults.BuildProfile.buildProfile;
+import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension;
+import static java.util.Arrays.asList;
 import static org.gradle.api.plugins.JavaPlugin.JAR_TASK_NAME;
 
 public abstract class AbstractLanguagePlugin implements Plugin<Project> {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractLanguagePlugin.class);
-    private static final String SOURCES_JAR_TASK_NAME = "sourcesJar";
+    public static final String SOURCES_JAR_TASK_NAME = "sourcesJar";
+    private static final String IMPLEMENTATION_TITLE = "Implementation-Title";
+    private static final String IMPLEMENTATION_VERSION = "Implementation-Version";
+    private static final List<String> BUILD_INFO_ATTRIBUTES = asList("Built-By", "Built-Date", "Built-JDK", "Built-Gradle");
 
 
     private static void configureLanguageTasks(Project project) {
-        project.getTasks().withType(Jar.class, jarTask ->
-            jarTask.doFirst(task -> configureManifestAttributes(jarTask))
-        );
+        val manifestAttributes = new ManifestAttributesAction(GrGitUtils.userEmailSupplier(project));
+        ConfigurationProfiler.afterEvaluate(project, "AbstractLanguagePlugin.manifestAttributes", prj -> {
+            val defaults = defaultsExtension(prj);
+            manifestAttributes.projectAttributes(prj, defaults.getReproducibleArchives());
+            if (defaults.getReproducibleArchives()) {
+                prj.getTasks().withType(Jar.class, jarTask -> makeReproducible(jarTask));
+                if (defaults.getBuildInfoFile()) buildInfoTask(prj);
+            }
+            else {
+                ignoreBuildInfoOnRuntimeClasspath(prj);
+            }
+        });
+
+        project.getTasks().withType(Jar.class, jarTask -> jarTask.doFirst(manifestAttributes));
     }
 
 
-    private static void configureManifestAttributes(Jar jarTask) {
-        LOG.debug("Setting MANIFEST.MF attributes for {}", jarTask);
-        val attrs = manifestAttributes(jarTask.getProject());
+    /**
+     * Have changes to just the build information in MANIFEST.MF not count as a change to the runtime classpath,
+     * so that tasks like "test" that consume the jars of other projects stay up-to-date.
+     * <p>
+     * This needs Gradle 6.6 or later, which can ignore just those attributes. Earlier versions could only ignore the
+     * whole MANIFEST.MF, which would hide real changes (e.g., to "Main-Class" or "Class-Path") from the consumers,
+     * so nothing is done there; reproducible archives avoid the problem instead.
+     */
+    private static void ignoreBuildInfoOnRuntimeClasspath(Project project) {
+        if (!GradleCompat.isAtLeast("6.6")) return;
+
+        // the normalization API is newer than the API being compiled against
+        val normalization = InvokerHelper.getProperty(project, "normalization");
+        val runtimeClasspath = InvokerHelper.getProperty(normalization, "runtimeClasspath");
+        InvokerHelper.invokeMethod(runtimeClasspath, "metaInf", (Action<Object>)metaInf ->
+            BUILD_INFO_ATTRIBUTES.forEach(attr -> InvokerHelper.invokeMethod(metaInf, "ignoreAttribute", attr)));
+    }
+
 
-        jarTask.getManifest().attributes(attrs);
+    /**
+     * Have the entries of the archive written in a consistent order, with fixed timestamps, so that the same
+     * inputs always produce a byte-for-byte identical archive.
+     */
+    private static void makeReproducible(Jar jarTask) {
+        if (GradleCompat.isAtLeast("3.4")) {
+            // set reflectively since the API being compiled against predates these properties
+            jarTask.setProperty("preserveFileTimestamps", false);
+            jarTask.setProperty("reproducibleFileOrder", true);
+        }
+        else if (jarTask.getName().equals(JAR_TASK_NAME)) {
+            LOG.warn("Gradle {} can not produce reproducible archives (3.4 or later is needed), so only the " +
+                "MANIFEST.MF for {} will be stable", jarTask.getProject().getGradle().getGradleVersion(), jarTask);
+        }
     }
 
 
-    private static Map<String, String> manifestAttributes(Project project) {
-        val attrs = new HashMap<String, String>();
-        attrs.put("Implementation-Title", project.getDescription() != null ? project.getDescription() : project.getName());
-        attrs.put("Implementation-Version", project.getVersion().toString());
-        attrs.put("Built-By", builtBy(project));
-        attrs.put("Built-Date", Instant.now().toString());
-        attrs.put("Built-JDK", System.getProperty("java.version"));
-        attrs.put("Built-Gradle", project.getGradle().getGradleVersion());
-        return attrs;
+    /**
+     * With reproducible archives the build information is not in MANIFEST.MF, so write it to its own file.
+     */
+    private static void buildInfoTask(Project project) {
+        if (project.getTasks().findByName(BuildInfoTask.TASK_NAME) != null) return;
+
+        val buildInfoTask = project.getTasks().create(BuildInfoTask.TASK_NAME, BuildInfoTask.class);
+        buildInfoTask.setDescription("Writes who/when/what built the archives to build-info.properties");
+        buildInfoTask.getBuildInfo().put(IMPLEMENTATION_TITLE, implementationTitle(project));
+        buildInfoTask.getBuildInfo().put(IMPLEMENTATION_VERSION, project.getVersion());
+
+        val assembleTask = project.getTasks().findByName(BasePlugin.ASSEMBLE_TASK_NAME);
+        if (assembleTask != null) assembleTask.dependsOn(buildInfoTask);
     }
 
 
-    private static String builtBy(Project project) {
-        return GrGitUtils.userEmail(project);
+    private static String implementationTitle(Project project) {
+        return project.getDescription() != null ? project.getDescription() : project.getName();
     }
 
 
@@ -84,6 +143,42 @@ public abstract class AbstractLanguagePlugin implements Plugin<Project> {
         doApply(project);
 
         configureLanguageTasks(project);
+
+        ConfigurationProfiler.afterEvaluate(project, "AbstractLanguagePlugin.buildProfile", prj -> {
+            if (buildProfile(prj) == BuildProfile.DEV) skipDocumentation(prj);
+        });
+    }
+
+
+    /**
+     * The "dev" build profile doesn't build the sources and documentation JARs, nor the documentation for them.
+     * The tasks are disabled rather than removed, so the publication still knows about the artifacts, which is why
+     * publishing with that profile fails before anything runs instead of publishing stale or missing JARs.
+     */
+    private void skipDocumentation(Project project) {
+        for (@Nullable String taskName : asList(SOURCES_JAR_TASK_NAME, docJarTaskName(), docTaskName())) {
+            val task = taskName != null ? project.getTasks().findByName(taskName) : null;
+            if (task != null) {
+                LOG.info("Skipping {} with the \"{}\" build profile", task, BuildProfile.DEV.id());
+                task.setEnabled(false);
+            }
+        }
+        project.getGradle().getTaskGraph().addTaskExecutionGraphListener(graph ->
+            graph.getAllTasks().stream().
+                filter(task -> task.getProject() == project && isPublishing(task)).
+                findFirst().
+                ifPresent(task -> {
+                    throw new GradleException("Can not run " + task.getPath() + " with the \"" +
+                        BuildProfile.DEV.id() + "\" build profile, which doesn't build the sources and documentation " +
+                        "JARs: use \"-P" + BuildProfile.PROFILE_PROPERTY + "=" + BuildProfile.CI.id() + "\"");
+                })
+        );
+    }
+
+
+    private static boolean isPublishing(Task task) {
+        return task instanceof AbstractPublishToMaven || task instanceof Upload ||
+            task.getName().equals("bintrayUpload");
     }
 
 
@@ -201,4 +296,54 @@ public abstract class AbstractLanguagePlugin implements Plugin<Project> {
         return (Jar)project.getTasks().findByName(JAR_TASK_NAME);
     }
 
+
+    /**
+     * Sets the MANIFEST.MF attributes on the Jar. The values that come from the project are captured once it has
+     * been evaluated, so the action does not touch the project when it runs.
+     */
+    private static final class ManifestAttributesAction implements Action<Task>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Supplier<String> builtBy;
+        private @Nullable String implementationTitle;
+        private @Nullable Object implementationVersion;
+        private @Nullable String gradleVersion;
+        private boolean reproducible;
+
+
+        ManifestAttributesAction(Supplier<String> builtBy) {
+            this.builtBy = builtBy;
+        }
+
+
+        void projectAttributes(Project project, boolean reproducible) {
+            implementationTitle = implementationTitle(project);
+            // kept as-is, since things like the release plugin's version are only inferred when asked
+            implementationVersion = project.getVersion();
+            gradleVersion = project.getGradle().getGradleVersion();
+            this.reproducible = reproducible;
+        }
+
+
+        @Override
+        public void execute(Task task) {
+            LOG.debug("Setting MANIFEST.MF attributes for {}", task);
+            ((Jar)task).getManifest().attributes(manifestAttributes());
+        }
+
+
+        private Map<String, String> manifestAttributes() {
+            val attrs = new LinkedHashMap<String, String>();
+            if (implementationTitle != null) attrs.put(IMPLEMENTATION_TITLE, implementationTitle);
+            if (implementationVersion != null) attrs.put(IMPLEMENTATION_VERSION, implementationVersion.toString());
+            if (reproducible) return attrs;
+
+            attrs.put("Built-By", builtBy.get());
+            attrs.put("Built-Date", Instant.now().toString());
+            attrs.put("Built-JDK", System.getProperty("java.version"));
+            if (gradleVersion != null) attrs.put("Built-Gradle", gradleVersion);
+            return attrs;
+        }
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.lang;
+
+import com.mooregreatsoftware.gradle.util.GrGitUtils;
+import lombok.val;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Writes the build information (who built it, when, with what) to a properties file beside the archives, instead
+ * of into each archive's MANIFEST.MF.
+ *
+ * @see AbstractLanguagePlugin
+ */
+@SuppressWarnings("WeakerAccess")
+public class BuildInfoTask extends DefaultTask {
+    public static final String TASK_NAME = "buildInfo";
+
+    private final Map<String, Object> buildInfo = new TreeMap<>();
+    private final String gradleVersion;
+    private Supplier<String> builtBy;
+    private File buildInfoFile;
+
+
+    public BuildInfoTask() {
+        gradleVersion = getProject().getGradle().getGradleVersion();
+        builtBy = GrGitUtils.userEmailSupplier(getProject());
+        buildInfoFile = new File(getProject().getBuildDir(), "build-info.properties");
+        // it records the time of the build, so is never up-to-date
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+
+    /**
+     * Additional values to write, such as "Implementation-Version". Converted with {@link Object#toString()} when
+     * the file is written, so lazy values like the project's version are fine. Mutable.
+     */
+    public Map<String, Object> getBuildInfo() {
+        return buildInfo;
+    }
+
+
+    /**
+     * Supplies the "Built-By" value. Defaults to the user's email from git.
+     */
+    public void setBuiltBy(Supplier<String> builtBy) {
+        this.builtBy = builtBy;
+    }
+
+
+    @OutputFile
+    public File getBuildInfoFile() {
+        return buildInfoFile;
+    }
+
+
+    public void setBuildInfoFile(File buildInfoFile) {
+        this.buildInfoFile = buildInfoFile;
+    }
+
+
+    @TaskAction
+    public void writeBuildInfo() {
+        val properties = new Properties();
+        buildInfo.forEach((key, value) -> properties.setProperty(key, value.toString()));
+        properties.setProperty("Built-By", builtBy.get());
+        properties.setProperty("Built-Date", Instant.now().toString());
+        properties.setProperty("Built-JDK", System.getProperty("java.version"));
+        properties.setProperty("Built-Gradle", gradleVersion);
+        try {
+            Files.createDirectories(buildInfoFile.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(buildInfoFile.toPath(), StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Could not write " + buildInfoFile, e);
+        }
+    }
+
+}
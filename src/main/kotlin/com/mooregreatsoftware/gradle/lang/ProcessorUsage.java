@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.lang;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import com.mooregreatsoftware.gradle.util.ProjectUtilsKt;
+import lombok.val;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Detects whether the Java source of a project actually uses Lombok or the Checker Framework, so the annotation
+ * processors are only put on the compiler for projects that need them. That's on by default for Lombok, but only
+ * when asked for (see {@link #CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY}) for the Checker Framework, since skipping it
+ * silently skips the checking.
+ * <p>
+ * A source file "uses" a library if it refers to the library's packages ("lombok." or "org.checkerframework."),
+ * which covers both imports and fully-qualified annotations.
+ * <p>
+ * What was found is cached per source set in "build/defaults/processor-usage", keyed by each file's size and
+ * modification time, so only new or changed files are read again.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ProcessorUsage {
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessorUsage.class);
+
+    private static final String STATE_KEY = ProcessorUsage.class.getName();
+
+    /**
+     * Project property to turn off detection, so the processors are used for every project with Java source.
+     * Defaults to "true".
+     */
+    public static final String ONLY_WHEN_USED_PROPERTY = "defaults.processorsOnlyWhenUsed";
+
+    /**
+     * Project property to also skip the Checker Framework for projects whose source doesn't refer to it. Defaults
+     * to "false", and has no effect if {@link #ONLY_WHEN_USED_PROPERTY} is "false".
+     */
+    public static final String CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY = "defaults.checkerFrameworkOnlyWhenUsed";
+
+    static final String CACHE_DIR = "defaults/processor-usage";
+
+    private static final int LOMBOK = 1;
+    private static final int CHECKER_FRAMEWORK = 2;
+
+    private static final Pattern LOMBOK_PATTERN = Pattern.compile("\\blombok\\.");
+    private static final Pattern CHECKER_FRAMEWORK_PATTERN = Pattern.compile("\\borg\\.checkerframework\\.");
+
+    private final int usage;
+
+
+    private ProcessorUsage(int usage) {
+        this.usage = usage;
+    }
+
+
+    /**
+     * Retrieves the usage for the project (kept in the {@link BuildState}). It's detected if this is the first
+     * request.
+     */
+    public static ProcessorUsage processorUsage(Project project) {
+        return BuildState.projectState(project, STATE_KEY, () -> new ProcessorUsage(detect(project)));
+    }
+
+
+    /**
+     * Is detection turned on for the project? (See {@link #ONLY_WHEN_USED_PROPERTY})
+     */
+    public static boolean onlyWhenUsed(Project project) {
+        return booleanProperty(project, ONLY_WHEN_USED_PROPERTY, true);
+    }
+
+
+    /**
+     * Is detection turned on for the Checker Framework? (See {@link #CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY})
+     */
+    public static boolean checkerFrameworkOnlyWhenUsed(Project project) {
+        return onlyWhenUsed(project) && booleanProperty(project, CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY, false);
+    }
+
+
+    private static boolean booleanProperty(Project project, String name, boolean defaultValue) {
+        if (!project.hasProperty(name)) return defaultValue;
+        return Boolean.parseBoolean(String.valueOf(project.property(name)).trim());
+    }
+
+
+    public boolean usesLombok() {
+        return (usage & LOMBOK) != 0;
+    }
+
+
+    public boolean usesCheckerFramework() {
+        return (usage & CHECKER_FRAMEWORK) != 0;
+    }
+
+
+    private static int detect(Project project) {
+        val sourceSets = ProjectUtilsKt.sourceSets(project.getConvention());
+        // can't tell, so assume everything is used
+        if (sourceSets == null) return LOMBOK | CHECKER_FRAMEWORK;
+
+        int usage = 0;
+        for (SourceSet sourceSet : sourceSets) {
+            val cacheFile = new File(project.getBuildDir(), CACHE_DIR + "/" + sourceSet.getName() + ".txt").toPath();
+            usage |= detect(sourceSet.getAllJava().getFiles(), cacheFile);
+        }
+        return usage;
+    }
+
+
+    static int detect(Iterable<File> javaFiles, Path cacheFile) {
+        val previous = readCache(cacheFile);
+        val current = new TreeMap<String, Entry>();
+
+        int usage = 0;
+        for (File file : javaFiles) {
+            val path = file.getAbsolutePath();
+            val cached = previous.get(path);
+            val entry = (cached != null && cached.matches(file)) ? cached : new Entry(file, scan(file));
+            current.put(path, entry);
+            usage |= entry.usage;
+        }
+
+        if (!current.equals(previous)) writeCache(cacheFile, current);
+        return usage;
+    }
+
+
+    private static int scan(File file) {
+        try {
+            val content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int usage = 0;
+            if (LOMBOK_PATTERN.matcher(content).find()) usage |= LOMBOK;
+            if (CHECKER_FRAMEWORK_PATTERN.matcher(content).find()) usage |= CHECKER_FRAMEWORK;
+            return usage;
+        }
+        catch (IOException e) {
+            LOG.warn("Could not read " + file + ", so assuming it uses Lombok and the Checker Framework", e);
+            return LOMBOK | CHECKER_FRAMEWORK;
+        }
+    }
+
+
+    private static Map<String, Entry> readCache(Path cacheFile) {
+        val entries = new HashMap<String, Entry>();
+        if (!Files.isRegularFile(cacheFile)) return entries;
+        try {
+            for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+                val parts = line.split("\t", 4);
+                if (parts.length != 4) continue;
+                entries.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2])));
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            LOG.info("Ignoring unreadable processor usage cache {}: {}", cacheFile, e.toString());
+            entries.clear();
+        }
+        return entries;
+    }
+
+
+    private static void writeCache(Path cacheFile, Map<String, Entry> entries) {
+        val text = new StringBuilder();
+        entries.forEach((path, entry) ->
+            text.append(entry.lastModified).append('\t').append(entry.length).append('\t').
+                append(entry.usage).append('\t').append(path).append('\n'));
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Files.write(cacheFile, text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            LOG.info("Could not write processor usage cache {}: {}", cacheFile, e.toString());
+        }
+    }
+
+
+    private static final class Entry {
+        final long lastModified;
+        final long length;
+        final int usage;
+
+
+        Entry(long lastModified, long length, int usage) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.usage = usage;
+        }
+
+
+        Entry(File file, int usage) {
+            this(file.lastModified(), file.length(), usage);
+        }
+
+
+        boolean matches(File file) {
+            return lastModified == file.lastModified() && length == file.length();
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Entry)) return false;
+            val entry = (Entry)o;
+            return lastModified == entry.lastModified && length == entry.length && usage == entry.usage;
+        }
+
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(lastModified) + Long.hashCode(length)) + usage;
+        }
+    }
+
+}
@@ -15,7 +15,11 @@
  */
 package com.mooregreatsoftware.gradle.license;
 
+import com.mooregreatsoftware.gradle.affected.AffectedProjects;
+import com.mooregreatsoftware.gradle.defaults.BuildProfile;
 import com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
+import com.mooregreatsoftware.gradle.util.Integration;
 import groovy.lang.GroovyObject;
 import lombok.val;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -24,6 +28,7 @@ import org.gradle.api.Project;
 import org.gradle.api.internal.plugins.PluginApplicationException;
 import org.gradle.api.plugins.Convention;
 import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.tasks.SourceTask;
 
 import java.lang.reflect.InvocationTargetException;
 
@@ -55,9 +60,39 @@ public class ExtLicensePlugin implements Plugin<Project> {
         }
 
 
-        project.afterEvaluate(p ->
+        ConfigurationProfiler.afterEvaluate(project, "ExtLicensePlugin.configLicenseExtension", p ->
             configLicenseExtension(DefaultsExtensionKt.defaultsExtension(project).getCopyrightYears(), licenseExt)
         );
+
+        ConfigurationProfiler.afterEvaluate(project, "ExtLicensePlugin.buildProfile", p -> {
+            if (BuildProfile.buildProfile(p) == BuildProfile.DEV) onlyCheckChangedFiles(p);
+        });
+    }
+
+
+    /**
+     * With the "dev" build profile, the license check tasks (e.g., "licenseMain", but not "licenseFormatMain") only
+     * look at the files changed since the base revision. Finding those needs gradle-git, which is optional even when
+     * the license plugin is there; without it every file is checked.
+     *
+     * @see AffectedProjects#changedFiles(Project)
+     */
+    private static void onlyCheckChangedFiles(Project project) {
+        val checkTasks = project.getTasks().withType(SourceTask.class).matching(task ->
+            task.getName().startsWith("license") && !task.getName().startsWith("licenseFormat"));
+        if (checkTasks.isEmpty()) return;
+
+        if (!Integration.GRADLE_GIT.isAvailable()) {
+            project.getLogger().info("Checking the license headers of all the files in {}: to only check the changed " +
+                "files, {}", project, Integration.GRADLE_GIT.howToEnable());
+            return;
+        }
+        val changedFiles = AffectedProjects.changedFiles(project);
+        if (changedFiles == null) {
+            project.getLogger().info("Checking the license headers of all the files in {}: the changed files are not known", project);
+            return;
+        }
+        checkTasks.forEach(task -> task.include(element -> element.isDirectory() || changedFiles.contains(element.getFile())));
     }
 
 
@@ -16,6 +16,7 @@
 package com.mooregreatsoftware.gradle.maven;
 
 import com.mooregreatsoftware.gradle.defaults.DefaultsExtension;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
 import com.mooregreatsoftware.gradle.util.xml.NodeBuilder;
 import com.mooregreatsoftware.gradle.util.ProjectUtilsKt;
 import groovy.util.Node;
@@ -28,13 +29,17 @@ import org.gradle.api.Project;
 import org.gradle.api.XmlProvider;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
-import org.gradle.api.artifacts.DependencySet;
 import org.gradle.api.publish.PublishingExtension;
 import org.gradle.api.publish.maven.MavenPublication;
 import org.gradle.api.publish.maven.internal.publication.MavenPomInternal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
 import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension;
 import static com.mooregreatsoftware.gradle.util.xml.XmlUtilsKt.appendChild;
 import static com.mooregreatsoftware.gradle.util.xml.XmlUtilsKt.appendChildren;
@@ -87,7 +92,8 @@ public class MavenPublishPublications {
 
         publishing.getRepositories().mavenLocal();
 
-        project.afterEvaluate(prj -> groupid(project, (MavenPomInternal)pub.getPom()));
+        ConfigurationProfiler.afterEvaluate(project, "MavenPublishPublications.groupid",
+            prj -> groupid(project, (MavenPomInternal)pub.getPom()));
 
         configPom(project, pub);
 
@@ -171,30 +177,67 @@ public class MavenPublishPublications {
     }
 
 
+    /**
+     * Adds the dependencies with their Maven scopes: what consumers compile against ("api" and "compile", which is
+     * still on the consumers' compile classpath with the "java-library" plugin) is "compile", and the rest of what's
+     * needed at runtime is "runtime". Compile-only dependencies (such as the annotation processors' annotations) are
+     * left out.
+     */
     private static void dependencies(Node node, Project project) {
-        final Configuration runtime = project.getConfigurations().findByName("runtime");
-        if (runtime != null) {
-            final DependencySet allDependencies = runtime.getAllDependencies();
-            if (!allDependencies.isEmpty()) {
-                final Node dependenciesNode = node.appendNode("dependencies");
-                for (Dependency dependency : allDependencies) {
-                    if (dependency.getGroup() != null) {
-                        final Node dependencyNode = dependenciesNode.appendNode("dependency");
-                        dependencyNode.appendNode("groupId", dependency.getGroup());
-                        dependencyNode.appendNode("artifactId", dependency.getName());
-                        dependencyNode.appendNode("version", dependency.getVersion());
-                    }
-                    else {
-                        LOG.warn("There is a \"null\" dependency (likely pointing directly to a file): ignoring it for the POM generation for {}", project);
-                    }
-                }
-            }
-            else {
-                LOG.info("There are no dependencies in the \"runtime\" configuration for {}", project);
+        val runtime = firstConfiguration(project, "runtimeClasspath", "runtime");
+        if (runtime == null) {
+            LOG.info("There is no \"runtime\" configuration, so not adding any dependencies to the generated POM for {}", project);
+            return;
+        }
+        if (runtime.getAllDependencies().isEmpty()) {
+            LOG.info("There are no dependencies in the \"{}\" configuration for {}", runtime.getName(), project);
+            return;
+        }
+
+        val compileDependencies = new ArrayList<Dependency>();
+        for (String name : Arrays.asList("api", "compile")) {
+            val compile = project.getConfigurations().findByName(name);
+            if (compile == null) continue;
+            for (Dependency dependency : compile.getAllDependencies()) {
+                if (!containsModule(compileDependencies, dependency)) compileDependencies.add(dependency);
             }
         }
+
+        final Node dependenciesNode = node.appendNode("dependencies");
+        for (Dependency dependency : compileDependencies) {
+            appendDependency(dependenciesNode, dependency, "compile", project);
+        }
+        for (Dependency dependency : runtime.getAllDependencies()) {
+            if (!containsModule(compileDependencies, dependency)) appendDependency(dependenciesNode, dependency, "runtime", project);
+        }
+    }
+
+
+    private static boolean containsModule(Collection<Dependency> dependencies, Dependency dependency) {
+        return dependencies.stream().anyMatch(dep ->
+            Objects.equals(dep.getGroup(), dependency.getGroup()) && dep.getName().equals(dependency.getName()));
+    }
+
+
+    private static @Nullable Configuration firstConfiguration(Project project, String... names) {
+        for (String name : names) {
+            val configuration = project.getConfigurations().findByName(name);
+            if (configuration != null) return configuration;
+        }
+        return null;
+    }
+
+
+    private static void appendDependency(Node dependenciesNode, Dependency dependency, String scope, Project project) {
+        if (dependency.getGroup() != null) {
+            final Node dependencyNode = dependenciesNode.appendNode("dependency");
+            dependencyNode.appendNode("groupId", dependency.getGroup());
+            dependencyNode.appendNode("artifactId", dependency.getName());
+            dependencyNode.appendNode("version", dependency.getVersion());
+            dependencyNode.appendNode("scope", scope);
+        }
         else {
-            LOG.info("There is no \"runtime\" configuration, so not adding any dependencies to the generated POM for {}", project);
+            LOG.warn("There is a \"null\" dependency (likely pointing directly to a file): ignoring it for the POM generation for {}", project);
         }
     }
 
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.mirror;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local directory in the Maven repository layout, with ".sha1" and ".md5" checksums for every file, that a build
+ * can use instead of its usual repositories.
+ * <p>
+ * The projects' {@link MirrorTask}s share one, so it can be written to from several threads.
+ *
+ * @see MirrorTask
+ */
+@SuppressWarnings("WeakerAccess")
+public final class MavenMirror {
+    private static final Logger LOG = LoggerFactory.getLogger(MavenMirror.class);
+
+    /**
+     * Project property that, when set, makes every project use the mirror as its only repository. "true" (or no
+     * value) uses "{@value #DEFAULT_DIR}" of the root project, "false" leaves the repositories alone, and anything
+     * else is the path (relative to the root project) of the mirror.
+     */
+    public static final String MIRROR_PROPERTY = "defaults.mirror";
+
+    /**
+     * The default location of the mirror, relative to the root project.
+     */
+    public static final String DEFAULT_DIR = "gradle/mirror";
+
+    /**
+     * The name the mirror is given in the projects' repositories.
+     */
+    public static final String REPOSITORY_NAME = "defaultsMirror";
+
+    private static final Map<String, String> CHECKSUMS = new LinkedHashMap<>();
+
+    static {
+        CHECKSUMS.put("SHA-1", "sha1");
+        CHECKSUMS.put("MD5", "md5");
+    }
+
+    private final Path root;
+    private long filesAdded;
+    private long bytesAdded;
+
+
+    public MavenMirror(File dir) {
+        this.root = dir.toPath();
+    }
+
+
+    /**
+     * Is the mirror to be used instead of the usual repositories? (See {@link #MIRROR_PROPERTY}.)
+     */
+    public static boolean useMirror(Project project) {
+        return project.getRootProject().hasProperty(MIRROR_PROPERTY) &&
+            !mirrorProperty(project).equalsIgnoreCase("false");
+    }
+
+
+    /**
+     * Where the mirror is (or is to be written).
+     */
+    public static File mirrorDir(Project project) {
+        val value = mirrorProperty(project);
+        val isFlag = value.isEmpty() || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false");
+        return project.getRootProject().file(isFlag ? DEFAULT_DIR : value);
+    }
+
+
+    private static String mirrorProperty(Project project) {
+        val rootProject = project.getRootProject();
+        return rootProject.hasProperty(MIRROR_PROPERTY) ?
+            String.valueOf(rootProject.property(MIRROR_PROPERTY)).trim() : "";
+    }
+
+
+    /**
+     * Replaces the project's repositories with the mirror.
+     */
+    public static void rewireRepositories(Project project, File mirrorDir) {
+        if (!mirrorDir.isDirectory()) {
+            throw new GradleException("There is no mirror at " + mirrorDir + ": create it with \"gradle " +
+                MirrorTask.TASK_NAME + "\" (without \"-P" + MIRROR_PROPERTY + "\")");
+        }
+        val repositories = project.getRepositories();
+        repositories.clear();
+        repositories.maven(maven -> {
+            maven.setName(REPOSITORY_NAME);
+            maven.setUrl(mirrorDir);
+        });
+        project.getLogger().info("Using only the mirror at {} for {}", mirrorDir, project);
+    }
+
+
+    /**
+     * Copies the file into the mirror, unless the mirror already has it.
+     *
+     * @param classifier may be null
+     * @return was the file added?
+     */
+    public synchronized boolean add(ModuleComponentIdentifier id, @Nullable String classifier, String extension, File file) {
+        val target = root.resolve(path(id, classifier, extension));
+        try {
+            if (Files.exists(target) && Files.size(target) == file.length()) return false;
+            Files.createDirectories(target.getParent());
+            Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            writeChecksums(target);
+        }
+        catch (IOException e) {
+            throw new GradleException("Could not add " + file + " to the mirror at " + root, e);
+        }
+        filesAdded++;
+        bytesAdded += file.length();
+        return true;
+    }
+
+
+    public synchronized boolean hasPom(ModuleComponentIdentifier id) {
+        return Files.exists(root.resolve(path(id, null, "pom")));
+    }
+
+
+    /**
+     * Writes a POM with just the coordinates, for a module that came from a repository without one (e.g., a
+     * "flatDir"), so that it can be found in the mirror. A POM that's already there is left alone.
+     */
+    public synchronized void addMinimalPom(ModuleComponentIdentifier id) {
+        val target = root.resolve(path(id, null, "pom"));
+        if (Files.exists(target)) return;
+        val pom = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n" +
+            "  <modelVersion>4.0.0</modelVersion>\n" +
+            "  <groupId>" + id.getGroup() + "</groupId>\n" +
+            "  <artifactId>" + id.getModule() + "</artifactId>\n" +
+            "  <version>" + id.getVersion() + "</version>\n" +
+            "</project>\n";
+        try {
+            Files.createDirectories(target.getParent());
+            Files.write(target, pom.getBytes(StandardCharsets.UTF_8));
+            writeChecksums(target);
+        }
+        catch (IOException e) {
+            throw new GradleException("Could not write " + target, e);
+        }
+        filesAdded++;
+    }
+
+
+    public synchronized long filesAdded() {
+        return filesAdded;
+    }
+
+
+    public synchronized long bytesAdded() {
+        return bytesAdded;
+    }
+
+
+    /**
+     * The path of the file in the Maven repository layout; e.g., "com/example/util/1.0/util-1.0-sources.jar".
+     */
+    static String path(ModuleComponentIdentifier id, @Nullable String classifier, String extension) {
+        return id.getGroup().replace('.', '/') + "/" + id.getModule() + "/" + id.getVersion() + "/" +
+            id.getModule() + "-" + id.getVersion() + (classifier == null || classifier.isEmpty() ? "" : "-" + classifier) +
+            "." + extension;
+    }
+
+
+    private static void writeChecksums(Path file) throws IOException {
+        for (Map.Entry<String, String> checksum : CHECKSUMS.entrySet()) {
+            Files.write(file.resolveSibling(file.getFileName() + "." + checksum.getValue()),
+                checksum(file, checksum.getKey()).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+
+    /**
+     * The hex digest of the file's contents.
+     *
+     * @param algorithm e.g., "SHA-1"
+     */
+    static String checksum(Path file, String algorithm) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            val buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        val hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+
+    /**
+     * The group, artifact and version of the POM's parent, or null if it doesn't have one (or can't be read).
+     */
+    static @Nullable List<String> parent(File pom) {
+        try {
+            val factory = DocumentBuilderFactory.newInstance();
+            // POMs come from remote repositories: refuse DTDs outright so an entity can't read local files
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+            val document = factory.newDocumentBuilder().parse(pom);
+            val parent = child(document.getDocumentElement(), "parent");
+            if (parent == null) return null;
+            return Arrays.asList(text(parent, "groupId"), text(parent, "artifactId"), text(parent, "version"));
+        }
+        catch (Exception e) {
+            LOG.warn("Could not read the parent of {}: {}", pom, e.toString());
+            return null;
+        }
+    }
+
+
+    private static @Nullable Element child(Element element, String tagName) {
+        val children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            val node = children.item(i);
+            if (node instanceof Element && tagName.equals(node.getNodeName())) return (Element)node;
+        }
+        return null;
+    }
+
+
+    private static String text(Element element, String tagName) {
+        val child = child(element, tagName);
+        return child == null ? "" : child.getTextContent().trim();
+    }
+
+}
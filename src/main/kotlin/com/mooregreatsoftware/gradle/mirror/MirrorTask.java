@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.mirror;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import com.mooregreatsoftware.gradle.util.GradleCompat;
+import lombok.val;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.maven.MavenModule;
+import org.gradle.maven.MavenPomArtifact;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves every configuration of the project (including the ones the plugin adds, such as the Lombok and Checker
+ * Framework processor configurations) and copies what they resolve to, along with the POMs (and their parents), into
+ * a {@link MavenMirror}. A build run with "-P{@value MavenMirror#MIRROR_PROPERTY}" then uses only the mirror.
+ * <p>
+ * There's one of these tasks in each project, and the one in the root project runs after the others. Each resolves
+ * its own project's configurations, and asks for the POMs through its own project's repositories, so a module that
+ * only a subproject's repositories have still gets its real POM.
+ */
+@SuppressWarnings("WeakerAccess")
+public class MirrorTask extends DefaultTask {
+    public static final String TASK_NAME = "defaultsMirror";
+
+    private static final String RUN_STATE_KEY = MirrorTask.class.getName() + ".run";
+
+    private File mirrorDir;
+
+
+    public MirrorTask() {
+        mirrorDir = MavenMirror.mirrorDir(getProject());
+        setDescription("Copies the dependencies of the project into a local Maven repository");
+        setGroup("build setup");
+        // what's in the mirror depends on what the repositories have, so it's never up-to-date
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+
+    /**
+     * Adds the task to the project, unless it's already there. The one in the root project runs after the ones in
+     * the other projects, to report on all of them.
+     */
+    public static void register(Project project) {
+        if (project.getTasks().findByName(TASK_NAME) != null) return;
+
+        val task = project.getTasks().create(TASK_NAME, MirrorTask.class);
+        if (project == project.getRootProject()) {
+            task.setDescription("Copies the dependencies of all the projects into a local Maven repository");
+            task.dependsOn((Callable<List<Task>>)() -> project.getSubprojects().stream().
+                map(prj -> prj.getTasks().findByName(TASK_NAME)).
+                filter(Objects::nonNull).
+                collect(Collectors.toList()));
+        }
+    }
+
+
+    @OutputDirectory
+    public File getMirrorDir() {
+        return mirrorDir;
+    }
+
+
+    public void setMirrorDir(File mirrorDir) {
+        this.mirrorDir = mirrorDir;
+    }
+
+
+    @TaskAction
+    public void mirror() {
+        // the projects' tasks share the mirror (and its counts) when they write to the same place
+        val run = BuildState.buildState(getProject(), RUN_STATE_KEY + ":" + mirrorDir.getAbsolutePath(),
+            () -> new Run(mirrorDir));
+        val mirror = run.mirror;
+        val modules = new LinkedHashSet<ModuleComponentIdentifier>();
+
+        for (Configuration configuration : getProject().getConfigurations()) {
+            if (GradleCompat.canBeResolved(configuration)) mirrorConfiguration(mirror, configuration, modules);
+        }
+
+        mirrorPoms(mirror, modules);
+        run.modules.addAll(modules);
+
+        if (getProject() == getProject().getRootProject()) {
+            getLogger().lifecycle("Mirrored {} modules to {} ({} files, {} bytes added)", run.modules.size(),
+                mirrorDir, mirror.filesAdded(), mirror.bytesAdded());
+        }
+        else {
+            getLogger().info("Mirrored {} modules of {} to {}", modules.size(), getProject(), mirrorDir);
+        }
+    }
+
+
+    private void mirrorConfiguration(MavenMirror mirror, Configuration configuration,
+                                     Set<ModuleComponentIdentifier> modules) {
+        val resolved = configuration.getResolvedConfiguration().getLenientConfiguration();
+        resolved.getUnresolvedModuleDependencies().forEach(unresolved ->
+            getLogger().warn("Could not resolve {} for {}: it will not be in the mirror",
+                unresolved.getSelector(), configuration));
+
+        for (ResolvedArtifact artifact : resolved.getArtifacts(Specs.SATISFIES_ALL)) {
+            val id = artifact.getId().getComponentIdentifier();
+            if (id instanceof ModuleComponentIdentifier) {
+                val moduleId = (ModuleComponentIdentifier)id;
+                mirror.add(moduleId, artifact.getClassifier(), artifact.getExtension(), artifact.getFile());
+                modules.add(moduleId);
+            }
+        }
+    }
+
+
+    /**
+     * Adds the POMs of the modules, and of their parents, as found in the project's repositories. A module without a
+     * POM (e.g., from a "flatDir" repository) gets a minimal one.
+     */
+    private void mirrorPoms(MavenMirror mirror, Set<ModuleComponentIdentifier> modules) {
+        val seen = new LinkedHashSet<ModuleComponentIdentifier>();
+        Set<ModuleComponentIdentifier> toQuery = new LinkedHashSet<>(modules);
+        while (!toQuery.isEmpty()) {
+            seen.addAll(toQuery);
+            val parents = new LinkedHashSet<ModuleComponentIdentifier>();
+            val results = getProject().getDependencies().createArtifactResolutionQuery().
+                forComponents(new ArrayList<ComponentIdentifier>(toQuery)).
+                withArtifacts(MavenModule.class, MavenPomArtifact.class).
+                execute();
+
+            results.getResolvedComponents().forEach(component ->
+                component.getArtifacts(MavenPomArtifact.class).forEach(result -> {
+                    if (!(result instanceof ResolvedArtifactResult)) return;
+                    val pom = ((ResolvedArtifactResult)result).getFile();
+                    val moduleId = (ModuleComponentIdentifier)component.getId();
+                    mirror.add(moduleId, null, "pom", pom);
+
+                    val parent = MavenMirror.parent(pom);
+                    if (parent != null) {
+                        val parentId = new DefaultModuleComponentIdentifier(parent.get(0), parent.get(1), parent.get(2));
+                        if (!seen.contains(parentId)) parents.add(parentId);
+                    }
+                }));
+            toQuery = parents;
+        }
+
+        modules.forEach(mirror::addMinimalPom);
+    }
+
+
+    /**
+     * What the mirror tasks of the build writing to the same mirror share.
+     */
+    private static final class Run {
+        final MavenMirror mirror;
+        final Set<ModuleComponentIdentifier> modules = ConcurrentHashMap.newKeySet();
+
+
+        Run(File mirrorDir) {
+            mirror = new MavenMirror(mirrorDir);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.prefetch;
+
+import lombok.val;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What {@link PrefetchTask} fetched, by repository.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PrefetchReport {
+    /**
+     * Used for modules when the version of Gradle doesn't say which repository they came from.
+     */
+    public static final String UNKNOWN_REPOSITORY = "(unknown)";
+
+    private final Map<String, RepositoryStats> byRepository = new TreeMap<>();
+    private int configurations;
+    private int sharedArtifacts;
+    private long elapsedNanos;
+
+
+    synchronized void configurationResolved() {
+        configurations++;
+    }
+
+
+    /**
+     * Records an artifact that another configuration had already asked for.
+     */
+    synchronized void sharedArtifact() {
+        sharedArtifacts++;
+    }
+
+
+    synchronized void artifactFetched(String repositoryName, long bytes, long nanos) {
+        val stats = byRepository.computeIfAbsent(repositoryName, name -> new RepositoryStats());
+        stats.artifacts++;
+        stats.bytes += bytes;
+        stats.nanos += nanos;
+    }
+
+
+    synchronized void finished(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+
+    public synchronized int configurations() {
+        return configurations;
+    }
+
+
+    public synchronized int sharedArtifacts() {
+        return sharedArtifacts;
+    }
+
+
+    public synchronized int artifacts() {
+        return byRepository.values().stream().mapToInt(stats -> stats.artifacts).sum();
+    }
+
+
+    public synchronized long bytes() {
+        return byRepository.values().stream().mapToLong(stats -> stats.bytes).sum();
+    }
+
+
+    public synchronized Map<String, Long> bytesByRepository() {
+        val bytes = new TreeMap<String, Long>();
+        byRepository.forEach((name, stats) -> bytes.put(name, stats.bytes));
+        return bytes;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        val text = new StringBuilder();
+        text.append(String.format("Resolved %d configurations in %.1fs: %d artifacts (%d bytes), %d shared between " +
+            "configurations%n%n", configurations, elapsedNanos / 1e9, artifacts(), bytes(), sharedArtifacts));
+        text.append(String.format("  %8s  %12s  %10s  %s%n", "artifacts", "bytes", "time (ms)", "repository"));
+        byRepository.forEach((name, stats) -> text.append(String.format("  %8d  %12d  %10d  %s%n",
+            stats.artifacts, stats.bytes, stats.nanos / 1_000_000, name)));
+        return text.toString();
+    }
+
+
+    private static final class RepositoryStats {
+        int artifacts;
+        long bytes;
+        /**
+         * The time spent getting the files, summed across the threads.
+         */
+        long nanos;
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.prefetch;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import com.mooregreatsoftware.gradle.util.GradleCompat;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves every configuration of the project up front, so that a build on a machine with an empty dependency cache
+ * isn't waiting on the network one configuration at a time as each task first needs one.
+ * <p>
+ * There's one of these tasks in each project, and the one in the root project runs after the others. Each resolves
+ * the dependency graphs of its own project on the thread Gradle runs it on (so with "--parallel" the projects are
+ * resolved at the same time), then downloads the artifacts of those already-resolved configurations several at a
+ * time. Each distinct artifact is only downloaded once, no matter how many configurations (or projects) share it.
+ * What was fetched, and how long it took, is written by repository to
+ * "build/reports/defaults-prefetch/prefetch.txt" of the root project.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PrefetchTask extends DefaultTask {
+    public static final String TASK_NAME = "prefetchDependencies";
+
+    private static final String RUN_STATE_KEY = PrefetchTask.class.getName() + ".run";
+
+    private int maxThreads;
+    private File reportFile;
+    private @Nullable PrefetchReport report;
+
+
+    public PrefetchTask() {
+        maxThreads = getProject().getGradle().getStartParameter().getMaxWorkerCount();
+        reportFile = new File(getProject().getRootProject().getBuildDir(), "reports/defaults-prefetch/prefetch.txt");
+        setDescription("Resolves the dependencies of the project");
+        setGroup("build setup");
+        // what it fetches depends on the dependency cache, so it's never up-to-date
+        getOutputs().upToDateWhen(task -> false);
+    }
+
+
+    /**
+     * Adds the task to the project, unless it's already there. The one in the root project runs after the ones in
+     * the other projects, to report on all of them.
+     */
+    public static void register(Project project) {
+        if (project.getTasks().findByName(TASK_NAME) != null) return;
+
+        val task = project.getTasks().create(TASK_NAME, PrefetchTask.class);
+        if (project == project.getRootProject()) {
+            task.setDescription("Resolves the dependencies of all the projects");
+            task.dependsOn((Callable<List<Task>>)() -> project.getSubprojects().stream().
+                map(prj -> prj.getTasks().findByName(TASK_NAME)).
+                filter(Objects::nonNull).
+                collect(Collectors.toList()));
+        }
+    }
+
+
+    /**
+     * The most artifacts to download at a time. Defaults to the number of workers the build may use
+     * ("--max-workers").
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+
+    /**
+     * Where the root project's task writes the report.
+     */
+    public File getReportFile() {
+        return reportFile;
+    }
+
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+
+    /**
+     * What the build's prefetch tasks have fetched so far, or null if this task hasn't run.
+     */
+    public @Nullable PrefetchReport getReport() {
+        return report;
+    }
+
+
+    @TaskAction
+    public void prefetch() {
+        val run = BuildState.buildState(getProject(), RUN_STATE_KEY, Run::new);
+        val report = run.report;
+
+        val configurations = getProject().getConfigurations().stream().
+            filter(GradleCompat::canBeResolved).
+            collect(Collectors.toList());
+        val artifacts = new ArrayList<ResolvedArtifact>();
+        configurations.forEach(configuration -> resolveGraph(configuration, run, artifacts));
+
+        val pool = Executors.newFixedThreadPool(Math.max(1, maxThreads));
+        try {
+            inParallel(pool, artifacts, artifact -> fetch(artifact, run.repositories, report));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        this.report = report;
+
+        if (getProject() == getProject().getRootProject()) {
+            report.finished(System.nanoTime() - run.startNanos);
+            try {
+                Files.createDirectories(reportFile.getParentFile().toPath());
+                Files.write(reportFile.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                throw new GradleException("Could not write " + reportFile, e);
+            }
+            getLogger().lifecycle(report.toString());
+        }
+    }
+
+
+    /**
+     * Resolves the graph of the configuration, adding its artifacts that no other configuration has asked for yet.
+     */
+    private void resolveGraph(Configuration configuration, Run run, List<ResolvedArtifact> artifacts) {
+        configuration.getIncoming().getResolutionResult().getAllComponents().forEach(component -> {
+            if (component.getId() instanceof ModuleComponentIdentifier) {
+                run.repositories.putIfAbsent(component.getId().getDisplayName(), repositoryName(component));
+            }
+        });
+
+        val resolved = configuration.getResolvedConfiguration().getLenientConfiguration();
+        resolved.getUnresolvedModuleDependencies().forEach(unresolved ->
+            getLogger().warn("Could not resolve {} for {}", unresolved.getSelector(), configuration));
+
+        for (ResolvedArtifact artifact : resolved.getArtifacts(Specs.SATISFIES_ALL)) {
+            if (!(artifact.getId().getComponentIdentifier() instanceof ModuleComponentIdentifier)) continue;
+            if (run.artifacts.add(artifact.getId().getDisplayName())) artifacts.add(artifact);
+            else run.report.sharedArtifact();
+        }
+        run.report.configurationResolved();
+    }
+
+
+    private static void fetch(ResolvedArtifact artifact, Map<String, String> repositories, PrefetchReport report) {
+        val start = System.nanoTime();
+        val file = artifact.getFile();
+        val componentId = artifact.getId().getComponentIdentifier().getDisplayName();
+        report.artifactFetched(repositories.getOrDefault(componentId, PrefetchReport.UNKNOWN_REPOSITORY),
+            file.length(), System.nanoTime() - start);
+    }
+
+
+    /**
+     * The name of the repository the component came from. Only newer versions of Gradle record it.
+     */
+    static String repositoryName(ResolvedComponentResult component) {
+        if (InvokerHelper.getMetaClass(component).hasProperty(component, "repositoryName") == null) {
+            return PrefetchReport.UNKNOWN_REPOSITORY;
+        }
+        val name = InvokerHelper.getProperty(component, "repositoryName");
+        return name == null ? PrefetchReport.UNKNOWN_REPOSITORY : name.toString();
+    }
+
+
+    /**
+     * Runs the action on each of the items using the pool, and waits for them all to finish.
+     */
+    private static <T> void inParallel(ExecutorService pool, Collection<T> items, Consumer<T> action) {
+        final List<Future<?>> futures = new ArrayList<>();
+        items.forEach(item -> futures.add(pool.submit(() -> action.accept(item))));
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GradleException("Interrupted while prefetching dependencies", e);
+            }
+            catch (ExecutionException e) {
+                throw new GradleException("Could not prefetch dependencies: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+
+    /**
+     * What the prefetch tasks of the build share: the artifacts already asked for, the repository of each
+     * component, and the report.
+     */
+    private static final class Run {
+        final long startNanos = System.nanoTime();
+        final Set<String> artifacts = ConcurrentHashMap.newKeySet();
+        final Map<String, String> repositories = new ConcurrentHashMap<>();
+        final PrefetchReport report = new PrefetchReport();
+    }
+
+}
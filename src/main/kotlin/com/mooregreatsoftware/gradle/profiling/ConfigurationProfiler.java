@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.profiling;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import groovy.json.JsonOutput;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.BuildAdapter;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Times the configuration work done by the plugins: each plugin application and each "afterEvaluate" callback,
+ * per project. The number of classes the JVM loaded during each is recorded as well, since pulling in a large
+ * library is a common hidden cost.
+ * <p>
+ * The timings are always collected (it's just a couple of calls to {@link System#nanoTime()}). The report is only
+ * written to "build/reports/defaults-config" of the root project if the "{@value #REPORT_PROPERTY}" project
+ * property is set, or if a budget has been set with "{@value #BUDGET_PROPERTY}". If a budget is set and any
+ * project's configuration took longer than that many milliseconds, the build fails once all the projects have been
+ * evaluated.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ConfigurationProfiler {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationProfiler.class);
+
+    private static final String STATE_KEY = ConfigurationProfiler.class.getName();
+
+    private static final ClassLoadingMXBean CLASS_LOADING = ManagementFactory.getClassLoadingMXBean();
+
+    /**
+     * Project property to turn on writing the configuration time report.
+     */
+    public static final String REPORT_PROPERTY = "defaults.configReport";
+
+    /**
+     * Project property for the maximum number of milliseconds a single project's configuration may take.
+     */
+    public static final String BUDGET_PROPERTY = "defaults.configBudgetMs";
+
+    /**
+     * Project property for the number of entries in the plain-text report. Defaults to {@value #DEFAULT_TOP_N}.
+     */
+    public static final String TOP_N_PROPERTY = "defaults.configReportTop";
+
+    public static final int DEFAULT_TOP_N = 20;
+
+    public static final String REPORT_DIR = "reports/defaults-config";
+
+    private final List<Timing> timings = new ArrayList<>();
+    private final Deque<Frame> inFlight = new ArrayDeque<>();
+
+
+    private ConfigurationProfiler() {
+    }
+
+
+    /**
+     * Retrieves the profiler for the build (kept in the {@link BuildState}). It's created if this is the first
+     * request.
+     */
+    public static ConfigurationProfiler configurationProfiler(Project project) {
+        val rootProject = project.getRootProject();
+        return BuildState.buildState(rootProject, STATE_KEY, () -> {
+            val profiler = new ConfigurationProfiler();
+            rootProject.getGradle().addBuildListener(new BuildAdapter() {
+                @Override
+                public void projectsEvaluated(Gradle gradle) {
+                    profiler.configurationFinished(rootProject);
+                }
+            });
+            return profiler;
+        });
+    }
+
+
+    /**
+     * Runs the action, recording how long it took against the project.
+     *
+     * @param project the project the work is being done for
+     * @param name    what is being done; e.g., "apply com.mooregreatsoftware.java"
+     */
+    public static void time(Project project, String name, Runnable action) {
+        timed(project, name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+
+    /**
+     * Runs the supplier, recording how long it took against the project.
+     *
+     * @param project the project the work is being done for
+     * @param name    what is being done; e.g., "apply com.mooregreatsoftware.java"
+     */
+    public static <T> T timed(Project project, String name, Supplier<T> supplier) {
+        return configurationProfiler(project).record(project.getPath(), name, supplier);
+    }
+
+
+    /**
+     * Registers an "afterEvaluate" action on the project that is timed by the profiler. If the project has already
+     * been evaluated (e.g., a plugin is being applied from another "afterEvaluate" action), it's done right away,
+     * since Gradle wouldn't call it any more.
+     *
+     * @param name identifies the callback in the report; e.g., "ExtBintrayPlugin.init"
+     */
+    public static void afterEvaluate(Project project, String name, Action<Project> action) {
+        if (project.getState().getExecuted()) time(project, "afterEvaluate " + name, () -> action.execute(project));
+        else project.afterEvaluate(prj -> time(prj, "afterEvaluate " + name, () -> action.execute(prj)));
+    }
+
+
+    private synchronized <T> T record(String projectPath, String name, Supplier<T> supplier) {
+        val frame = new Frame();
+        inFlight.push(frame);
+        val startClasses = CLASS_LOADING.getTotalLoadedClassCount();
+        val start = System.nanoTime();
+        try {
+            return supplier.get();
+        }
+        finally {
+            val total = System.nanoTime() - start;
+            val totalClasses = CLASS_LOADING.getTotalLoadedClassCount() - startClasses;
+            inFlight.pop();
+            val parent = inFlight.peek();
+            if (parent != null) {
+                parent.childNanos += total;
+                parent.childClasses += totalClasses;
+            }
+            timings.add(new Timing(projectPath, name, total, total - frame.childNanos,
+                totalClasses - frame.childClasses, inFlight.size()));
+        }
+    }
+
+
+    /**
+     * A copy of the timings recorded so far.
+     */
+    public synchronized List<Timing> timings() {
+        return new ArrayList<>(timings);
+    }
+
+
+    /**
+     * The total configuration time recorded for each project, in milliseconds, largest first.
+     */
+    public Map<String, Double> projectTotals() {
+        val totals = timings().stream().
+            filter(timing -> timing.depth == 0).
+            collect(Collectors.groupingBy(timing -> timing.projectPath, Collectors.summingLong(timing -> timing.totalNanos)));
+        return totals.entrySet().stream().
+            sorted(Map.Entry.<String, Long>comparingByValue().reversed()).
+            collect(Collectors.toMap(Map.Entry::getKey, e -> toMillis(e.getValue()), (a, b) -> a, LinkedHashMap::new));
+    }
+
+
+    /**
+     * The number of classes loaded while doing the timed work.
+     */
+    public long loadedClasses() {
+        return timings().stream().mapToLong(timing -> timing.selfLoadedClasses).sum();
+    }
+
+
+    private void configurationFinished(Project rootProject) {
+        val projectTotals = projectTotals();
+        LOG.info("Configuration time by project (ms): {}", projectTotals);
+        LOG.info("Classes loaded while configuring: {}", loadedClasses());
+
+        val budget = budgetMs(rootProject);
+        if (budget == null && !rootProject.hasProperty(REPORT_PROPERTY)) return;
+
+        writeReport(rootProject, projectTotals);
+
+        if (budget != null) {
+            val overBudget = projectTotals.entrySet().stream().
+                filter(e -> e.getValue() > budget).
+                map(e -> e.getKey() + " (" + Math.round(e.getValue()) + "ms)").
+                collect(Collectors.toList());
+            if (!overBudget.isEmpty()) {
+                throw new GradleException("Configuration is over the " + budget + "ms budget set by \"" +
+                    BUDGET_PROPERTY + "\" for: " + String.join(", ", overBudget) + ". See " + reportDir(rootProject));
+            }
+        }
+    }
+
+
+    private static @Nullable Long budgetMs(Project rootProject) {
+        if (!rootProject.hasProperty(BUDGET_PROPERTY)) return null;
+        val budget = String.valueOf(rootProject.property(BUDGET_PROPERTY)).trim();
+        try {
+            return Long.parseLong(budget);
+        }
+        catch (NumberFormatException e) {
+            throw new GradleException("\"" + BUDGET_PROPERTY + "\" must be a number of milliseconds, not \"" + budget + "\"");
+        }
+    }
+
+
+    private static int topN(Project rootProject) {
+        if (!rootProject.hasProperty(TOP_N_PROPERTY)) return DEFAULT_TOP_N;
+        val topN = String.valueOf(rootProject.property(TOP_N_PROPERTY)).trim();
+        try {
+            return Integer.parseInt(topN);
+        }
+        catch (NumberFormatException e) {
+            throw new GradleException("\"" + TOP_N_PROPERTY + "\" must be a number of entries, not \"" + topN + "\"");
+        }
+    }
+
+
+    private static File reportDir(Project rootProject) {
+        return new File(rootProject.getBuildDir(), REPORT_DIR);
+    }
+
+
+    private void writeReport(Project rootProject, Map<String, Double> projectTotals) {
+        val topN = topN(rootProject);
+        val bySelfTime = timings().stream().
+            sorted(Comparator.comparingLong((Timing timing) -> timing.selfNanos).reversed()).
+            collect(Collectors.toList());
+
+        val reportDir = reportDir(rootProject).toPath();
+        try {
+            Files.createDirectories(reportDir);
+
+            val json = new LinkedHashMap<String, Object>();
+            json.put("projects", projectTotals);
+            json.put("loadedClasses", loadedClasses());
+            json.put("timings", bySelfTime.stream().map(Timing::toMap).collect(Collectors.toList()));
+            Files.write(reportDir.resolve("config-timings.json"),
+                JsonOutput.prettyPrint(JsonOutput.toJson(json)).getBytes(StandardCharsets.UTF_8));
+
+            val text = new StringBuilder();
+            text.append("Configuration time by project (ms)\n");
+            projectTotals.forEach((path, millis) -> text.append(String.format("  %10.1f  %s%n", millis, path)));
+            text.append("\nClasses loaded while configuring: ").append(loadedClasses()).append("\n");
+            text.append("\nTop ").append(topN).append(" plugin applications and callbacks by self time (ms, classes loaded)\n");
+            bySelfTime.stream().limit(topN).forEach(timing ->
+                text.append(String.format("  %10.1f  %6d  %-30s %s%n", toMillis(timing.selfNanos),
+                    timing.selfLoadedClasses, timing.projectPath, timing.name)));
+            Files.write(reportDir.resolve("config-timings.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+            rootProject.getLogger().lifecycle("Configuration time report written to {}", reportDir);
+        }
+        catch (IOException e) {
+            LOG.error("Could not write the configuration time report to " + reportDir, e);
+        }
+    }
+
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+
+    private static final class Frame {
+        long childNanos;
+        long childClasses;
+    }
+
+
+    /**
+     * How long a unit of configuration work took.
+     */
+    public static final class Timing {
+        public final String projectPath;
+        public final String name;
+        /**
+         * The time taken, including any nested timed work.
+         */
+        public final long totalNanos;
+        /**
+         * The time taken, excluding any nested timed work.
+         */
+        public final long selfNanos;
+        /**
+         * The number of classes loaded by the JVM, excluding any nested timed work. (A sign of how much of a
+         * library was pulled in.)
+         */
+        public final long selfLoadedClasses;
+        /**
+         * How deeply this was nested in other timed work; 0 for the outermost.
+         */
+        public final int depth;
+
+
+        Timing(String projectPath, String name, long totalNanos, long selfNanos, long selfLoadedClasses, int depth) {
+            this.projectPath = projectPath;
+            this.name = name;
+            this.totalNanos = totalNanos;
+            this.selfNanos = selfNanos;
+            this.selfLoadedClasses = selfLoadedClasses;
+            this.depth = depth;
+        }
+
+
+        Map<String, Object> toMap() {
+            val map = new LinkedHashMap<String, Object>();
+            map.put("project", projectPath);
+            map.put("name", name);
+            map.put("selfMs", toMillis(selfNanos));
+            map.put("totalMs", toMillis(totalNanos));
+            map.put("loadedClasses", selfLoadedClasses);
+            map.put("depth", depth);
+            return map;
+        }
+
+
+        @Override
+        public String toString() {
+            return "Timing{" + projectPath + " " + name + " " + toMillis(totalNanos) + "ms}";
+        }
+    }
+
+}
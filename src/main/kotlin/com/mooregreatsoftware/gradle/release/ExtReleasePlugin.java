@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.mooregreatsoftware.gradle.util.GrGitUtils.grgit;
+import static com.mooregreatsoftware.gradle.util.TaskOrderingRules.allTasksShouldRunAfterClean;
 
 /**
  * Applies Andrew Oberstar's "Opinionated Release" plugin
@@ -80,11 +81,7 @@ public class ExtReleasePlugin implements Plugin<Project> {
             releaseTask.dependsOn(clean, build);
 
             // make sure all tasks run AFTER the clean task
-            prjTasks.forEach(task -> {
-                if (!task.getName().equals(clean.getName())) {
-                    task.shouldRunAfter(clean);
-                }
-            });
+            allTasksShouldRunAfterClean(prj);
         });
         prjPlugins.withId("com.jfrog.bintray", p -> {
             final Task bintrayUpload = prjTasks.getByName("bintrayUpload");
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.repositories;
+
+import com.mooregreatsoftware.gradle.util.BuildState;
+import lombok.val;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Counts the repository lookups the {@link RepositoryRoutes} saved: for each module a project resolved, each
+ * repository ahead of the first one that may have it would otherwise have been asked for it (and, typically,
+ * answered "not found"). Written to "build/{@value #REPORT_DIR}/lookups.txt" of the root project at the end of
+ * the build.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class RepositoryLookupReport extends BuildAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(RepositoryLookupReport.class);
+
+    private static final String STATE_KEY = RepositoryLookupReport.class.getName();
+
+    public static final String REPORT_DIR = "reports/defaults-repositories";
+
+    private final Set<String> seen = new HashSet<>();
+    private final Map<String, Long> avoidedByRepository = new TreeMap<>();
+    private long modules;
+
+    private final File reportDir;
+
+
+    private RepositoryLookupReport(File reportDir) {
+        this.reportDir = reportDir;
+    }
+
+
+    /**
+     * Retrieves the report for the build (kept in the {@link BuildState}). It's created if this is the first request.
+     */
+    public static RepositoryLookupReport repositoryLookupReport(Project project) {
+        val rootProject = project.getRootProject();
+        return BuildState.buildState(rootProject, STATE_KEY, () -> {
+            val report = new RepositoryLookupReport(new File(rootProject.getBuildDir(), REPORT_DIR));
+            rootProject.getGradle().addBuildListener(report);
+            return report;
+        });
+    }
+
+
+    /**
+     * Counts the modules each of the project's configurations resolves.
+     */
+    public void track(Project project, RepositoryRoutes routes) {
+        project.getConfigurations().all(conf -> conf.getIncoming().afterResolve(resolved -> {
+            val repositoryNames = RepositoryRouting.repositoryNames(project);
+            resolved.getResolutionResult().getAllComponents().forEach(component -> {
+                val id = component.getId();
+                if (id instanceof ModuleComponentIdentifier) {
+                    val moduleId = (ModuleComponentIdentifier)id;
+                    record(project.getPath(), moduleId.getGroup() + ":" + moduleId.getModule(), moduleId.getGroup(),
+                        repositoryNames, routes);
+                }
+            });
+        }));
+    }
+
+
+    /**
+     * Records the module, once per project, against the repositories that were skipped for it.
+     */
+    synchronized void record(String projectPath, String module, String group, List<String> repositoryNames,
+                             RepositoryRoutes routes) {
+        if (!seen.add(projectPath + " " + module)) return;
+        modules++;
+        for (String repositoryName : repositoryNames) {
+            if (routes.allows(repositoryName, group)) break;
+            avoidedByRepository.merge(repositoryName, 1L, Long::sum);
+        }
+    }
+
+
+    /**
+     * The number of lookups avoided, by repository name.
+     */
+    public synchronized Map<String, Long> avoided() {
+        return new TreeMap<>(avoidedByRepository);
+    }
+
+
+    @Override
+    public void buildFinished(BuildResult result) {
+        if (modules == 0) return;
+
+        val avoided = avoided();
+        val total = avoided.values().stream().mapToLong(Long::longValue).sum();
+        val text = new StringBuilder();
+        text.append("Modules resolved (per project): ").append(modules).append("\n");
+        text.append("Repository lookups avoided: ").append(total).append("\n\n");
+        avoided.forEach((repositoryName, count) -> text.append(String.format("  %8d  %s%n", count, repositoryName)));
+
+        try {
+            Files.createDirectories(reportDir.toPath());
+            Files.write(reportDir.toPath().resolve("lookups.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+            LOG.info("Avoided {} repository lookups; see {}", total, reportDir);
+        }
+        catch (IOException e) {
+            LOG.error("Could not write the repository lookup report to " + reportDir, e);
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.repositories;
+
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A Maven repository and the groups that come from it; see {@link RepositoryRoutes}.
+ */
+@Data
+@SuppressWarnings("WeakerAccess")
+public class RepositoryRoute {
+    /**
+     * The name of the repository.
+     */
+    private final String name;
+
+    /**
+     * The URL of the repository (anything Gradle's "maven { url = ... }" accepts).
+     */
+    private final Object url;
+
+    /**
+     * The groups that come from this repository, and only from it. A group ending in ".*" also covers the groups
+     * under it; e.g., "com.example.*" covers "com.example" and "com.example.util". If empty, the repository is used
+     * for any group that isn't routed to another repository.
+     */
+    private final Set<String> groups = new LinkedHashSet<>();
+
+    /**
+     * Is this a private repository? Only private repositories are asked for {@link RepositoryRoutes#getInternalGroups()}.
+     */
+    private boolean internal = false;
+
+
+    public void groups(String... groups) {
+        this.groups.addAll(Arrays.asList(groups));
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.repositories;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Action;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The repositories for all the projects, declared once (on the root project), and which groups come from which of
+ * them. For example:
+ * <pre>
+ * defaults {
+ *     repositories {
+ *         route("internal", "https://repo.example.com/maven") {
+ *             internal = true
+ *             groups "com.example.*"
+ *         }
+ *         internalGroups "com.example.*"
+ *     }
+ * }
+ * </pre>
+ * Every repository of a project (including JCenter and any the build script declares) is then only asked for the
+ * groups it can have: a routed group only from its route, and an internal group never from a repository that isn't
+ * {@link RepositoryRoute#isInternal() internal}. That saves looking for every module in every repository.
+ * <p>
+ * The filtering needs Gradle 5.1 or later; with an earlier version the routes are still added, ahead of the others.
+ *
+ * @see RepositoryRouting
+ */
+@SuppressWarnings("WeakerAccess")
+public class RepositoryRoutes {
+    private boolean jcenter = true;
+    private final List<RepositoryRoute> routes = new ArrayList<>();
+    private final Set<String> internalGroups = new LinkedHashSet<>();
+
+
+    /**
+     * Should JCenter be added to every project? Defaults to "true".
+     */
+    public boolean isJcenter() {
+        return jcenter;
+    }
+
+
+    public void setJcenter(boolean jcenter) {
+        this.jcenter = jcenter;
+    }
+
+
+    /**
+     * Adds a Maven repository, ahead of the other repositories, to every project.
+     */
+    public RepositoryRoute route(String name, Object url, Action<? super RepositoryRoute> action) {
+        val route = new RepositoryRoute(name, url);
+        action.execute(route);
+        routes.add(route);
+        return route;
+    }
+
+
+    public RepositoryRoute route(String name, Object url) {
+        return route(name, url, route -> {
+        });
+    }
+
+
+    public List<RepositoryRoute> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+
+    /**
+     * The groups that are never asked for from a repository that isn't internal. Patterns are the same as for
+     * {@link RepositoryRoute#getGroups()}.
+     */
+    public Set<String> getInternalGroups() {
+        return internalGroups;
+    }
+
+
+    public void internalGroups(String... groups) {
+        internalGroups.addAll(Arrays.asList(groups));
+    }
+
+
+    /**
+     * Is there any filtering to do?
+     */
+    public boolean hasFilters() {
+        return !internalGroups.isEmpty() || routes.stream().anyMatch(route -> !route.getGroups().isEmpty());
+    }
+
+
+    /**
+     * The route with the name, or null if the repository isn't one of the routes.
+     */
+    public @Nullable RepositoryRoute findRoute(String repositoryName) {
+        return routes.stream().filter(route -> route.getName().equals(repositoryName)).findFirst().orElse(null);
+    }
+
+
+    /**
+     * May the named repository be asked for the group?
+     */
+    public boolean allows(String repositoryName, String group) {
+        val route = findRoute(repositoryName);
+        if (route != null && !route.getGroups().isEmpty()) return matchesAny(route.getGroups(), group);
+
+        val routedElsewhere = routes.stream().anyMatch(other -> other != route && matchesAny(other.getGroups(), group));
+        if (routedElsewhere) return false;
+
+        val internal = route != null && route.isInternal();
+        return internal || !matchesAny(internalGroups, group);
+    }
+
+
+    static boolean matchesAny(Set<String> patterns, String group) {
+        return patterns.stream().anyMatch(pattern -> matches(pattern, group));
+    }
+
+
+    static boolean matches(String pattern, String group) {
+        return pattern.endsWith(".*") ? Pattern.matches(regex(pattern), group) : pattern.equals(group);
+    }
+
+
+    /**
+     * The regular expression for a group pattern ending in ".*".
+     */
+    static String regex(String pattern) {
+        return Pattern.quote(pattern.substring(0, pattern.length() - 2)) + "(\\..*)?";
+    }
+
+
+    @Override
+    public String toString() {
+        return "RepositoryRoutes{jcenter=" + jcenter + ", routes=" + routes + ", internalGroups=" + internalGroups + "}";
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.repositories;
+
+import com.mooregreatsoftware.gradle.util.GradleCompat;
+import lombok.val;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.repositories.ArtifactRepository;
+import org.gradle.api.internal.artifacts.dsl.DefaultRepositoryHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the {@link RepositoryRoutes} to a project's repositories.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class RepositoryRouting {
+
+    /**
+     * The first version of Gradle that can limit what a repository is asked for.
+     */
+    public static final String CONTENT_FILTERING_VERSION = "5.1";
+
+
+    private RepositoryRouting() {
+    }
+
+
+    /**
+     * Adds the routes ahead of the project's other repositories, removes JCenter if it's not wanted, and (with Gradle
+     * {@value #CONTENT_FILTERING_VERSION} or later) limits each repository to the groups it may be asked for.
+     * Should be called once the project has been evaluated, so the build script's repositories are included.
+     */
+    public static void apply(Project project, RepositoryRoutes routes) {
+        val repositories = project.getRepositories();
+
+        if (!routes.isJcenter()) {
+            val jcenter = repositories.findByName(DefaultRepositoryHandler.BINTRAY_JCENTER_REPO_NAME);
+            if (jcenter != null) repositories.remove(jcenter);
+        }
+
+        val newRoutes = new ArrayList<>(routes.getRoutes());
+        Collections.reverse(newRoutes);
+        for (RepositoryRoute route : newRoutes) {
+            if (repositories.findByName(route.getName()) != null) continue;
+            val repo = repositories.maven(maven -> {
+                maven.setName(route.getName());
+                maven.setUrl(route.getUrl());
+            });
+            repositories.remove(repo);
+            repositories.addFirst(repo);
+        }
+
+        if (!routes.hasFilters()) return;
+
+        if (!GradleCompat.isAtLeast(CONTENT_FILTERING_VERSION)) {
+            if (!routes.getInternalGroups().isEmpty()) {
+                project.getLogger().warn("The internal groups ({}) may be asked for from the public repositories of " +
+                    "{}: keeping them from those needs Gradle {} or later", String.join(", ", routes.getInternalGroups()),
+                    project, CONTENT_FILTERING_VERSION);
+            }
+            else {
+                project.getLogger().info("Not limiting what the repositories of {} are asked for: that needs Gradle {} " +
+                    "or later", project, CONTENT_FILTERING_VERSION);
+            }
+            return;
+        }
+
+        for (ArtifactRepository repo : repositories) {
+            val filter = contentFilter(routes, repo.getName());
+            InvokerHelper.invokeMethod(repo, "content", (Action<Object>)descriptor -> filter.forEach(rule ->
+                InvokerHelper.invokeMethod(descriptor, rule.method, rule.value)));
+        }
+
+        RepositoryLookupReport.repositoryLookupReport(project).track(project, routes);
+    }
+
+
+    /**
+     * The names of the project's repositories, in the order they are asked for modules.
+     */
+    static List<String> repositoryNames(Project project) {
+        return project.getRepositories().stream().map(ArtifactRepository::getName).collect(Collectors.toList());
+    }
+
+
+    /**
+     * The content rules for the named repository, the way Gradle's "RepositoryContentDescriptor" takes them.
+     */
+    static List<Rule> contentFilter(RepositoryRoutes routes, String repositoryName) {
+        val route = routes.findRoute(repositoryName);
+        val rules = new ArrayList<Rule>();
+        if (route != null && !route.getGroups().isEmpty()) {
+            route.getGroups().forEach(group -> rules.add(Rule.of("include", group)));
+            return rules;
+        }
+
+        val excluded = new LinkedHashSet<String>();
+        routes.getRoutes().stream().filter(other -> other != route).forEach(other -> excluded.addAll(other.getGroups()));
+        if (route == null || !route.isInternal()) excluded.addAll(routes.getInternalGroups());
+        excluded.forEach(group -> rules.add(Rule.of("exclude", group)));
+        return rules;
+    }
+
+
+    /**
+     * A call to make on Gradle's "RepositoryContentDescriptor"; e.g., {@code includeGroupByRegex("com\.example(\..*)?")}.
+     */
+    static final class Rule {
+        final String method;
+        final String value;
+
+
+        private Rule(String method, String value) {
+            this.method = method;
+            this.value = value;
+        }
+
+
+        static Rule of(String includeOrExclude, String group) {
+            return group.endsWith(".*") ?
+                new Rule(includeOrExclude + "GroupByRegex", RepositoryRoutes.regex(group)) :
+                new Rule(includeOrExclude + "Group", group);
+        }
+
+
+        @Override
+        public String toString() {
+            return method + "(\"" + value + "\")";
+        }
+    }
+
+}
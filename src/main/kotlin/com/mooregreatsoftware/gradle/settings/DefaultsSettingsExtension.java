@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.settings;
+
+import com.mooregreatsoftware.gradle.buildcache.BuildCacheExtension;
+import org.gradle.api.Action;
+
+/**
+ * Configuration for {@link DefaultsSettingsPlugin}; the build-wide settings that have to be made in
+ * "settings.gradle", before any of the projects are configured.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DefaultsSettingsExtension {
+    /**
+     * The name to register this under as a Gradle extension.
+     */
+    public static final String NAME = "defaults";
+
+    private final BuildCacheExtension buildCache = new BuildCacheExtension();
+
+
+    public BuildCacheExtension getBuildCache() {
+        return buildCache;
+    }
+
+
+    public void buildCache(Action<? super BuildCacheExtension> action) {
+        action.execute(buildCache);
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.settings;
+
+import com.mooregreatsoftware.gradle.buildcache.BuildCacheReport;
+import com.mooregreatsoftware.gradle.buildcache.BuildCacheSettings;
+import lombok.val;
+import org.gradle.BuildAdapter;
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.plugins.ExtensionAware;
+
+/**
+ * The part of the defaults that has to be applied in "settings.gradle" because it's for the whole build; currently
+ * the build cache. For example:
+ * <pre>
+ * apply plugin: "com.mooregreatsoftware.defaults-settings"
+ *
+ * defaults {
+ *     buildCache {
+ *         remoteUrl = "https://cache.example.com/cache/"
+ *     }
+ * }
+ * </pre>
+ * The settings are applied once "settings.gradle" has been evaluated. When the build cache is turned on, the hit
+ * rate for each type of task is written to "build/reports/defaults-build-cache" (see {@link BuildCacheReport}).
+ */
+public class DefaultsSettingsPlugin implements Plugin<Settings> {
+    public static final String PLUGIN_ID = "com.mooregreatsoftware.defaults-settings";
+
+
+    @Override
+    public void apply(Settings settings) {
+        if (!(settings instanceof ExtensionAware)) {
+            throw new GradleException("Gradle " + settings.getGradle().getGradleVersion() +
+                " does not support extensions on the settings, so " + PLUGIN_ID + " can not be used");
+        }
+        val extension = ((ExtensionAware)settings).getExtensions().
+            create(DefaultsSettingsExtension.NAME, DefaultsSettingsExtension.class);
+
+        settings.getGradle().addBuildListener(new BuildAdapter() {
+            @Override
+            public void settingsEvaluated(Settings evaluatedSettings) {
+                val buildCache = extension.getBuildCache();
+                BuildCacheSettings.configure(evaluatedSettings, buildCache);
+                if (buildCache.isReport() && BuildCacheSettings.isEnabled(evaluatedSettings.getGradle())) BuildCacheReport.register(evaluatedSettings.getGradle());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * A Java agent put on the test JVMs by {@link TestDefaultsPlugin}. When the JVM exits, the peak heap it used is
+ * written to a file in the directory given as the agent's argument (one file per JVM, since there can be several
+ * forks).
+ * <p>
+ * This runs inside the test JVM, so it only uses the JDK.
+ */
+public final class PeakHeapAgent {
+
+    static final String FILE_PREFIX = "peak-heap-";
+
+
+    private PeakHeapAgent() {
+    }
+
+
+    public static void premain(String outputDir, Instrumentation instrumentation) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writePeakHeap(new File(outputDir)), "PeakHeapAgent"));
+    }
+
+
+    static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+
+    private static void writePeakHeap(File outputDir) {
+        try {
+            Files.createDirectories(outputDir.toPath());
+            File file = File.createTempFile(FILE_PREFIX, ".txt", outputDir);
+            Files.write(file.toPath(), Long.toString(peakHeapBytes()).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            System.err.println("Could not record the peak heap in " + outputDir + ": " + e);
+        }
+    }
+
+}
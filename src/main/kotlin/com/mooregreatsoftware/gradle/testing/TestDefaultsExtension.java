@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import lombok.Data;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.Serializable;
+
+/**
+ * Configuration options for {@link TestDefaultsPlugin}. With {@link #autoTune} on, anything left unset is worked out
+ * from the machine and from previous runs of the tests. A value set directly on a "Test" task always wins over these.
+ */
+@Data
+@SuppressWarnings("WeakerAccess")
+public class TestDefaultsExtension implements Serializable {
+    /**
+     * Should the "Test" tasks be tuned at all? Off unless turned on, since it changes how the tests run.
+     */
+    private boolean autoTune = false;
+
+    /**
+     * The number of test JVMs to run at once. If not set, it's half of the available cores, but no more than one
+     * for every {@value TestDefaultsPlugin#CLASSES_PER_FORK} test classes.
+     */
+    private @Nullable Integer maxParallelForks;
+
+    /**
+     * The number of test classes a test JVM runs before it's replaced with a fresh one. If not set, it's
+     * {@value #LEAK_PRONE_FORK_EVERY} when {@link #leakProne} is true, otherwise a JVM is never replaced.
+     */
+    private @Nullable Long forkEvery;
+
+    /**
+     * Do the tests leak memory, threads, static state, etc.? If so, the test JVMs are regularly replaced.
+     */
+    private boolean leakProne = false;
+
+    /**
+     * The maximum heap size for each test JVM (e.g., "512m"). If not set, it's sized from the peak heap used by the
+     * previous run.
+     */
+    private @Nullable String maxHeapSize;
+
+    /**
+     * The file (relative to the project) with how long each test class takes, which is used to balance the shards
+     * (see {@link TestDefaultsPlugin#SHARD_PROPERTY}). Every machine running a shard has to see the same file, so
+     * it's meant to be checked in (or published); it's in the same format as the durations recorded in the
+     * {@link TestHistory}. A "{task}" in it is replaced with the name of the "Test" task.
+     */
+    private String shardDurations = DEFAULT_SHARD_DURATIONS;
+
+    /**
+     * Should only the test classes affected by the changes since the base revision be run? (See
+     * {@link TestImpact}.)
+     */
+    private boolean impactAnalysis = false;
+
+    /**
+     * When {@link #impactAnalysis} is on, every this-many runs all of the tests are run anyway, as a safety net
+     * for what the analysis can't see (e.g., reflection or resources).
+     */
+    private int fullRunEvery = 20;
+
+
+    /**
+     * The name to register this under as a Gradle extension.
+     */
+    public static final String NAME = "testDefaults";
+
+    public static final long LEAK_PRONE_FORK_EVERY = 100;
+
+    public static final String DEFAULT_SHARD_DURATIONS = "gradle/test-durations/{task}.txt";
+
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import com.mooregreatsoftware.gradle.environment.BuildEnvironment;
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler;
+import com.mooregreatsoftware.gradle.testing.TestSchedule.Shard;
+import com.mooregreatsoftware.gradle.util.BuildState;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.internal.IConventionAware;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.TestDescriptor;
+import org.gradle.api.tasks.testing.TestListener;
+import org.gradle.api.tasks.testing.TestResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * When {@link TestDefaultsExtension#isAutoTune()} is turned on, tunes the "Test" tasks of the project for the machine
+ * they run on and for the tests themselves:
+ * <ul>
+ * <li>"maxParallelForks" is half of the cores the build can use (see {@link BuildEnvironment}), but no more than one
+ * fork for every {@value #CLASSES_PER_FORK} test classes (starting a JVM costs more than running a few small
+ * classes)</li>
+ * <li>"forkEvery" is {@value TestDefaultsExtension#LEAK_PRONE_FORK_EVERY} for suites marked as leak-prone</li>
+ * <li>"maxHeapSize" is the peak heap of the previous run, with headroom, but no more than the fork's share of the
+ * memory; the peak is recorded by a small Java agent in each test JVM and kept in the {@link TestHistory}</li>
+ * </ul>
+ * The values in {@link TestDefaultsExtension} override what's worked out, and anything set directly on a task is left
+ * alone. Everything is worked out from the history when the project is evaluated, so the task's inputs are settled
+ * before Gradle looks at them.
+ * <p>
+ * How long each test class takes is recorded as well, which gives the number of test classes and caps the number of
+ * forks at the number that can help (see {@link TestSchedule#usefulForks(Map)}).
+ * <p>
+ * "-P{@value #SHARD_PROPERTY}=i/n" runs just the i-th of n parts of the tests, so CI can split a project's tests
+ * across machines (see {@link Shard}), balanced by the shared durations of
+ * {@link TestDefaultsExtension#getShardDurations()}. The shard is an input of the task, so each one is up-to-date and
+ * cached on its own.
+ * <p>
+ * With {@link TestDefaultsExtension#isImpactAnalysis()} on, only the test classes affected by the changes are run
+ * (see {@link TestImpact}).
+ */
+@SuppressWarnings("WeakerAccess")
+public class TestDefaultsPlugin implements Plugin<Project> {
+    private static final Logger LOG = LoggerFactory.getLogger(TestDefaultsPlugin.class);
+
+    public static final String PLUGIN_ID = "com.mooregreatsoftware.test-defaults";
+
+    /**
+     * Project property for running only part of the tests; e.g., "-Pshard=2/4" runs the second of four parts.
+     */
+    public static final String SHARD_PROPERTY = "shard";
+
+    /**
+     * The name of the task input that holds the shard.
+     */
+    static final String SHARD_INPUT = "defaults.test.shard";
+
+    public static final int CLASSES_PER_FORK = 10;
+
+    static final double HEAP_HEADROOM = 1.5;
+
+    static final long MIN_HEAP_MB = 256;
+
+    static final long MAX_HEAP_MB = 4096;
+
+    private static final long HEAP_INCREMENT_MB = 64;
+
+    private static final long MB = 1024 * 1024;
+
+    private static final String AGENT_JAR = "defaults/peak-heap-agent.jar";
+
+
+    @Override
+    public void apply(Project project) {
+        val extension = testDefaultsExtension(project);
+
+        ConfigurationProfiler.afterEvaluate(project, "TestDefaultsPlugin.tune", prj -> {
+            val shard = Shard.parse(prj.hasProperty(SHARD_PROPERTY) ? prj.property(SHARD_PROPERTY) : null);
+            if (!extension.isAutoTune() && shard == null && !extension.isImpactAnalysis()) return;
+            val environment = BuildEnvironment.buildEnvironment(prj);
+            prj.getTasks().withType(Test.class, test -> {
+                val history = TestHistory.testHistory(prj.getBuildDir(), test.getName());
+                if (shard != null) shard(test, shard, extension);
+                if (extension.isAutoTune()) tune(test, extension, history, environment);
+                if (extension.isImpactAnalysis()) TestImpact.configure(test, extension, history.impactIndexFile());
+            });
+        });
+    }
+
+
+    public static TestDefaultsExtension testDefaultsExtension(Project project) {
+        val extension = project.getExtensions().findByType(TestDefaultsExtension.class);
+        return (extension != null) ? extension :
+            project.getExtensions().create(TestDefaultsExtension.NAME, TestDefaultsExtension.class);
+    }
+
+
+    /**
+     * Runs just the shard's part of the test classes, balanced by the durations in
+     * {@link TestDefaultsExtension#getShardDurations()} if it's there.
+     */
+    static void shard(Test test, Shard shard, TestDefaultsExtension extension) {
+        val durationsFile = test.getProject().file(extension.getShardDurations().replace("{task}", test.getName()));
+        val durations = TestHistory.readClassDurations(durationsFile);
+        final Shard selected;
+        if (!durations.isEmpty()) {
+            selected = shard.withDurations(durations);
+        }
+        else {
+            LOG.info("{} has no test class durations in {}, so the shards are split by class name", test.getPath(),
+                durationsFile);
+            selected = shard;
+        }
+        test.getInputs().property(SHARD_INPUT, selected.inputValue());
+        test.exclude(element -> {
+            val className = className(element);
+            return className != null && !selected.includes(className);
+        });
+        LOG.info("{} runs shard {} of the test classes", test.getPath(), selected);
+    }
+
+
+    /**
+     * Applies the settings to the task. The number of forks and "forkEvery" are convention mappings, so that any
+     * value set on the task (including an explicit 1) wins; the heap is only set if the task doesn't have one.
+     */
+    static void tune(Test test, TestDefaultsExtension extension, TestHistory history, BuildEnvironment environment) {
+        val peakHeapDir = new File(test.getProject().getBuildDir(), TestHistory.HISTORY_DIR + "/" + test.getName() + "-heap");
+        // anything left over is from a run that failed, which still says how much heap was needed
+        recordPeakHeap(history, peakHeapDir);
+        test.addTestListener(new ClassDurationListener(history));
+
+        val conventionMapping = ((IConventionAware)test).getConventionMapping();
+
+        val extensionForks = extension.getMaxParallelForks();
+        val classDurations = history.classDurations();
+        // worked out when Gradle asks, so the test classes have been compiled by then
+        conventionMapping.map("maxParallelForks", () -> extensionForks != null ? extensionForks :
+            maxParallelForks(environment.cores(), classDurations,
+                classDurations.isEmpty() ? testClasses(test) : 0));
+
+        val extensionForkEvery = extension.getForkEvery();
+        val forkEvery = extensionForkEvery != null ? extensionForkEvery :
+            extension.isLeakProne() ? Long.valueOf(TestDefaultsExtension.LEAK_PRONE_FORK_EVERY) : null;
+        if (forkEvery != null) conventionMapping.map("forkEvery", () -> forkEvery);
+
+        if (test.getMaxHeapSize() == null) {
+            val heapSize = extension.getMaxHeapSize();
+            if (heapSize != null) {
+                test.setMaxHeapSize(heapSize);
+            }
+            else {
+                val peakHeap = history.peakHeapBytes();
+                if (peakHeap != null) {
+                    // the forks as far as the history knows, so the test classes aren't looked at yet
+                    val forks = extensionForks != null ? extensionForks :
+                        maxParallelForks(environment.cores(), classDurations, 0);
+                    test.setMaxHeapSize(maxHeapSize(peakHeap, maxHeapMb(environment, forks)));
+                }
+                // the agent is only needed to size the heap
+                addPeakHeapAgent(test, history, peakHeapDir);
+            }
+        }
+
+        // asking the task for its forks now would look at the test classes before they're compiled
+        val forks = extensionForks != null || !classDurations.isEmpty() ?
+            String.valueOf(test.getMaxParallelForks()) : "(from the number of test classes)";
+        LOG.info("{}: maxParallelForks={}, forkEvery={}, maxHeapSize={}", test.getPath(),
+            forks, test.getForkEvery(), test.getMaxHeapSize());
+    }
+
+
+    /**
+     * The number of forks for the test classes in the history: no more than can help, and no more than
+     * {@link #maxParallelForks(int, int)} allows. Without any history, it's what the number of test classes allows,
+     * or half of the cores if that isn't known either (zero).
+     */
+    static int maxParallelForks(int cores, Map<String, Long> classDurations, int testClasses) {
+        if (classDurations.isEmpty()) {
+            return testClasses > 0 ? maxParallelForks(cores, testClasses) : Math.max(1, cores / 2);
+        }
+        return Math.min(TestSchedule.usefulForks(classDurations), maxParallelForks(cores, classDurations.size()));
+    }
+
+
+    /**
+     * The number of (outermost) test classes the task would run, from its candidate class files.
+     */
+    static int testClasses(Test test) {
+        val classNames = new HashSet<String>();
+        test.getCandidateClassFiles().visit(element -> {
+            val className = className(element);
+            if (className != null) classNames.add(className);
+        });
+        return classNames.size();
+    }
+
+
+    /**
+     * Half of the cores, but no more than one for every {@value #CLASSES_PER_FORK} test classes, and at least one.
+     */
+    static int maxParallelForks(int cores, int testClasses) {
+        val byClasses = (testClasses + CLASSES_PER_FORK - 1) / CLASSES_PER_FORK;
+        return Math.max(1, Math.min(cores / 2, byClasses));
+    }
+
+
+    /**
+     * The heap to give a test JVM (e.g., "512m") given the peak it used last time, but no more than the cap.
+     * <p>
+     * A JVM with more heap tends to use more of it before collecting, so without a cap the heap could only grow.
+     */
+    static String maxHeapSize(long peakHeapBytes, long maxHeapMb) {
+        val wantedMb = (long)Math.ceil(peakHeapBytes * HEAP_HEADROOM / MB);
+        val roundedMb = ((wantedMb + HEAP_INCREMENT_MB - 1) / HEAP_INCREMENT_MB) * HEAP_INCREMENT_MB;
+        return Math.max(MIN_HEAP_MB, Math.min(roundedMb, maxHeapMb)) + "m";
+    }
+
+
+    /**
+     * The most heap a test JVM gets: its share of the memory the daemon doesn't use, but no more than
+     * {@value #MAX_HEAP_MB}MB.
+     */
+    static long maxHeapMb(BuildEnvironment environment, int forks) {
+        val memoryMb = environment.memoryBytes() / MB;
+        if (memoryMb == 0) return MAX_HEAP_MB;
+        val share = (memoryMb - environment.suggestedDaemonHeapMb()) / Math.max(1, forks);
+        return Math.max(MIN_HEAP_MB, Math.min(MAX_HEAP_MB, share));
+    }
+
+
+    /**
+     * The name of the (outermost) class for a class file, or null if it's not a class file.
+     */
+    static @Nullable String className(FileTreeElement element) {
+        if (element.isDirectory() || !element.getName().endsWith(".class")) return null;
+        val path = element.getRelativePath().getPathString();
+        val withoutSuffix = path.substring(0, path.length() - ".class".length());
+        val nested = withoutSuffix.indexOf('$');
+        return (nested < 0 ? withoutSuffix : withoutSuffix.substring(0, nested)).replace('/', '.');
+    }
+
+
+    /**
+     * Adds the {@link PeakHeapAgent} to the test JVMs, and the recording of what it found to the task.
+     * <p>
+     * The agent gets a jar of its own, so nothing else of the plugin ends up on the test JVMs' classpath, and both
+     * it and its output directory are given relative to the task's working directory: the JVM arguments are an input
+     * of the task, and an absolute path would give every checkout a different cache key.
+     */
+    static void addPeakHeapAgent(Test test, TestHistory history, File peakHeapDir) {
+        val agentJar = agentJar(test.getProject());
+        if (agentJar == null) return;
+        val workingDir = test.getWorkingDir().toPath();
+        test.jvmArgs("-javaagent:" + relativePath(workingDir, agentJar) + "=" +
+            relativePath(workingDir, peakHeapDir));
+        test.doLast(new RecordPeakHeapAction(history, peakHeapDir));
+    }
+
+
+    private static String relativePath(Path from, File to) {
+        try {
+            return from.relativize(to.toPath()).toString().replace(File.separatorChar, '/');
+        }
+        catch (IllegalArgumentException e) {
+            // e.g., on another drive
+            return to.getAbsolutePath();
+        }
+    }
+
+
+    /**
+     * The jar with just the {@link PeakHeapAgent}, for the "-javaagent", written to the project's build directory
+     * once for the build; null if it can't be written.
+     */
+    static @Nullable File agentJar(Project project) {
+        return BuildState.<@Nullable File>projectState(project, AGENT_JAR, () -> {
+            val jar = new File(project.getBuildDir(), AGENT_JAR);
+            val entryName = PeakHeapAgent.class.getName().replace('.', '/') + ".class";
+            try (InputStream agentClass = PeakHeapAgent.class.getClassLoader().getResourceAsStream(entryName)) {
+                if (agentClass == null) return null;
+                val manifest = new Manifest();
+                manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+                manifest.getMainAttributes().putValue("Premain-Class", PeakHeapAgent.class.getName());
+
+                Files.createDirectories(jar.getParentFile().toPath());
+                val written = Files.createTempFile(jar.getParentFile().toPath(), "agent", ".jar");
+                try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(written), manifest)) {
+                    out.putNextEntry(new JarEntry(entryName));
+                    val buffer = new byte[8192];
+                    for (int read = agentClass.read(buffer); read >= 0; read = agentClass.read(buffer)) {
+                        out.write(buffer, 0, read);
+                    }
+                    out.closeEntry();
+                }
+                Files.move(written, jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return jar;
+            }
+            catch (IOException e) {
+                LOG.info("Can not use the peak heap agent: {}", e.toString());
+                return null;
+            }
+        });
+    }
+
+
+    /**
+     * Moves what the agent recorded into the history.
+     */
+    private static final class RecordPeakHeapAction implements Action<Task>, Serializable {
+        private final TestHistory history;
+        private final File peakHeapDir;
+
+
+        RecordPeakHeapAction(TestHistory history, File peakHeapDir) {
+            this.history = history;
+            this.peakHeapDir = peakHeapDir;
+        }
+
+
+        @Override
+        public void execute(Task task) {
+            recordPeakHeap(history, peakHeapDir);
+        }
+    }
+
+
+    /**
+     * Collects how long each test class took, and adds them to the history when the tests are done.
+     */
+    private static final class ClassDurationListener implements TestListener {
+        private final TestHistory history;
+        private final Map<String, Long> durations = new ConcurrentHashMap<>();
+
+
+        ClassDurationListener(TestHistory history) {
+            this.history = history;
+        }
+
+
+        @Override
+        public void beforeSuite(TestDescriptor suite) {
+        }
+
+
+        @Override
+        public void afterSuite(TestDescriptor suite, TestResult result) {
+            if (suite.getParent() == null) {
+                history.recordClassDurations(new HashMap<>(durations));
+                durations.clear();
+            }
+            else if (suite.getClassName() != null) {
+                durations.merge(suite.getClassName(), result.getEndTime() - result.getStartTime(), Long::sum);
+            }
+        }
+
+
+        @Override
+        public void beforeTest(TestDescriptor testDescriptor) {
+        }
+
+
+        @Override
+        public void afterTest(TestDescriptor testDescriptor, TestResult result) {
+        }
+    }
+
+
+    /**
+     * Records the largest of the peaks written by the agent (one per test JVM), then removes them.
+     */
+    static void recordPeakHeap(TestHistory history, File peakHeapDir) {
+        val files = peakHeapDir.listFiles((dir, name) -> name.startsWith(PeakHeapAgent.FILE_PREFIX));
+        if (files == null || files.length == 0) return;
+
+        long peak = 0;
+        for (File file : files) {
+            try {
+                peak = Math.max(peak, Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim()));
+            }
+            catch (IOException | NumberFormatException e) {
+                LOG.info("Ignoring unreadable peak heap file {}: {}", file, e.toString());
+            }
+            if (!file.delete()) LOG.info("Could not delete {}", file);
+        }
+        if (peak > 0) history.recordPeakHeapBytes(peak);
+    }
+
+}
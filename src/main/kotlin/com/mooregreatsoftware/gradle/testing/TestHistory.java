@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * What was learned about a "Test" task from previous runs, kept in "build/{@value #HISTORY_DIR}": the peak heap in
+ * "&lt;task name&gt;.properties" and how long each test class took in "&lt;task name&gt;-classes.txt", and the {@link TestImpactIndex} in
+ * "&lt;task name&gt;-impact.gz".
+ * <p>
+ * The history is only a hint for tuning: if it can't be read it's treated as empty, and if it can't be written the
+ * next run just doesn't have it.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TestHistory implements Serializable {
+    private static final Logger LOG = LoggerFactory.getLogger(TestHistory.class);
+
+    static final String HISTORY_DIR = "defaults/test-history";
+
+    private static final String PEAK_HEAP_KEY = "peakHeapBytes";
+
+    private final File historyFile;
+    private final File classDurationsFile;
+    private final File impactIndexFile;
+
+
+    TestHistory(File historyDir, String taskName) {
+        this.historyFile = new File(historyDir, taskName + ".properties");
+        this.classDurationsFile = new File(historyDir, taskName + "-classes.txt");
+        this.impactIndexFile = new File(historyDir, taskName + "-impact.gz");
+    }
+
+
+    /**
+     * The history for the named "Test" task.
+     */
+    public static TestHistory testHistory(File buildDir, String taskName) {
+        return new TestHistory(new File(buildDir, HISTORY_DIR), taskName);
+    }
+
+
+    /**
+     * The most heap used by any test JVM in the last recorded run, or null if it's not known.
+     */
+    public @Nullable Long peakHeapBytes() {
+        val value = load().getProperty(PEAK_HEAP_KEY);
+        try {
+            return value == null ? null : Long.valueOf(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    public void recordPeakHeapBytes(long peakHeapBytes) {
+        val properties = load();
+        properties.setProperty(PEAK_HEAP_KEY, Long.toString(peakHeapBytes));
+        store(properties);
+    }
+
+
+    /**
+     * How long each test class took (in milliseconds) the last time it ran, by class name.
+     */
+    public Map<String, Long> classDurations() {
+        return readClassDurations(classDurationsFile);
+    }
+
+
+    /**
+     * Reads test class durations in the format they're recorded in: a line of "&lt;milliseconds&gt;\t&lt;class
+     * name&gt;" for each class. If the file isn't there or can't be read, there are none.
+     */
+    public static Map<String, Long> readClassDurations(File file) {
+        val durations = new HashMap<String, Long>();
+        if (!file.isFile()) return durations;
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                val parts = line.split("\t", 2);
+                if (parts.length == 2) durations.put(parts[1], Long.parseLong(parts[0]));
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            LOG.info("Ignoring unreadable test class durations {}: {}", file, e.toString());
+            durations.clear();
+        }
+        return durations;
+    }
+
+
+    /**
+     * Merges the durations (in milliseconds) into the ones already recorded. Classes that didn't run this time
+     * (e.g., because of a filter or a shard) keep their old duration.
+     */
+    public void recordClassDurations(Map<String, Long> durations) {
+        if (durations.isEmpty()) return;
+        val merged = new TreeMap<String, Long>(classDurations());
+        merged.putAll(durations);
+
+        val text = new StringBuilder();
+        merged.forEach((className, millis) -> text.append(millis).append('\t').append(className).append('\n'));
+        try {
+            Files.createDirectories(classDurationsFile.getParentFile().toPath());
+            Files.write(classDurationsFile.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            LOG.info("Could not write test class durations {}: {}", classDurationsFile, e.toString());
+        }
+    }
+
+
+    /**
+     * Where the {@link TestImpactIndex} for the task is kept.
+     */
+    public File impactIndexFile() {
+        return impactIndexFile;
+    }
+
+
+    private Properties load() {
+        val properties = new Properties();
+        if (!historyFile.isFile()) return properties;
+        try (Reader reader = Files.newBufferedReader(historyFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            LOG.info("Ignoring unreadable test history {}: {}", historyFile, e.toString());
+            properties.clear();
+        }
+        return properties;
+    }
+
+
+    private void store(Properties properties) {
+        try {
+            Files.createDirectories(historyFile.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(historyFile.toPath(), StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        }
+        catch (IOException e) {
+            LOG.info("Could not write test history {}: {}", historyFile, e.toString());
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import com.mooregreatsoftware.gradle.affected.AffectedProjects;
+import com.mooregreatsoftware.gradle.testing.TestImpactIndex.ClassFile;
+import com.mooregreatsoftware.gradle.util.Integration;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.mooregreatsoftware.gradle.util.ProjectUtilsKt.sourceSets;
+
+/**
+ * Runs only the test classes that the changes since the base revision (see {@link AffectedProjects#BASE_PROPERTY})
+ * can affect, according to the {@link TestImpactIndex}.
+ * <p>
+ * The test classes are picked when the project is evaluated, and the pick is an input of the task (as
+ * {@value #SELECTION_INPUT}), so a partial run is never taken for a full one by the up-to-date check or the build
+ * cache.
+ * <p>
+ * All of the tests are run when there isn't an index yet, when a changed class isn't in the index, when a build file
+ * changed (e.g., a dependency's version), when a changed file in a source directory isn't source code (e.g., a
+ * resource, whose users can't be seen in the class files), when there's no git repository (or no gradle-git on the
+ * classpath to read it with), and every
+ * {@link TestDefaultsExtension#getFullRunEvery()} runs.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TestImpact implements Serializable {
+    private static final Logger LOG = LoggerFactory.getLogger(TestImpact.class);
+
+    static final List<String> SOURCE_EXTENSIONS = Arrays.asList("java", "groovy", "kt", "scala");
+
+    /**
+     * The name of the task input that holds which test classes are run.
+     */
+    static final String SELECTION_INPUT = "defaults.test.impact";
+
+    static final String FULL_RUN = "all";
+
+    private final File indexFile;
+    private final boolean fullRun;
+    private final List<File> buildDirs;
+
+
+    TestImpact(File indexFile, boolean fullRun, List<File> buildDirs) {
+        this.indexFile = indexFile;
+        this.fullRun = fullRun;
+        this.buildDirs = buildDirs;
+    }
+
+
+    /**
+     * Picks the test classes to run, and adds the updating of the index after the task runs.
+     */
+    static void configure(Test test, TestDefaultsExtension extension, File indexFile) {
+        val unaffected = unaffectedClasses(test, extension, TestImpactIndex.load(indexFile));
+        if (unaffected == null || unaffected.isEmpty()) {
+            test.getInputs().property(SELECTION_INPUT, FULL_RUN);
+        }
+        else {
+            test.getInputs().property(SELECTION_INPUT, digest(unaffected));
+            test.exclude(element -> {
+                val className = TestDefaultsPlugin.className(element);
+                return className != null && unaffected.contains(className);
+            });
+            test.getLogger().lifecycle("{} only runs the test classes affected by the changes", test.getPath());
+        }
+        // the build directories are read now so the action doesn't need the projects when it runs
+        val buildDirs = test.getProject().getRootProject().getAllprojects().stream().
+            map(Project::getBuildDir).collect(Collectors.toList());
+        val fullRun = unaffected == null || unaffected.isEmpty();
+        test.doLast(new TestImpact(indexFile, fullRun, buildDirs).new UpdateAction());
+    }
+
+
+    /**
+     * The classes the changes can't affect, or null if all of the tests should be run.
+     */
+    private static @Nullable Set<String> unaffectedClasses(Test test, TestDefaultsExtension extension,
+                                                           TestImpactIndex index) {
+        val logger = test.getLogger();
+        if (index.isEmpty()) {
+            logger.lifecycle("{} runs all the tests: there is no test impact index yet", test.getPath());
+            return null;
+        }
+        if (index.runsSinceFullRun() + 1 >= extension.getFullRunEvery()) {
+            logger.lifecycle("{} runs all the tests: it's been {} runs since they all ran", test.getPath(),
+                index.runsSinceFullRun());
+            return null;
+        }
+        if (!Integration.GRADLE_GIT.isAvailable()) {
+            logger.lifecycle("{} runs all the tests: the changes can't be found without gradle-git; to find them, {}",
+                test.getPath(), Integration.GRADLE_GIT.howToEnable());
+            return null;
+        }
+        val changedClasses = changedClasses(test.getProject());
+        if (changedClasses == null) {
+            logger.lifecycle("{} runs all the tests: a change can't be traced to classes", test.getPath());
+            return null;
+        }
+        val unaffected = index.unaffectedClasses(changedClasses);
+        if (unaffected == null) {
+            logger.lifecycle("{} runs all the tests: a changed class isn't in the test impact index", test.getPath());
+        }
+        return unaffected;
+    }
+
+
+    /**
+     * The outermost classes for the source files changed since the base revision, or null if all of the tests
+     * should be run.
+     */
+    static @Nullable Set<String> changedClasses(Project project) {
+        if (!Integration.GRADLE_GIT.isAvailable()) return null;
+        val changedFiles = AffectedProjects.changedFiles(project);
+        if (changedFiles == null) return null;
+
+        val rootProject = project.getRootProject();
+        if (changedFiles.stream().anyMatch(file -> AffectedProjects.isBuildFile(rootProject, file))) return null;
+        return classNames(changedFiles.stream().map(File::toPath).collect(Collectors.toList()), sourceDirs(rootProject));
+    }
+
+
+    /**
+     * The outermost classes for the changed files, or null if a file in a source directory isn't source code or a
+     * file is a build script. Other files outside of the source directories (e.g., documentation) are ignored.
+     */
+    static @Nullable Set<String> classNames(Collection<Path> changedFiles, Collection<Path> sourceDirs) {
+        val classNames = new LinkedHashSet<String>();
+        for (Path file : changedFiles) {
+            val sourceDir = sourceDirs.stream().filter(file::startsWith).max(Comparator.comparingInt(Path::getNameCount)).orElse(null);
+            if (sourceDir == null) {
+                if (isBuildScript(file)) return null;
+                continue;
+            }
+
+            val relative = sourceDir.relativize(file).toString().replace(File.separatorChar, '/');
+            val dot = relative.lastIndexOf('.');
+            if (dot < 0 || !SOURCE_EXTENSIONS.contains(relative.substring(dot + 1))) return null;
+
+            val className = relative.substring(0, dot).replace('/', '.');
+            classNames.add(className);
+            // top-level Kotlin functions go in a "...Kt" class
+            if (relative.endsWith(".kt")) classNames.add(className + "Kt");
+        }
+        return classNames;
+    }
+
+
+    /**
+     * Is it a project's build script or properties, which can change what the tests run against (e.g., the version
+     * of a dependency)?
+     */
+    static boolean isBuildScript(Path file) {
+        val name = file.getFileName().toString();
+        return name.endsWith(".gradle") || name.endsWith(".gradle.kts") || name.equals("gradle.properties");
+    }
+
+
+    private static Set<Path> sourceDirs(Project rootProject) {
+        val dirs = new HashSet<Path>();
+        for (Project prj : rootProject.getAllprojects()) {
+            val sourceSets = sourceSets(prj.getConvention());
+            if (sourceSets == null) continue;
+            for (SourceSet sourceSet : sourceSets) {
+                sourceSet.getAllSource().getSrcDirs().forEach(dir -> dirs.add(dir.toPath()));
+            }
+        }
+        return dirs;
+    }
+
+
+    /**
+     * A short, stable stand-in for the set of classes, to use as the task's input.
+     */
+    static String digest(Set<String> classNames) {
+        try {
+            val digest = MessageDigest.getInstance("SHA-256");
+            new TreeSet<String>(classNames).forEach(name -> digest.update((name + "\n").getBytes(StandardCharsets.UTF_8)));
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * The class files from the build on the task's classpath, by class name: the ones in directories (which
+     * includes the test classes), and the ones in the jars under the build directories (which is how other projects
+     * are on the classpath in older versions of Gradle).
+     */
+    static Map<String, ClassFile> classFiles(Collection<File> classpath, Collection<File> buildDirs) {
+        val buildDirPaths = buildDirs.stream().map(File::toPath).collect(Collectors.toList());
+        val classFiles = new HashMap<String, ClassFile>();
+        for (File file : classpath) {
+            if (file.isDirectory()) {
+                addDirectoryClassFiles(file.toPath(), classFiles);
+            }
+            else if (file.isFile() && file.getName().endsWith(".jar") && buildDirPaths.stream().anyMatch(file.toPath()::startsWith)) {
+                addJarClassFiles(file, classFiles);
+            }
+        }
+        return classFiles;
+    }
+
+
+    private static void addDirectoryClassFiles(Path dir, Map<String, ClassFile> classFiles) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".class") && Files.isRegularFile(file)).
+                forEach(file -> {
+                    val relative = dir.relativize(file).toString().replace(File.separatorChar, '/');
+                    classFiles.putIfAbsent(className(relative), ClassFile.of(file.toFile()));
+                });
+        }
+        catch (IOException | UncheckedIOException e) {
+            LOG.info("Could not read {}: {}", dir, e.toString());
+        }
+    }
+
+
+    private static void addJarClassFiles(File jar, Map<String, ClassFile> classFiles) {
+        try (JarFile jarFile = new JarFile(jar)) {
+            jarFile.stream().
+                filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class")).
+                forEach(entry -> classFiles.putIfAbsent(className(entry.getName()), ClassFile.inJar(jar, entry.getName())));
+        }
+        catch (IOException e) {
+            LOG.info("Could not read {}: {}", jar, e.toString());
+        }
+    }
+
+
+    private static String className(String classFilePath) {
+        return classFilePath.substring(0, classFilePath.length() - ".class".length()).replace('/', '.');
+    }
+
+
+    /**
+     * Brings the index up to date with the classes the tests ran against.
+     */
+    private final class UpdateAction implements Action<Task>, Serializable {
+        @Override
+        public void execute(Task task) {
+            val index = TestImpactIndex.load(indexFile);
+            index.update(classFiles(((Test)task).getClasspath().getFiles(), buildDirs));
+            index.recordRun(fullRun);
+            index.save(indexFile);
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import com.mooregreatsoftware.gradle.bytecode.ClassReferences;
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Which classes each of the build's classes (production and test) refers to, for working out which test classes
+ * a change can affect. The index only holds the classes that were on the test's classpath from the build itself
+ * (directories, and the jars of other projects), and only their references to each other.
+ * <p>
+ * It's kept up to date incrementally: a class file is only read again if it changed since it was indexed. It's
+ * stored gzipped, with each class named once and its references given by number, so it stays small even for very
+ * large projects.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TestImpactIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(TestImpactIndex.class);
+
+    private static final String RUNS_PREFIX = "runs ";
+
+    private final Map<String, Entry> classes = new TreeMap<>();
+    private int runsSinceFullRun;
+
+
+    /**
+     * Reads the index from the file. If there isn't one (or it can't be read) the index is empty.
+     */
+    public static TestImpactIndex load(File file) {
+        val index = new TestImpactIndex();
+        if (!file.isFile()) return index;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(file.toPath())), StandardCharsets.UTF_8))) {
+            val header = reader.readLine();
+            if (header == null || !header.startsWith(RUNS_PREFIX)) throw new IOException("Missing header");
+            index.runsSinceFullRun = Integer.parseInt(header.substring(RUNS_PREFIX.length()));
+
+            // "name<TAB>lastModified<TAB>comma-separated line numbers of the referenced classes"
+            val names = new ArrayList<String>();
+            val rows = new ArrayList<String[]>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                val row = line.split("\t", -1);
+                if (row.length != 3) throw new IOException("Bad line: " + line);
+                names.add(row[0]);
+                rows.add(row);
+            }
+            for (String[] row : rows) {
+                val references = new HashSet<String>();
+                if (!row[2].isEmpty()) {
+                    for (String ref : row[2].split(",")) references.add(names.get(Integer.parseInt(ref)));
+                }
+                index.classes.put(row[0], new Entry(Long.parseLong(row[1]), references));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.info("Ignoring unreadable test impact index {}: {}", file, e.toString());
+            index.classes.clear();
+            index.runsSinceFullRun = 0;
+        }
+        return index;
+    }
+
+
+    public void save(File file) {
+        val lineNumbers = new HashMap<String, Integer>();
+        classes.keySet().forEach(name -> lineNumbers.put(name, lineNumbers.size()));
+
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file.toPath())), StandardCharsets.UTF_8))) {
+                writer.write(RUNS_PREFIX + runsSinceFullRun + "\n");
+                for (Map.Entry<String, Entry> entry : classes.entrySet()) {
+                    val refs = new StringBuilder();
+                    entry.getValue().references.stream().
+                        map(lineNumbers::get).
+                        filter(number -> number != null).
+                        sorted().
+                        forEach(number -> refs.append(refs.length() == 0 ? "" : ",").append(number));
+                    writer.write(entry.getKey() + "\t" + entry.getValue().lastModified + "\t" + refs + "\n");
+                }
+            }
+        }
+        catch (IOException e) {
+            LOG.info("Could not write the test impact index {}: {}", file, e.toString());
+        }
+    }
+
+
+    /**
+     * Brings the index up to date with the class files: reads the ones that are new or changed since they were
+     * indexed, and drops the classes that are gone.
+     *
+     * @param classFiles the class files by class name (e.g., "com.example.Outer$Inner")
+     * @return the number of class files that were read
+     */
+    public int update(Map<String, ClassFile> classFiles) {
+        classes.keySet().retainAll(classFiles.keySet());
+        int read = 0;
+        val jars = new HashMap<File, JarFile>();
+        try {
+            for (Map.Entry<String, ClassFile> classFile : classFiles.entrySet()) {
+                val lastModified = classFile.getValue().file.lastModified();
+                val existing = classes.get(classFile.getKey());
+                if (existing != null && existing.lastModified == lastModified) continue;
+                try {
+                    classes.put(classFile.getKey(), new Entry(lastModified,
+                        new HashSet<>(classFile.getValue().read(jars).references())));
+                    read++;
+                }
+                catch (IOException e) {
+                    LOG.info("Could not read {}: {}", classFile.getValue(), e.toString());
+                    classes.remove(classFile.getKey());
+                }
+            }
+        }
+        finally {
+            for (JarFile jar : jars.values()) {
+                try {
+                    jar.close();
+                }
+                catch (IOException e) {
+                    LOG.info("Could not close {}: {}", jar.getName(), e.toString());
+                }
+            }
+        }
+        // only references between the indexed classes matter
+        classes.values().forEach(entry -> entry.references.retainAll(classFiles.keySet()));
+        return read;
+    }
+
+
+    public boolean isEmpty() {
+        return classes.isEmpty();
+    }
+
+
+    public int runsSinceFullRun() {
+        return runsSinceFullRun;
+    }
+
+
+    public void recordRun(boolean fullRun) {
+        runsSinceFullRun = fullRun ? 0 : runsSinceFullRun + 1;
+    }
+
+
+    /**
+     * The classes (outermost classes only) that the changed classes can't affect: the ones that don't refer to a
+     * changed class, directly or through other indexed classes. A test class that isn't in the index is never in
+     * it, so new tests always run.
+     *
+     * @param changedClasses the changed classes (outermost classes only, since that's what source files map to)
+     * @return null if a changed class isn't in the index, since then it's not known what refers to it
+     */
+    public @Nullable Set<String> unaffectedClasses(Set<String> changedClasses) {
+        val indexedOutermost = new HashSet<String>();
+        classes.keySet().forEach(name -> indexedOutermost.add(outermost(name)));
+        if (!indexedOutermost.containsAll(changedClasses)) return null;
+
+        val dependents = new HashMap<String, Set<String>>();
+        classes.forEach((name, entry) -> entry.references.forEach(ref ->
+            dependents.computeIfAbsent(ref, r -> new HashSet<>()).add(name)));
+
+        val affected = new HashSet<String>();
+        val toVisit = new ArrayDeque<String>();
+        classes.keySet().stream().filter(name -> changedClasses.contains(outermost(name))).forEach(name -> {
+            affected.add(name);
+            toVisit.push(name);
+        });
+        while (!toVisit.isEmpty()) {
+            for (String dependent : dependents.getOrDefault(toVisit.pop(), new HashSet<>())) {
+                if (affected.add(dependent)) toVisit.push(dependent);
+            }
+        }
+
+        val unaffected = new TreeSet<String>(indexedOutermost);
+        affected.forEach(name -> unaffected.remove(outermost(name)));
+        return unaffected;
+    }
+
+
+    static String outermost(String className) {
+        val nested = className.indexOf('$');
+        return nested < 0 ? className : className.substring(0, nested);
+    }
+
+
+    /**
+     * Where a class file is: a file of its own, or an entry in a jar.
+     */
+    public static final class ClassFile {
+        final File file;
+        final @Nullable String jarEntry;
+
+
+        private ClassFile(File file, @Nullable String jarEntry) {
+            this.file = file;
+            this.jarEntry = jarEntry;
+        }
+
+
+        public static ClassFile of(File classFile) {
+            return new ClassFile(classFile, null);
+        }
+
+
+        public static ClassFile inJar(File jar, String entry) {
+            return new ClassFile(jar, entry);
+        }
+
+
+        ClassReferences read(Map<File, JarFile> openJars) throws IOException {
+            if (jarEntry == null) return ClassReferences.read(file);
+            JarFile jar = openJars.get(file);
+            if (jar == null) {
+                jar = new JarFile(file);
+                openJars.put(file, jar);
+            }
+            val entry = jar.getJarEntry(jarEntry);
+            if (entry == null) throw new IOException("No " + jarEntry + " in " + file);
+            try (InputStream in = jar.getInputStream(entry)) {
+                return ClassReferences.read(in);
+            }
+        }
+
+
+        @Override
+        public String toString() {
+            return jarEntry == null ? file.toString() : file + "!/" + jarEntry;
+        }
+    }
+
+
+    private static final class Entry {
+        final long lastModified;
+        final Set<String> references;
+
+
+        Entry(long lastModified, Set<String> references) {
+            this.lastModified = lastModified;
+            this.references = references;
+        }
+    }
+
+}
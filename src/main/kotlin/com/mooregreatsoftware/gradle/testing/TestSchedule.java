@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.GradleException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Works out how test classes can be spread out: over forks, by how long they took the last time they ran (see
+ * {@link TestHistory}), and over machines, by {@link Shard}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TestSchedule {
+
+    private static final Pattern SHARD_PATTERN = Pattern.compile("(\\d+)/(\\d+)");
+
+    private TestSchedule() {
+    }
+
+
+    /**
+     * The number of forks that can actually help: past the point where the longest class takes as long as a fork's
+     * share of the rest, more forks only add start-up time.
+     */
+    public static int usefulForks(Map<String, Long> estimates) {
+        val longest = estimates.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        if (longest <= 0) return Integer.MAX_VALUE;
+        val total = estimates.values().stream().mapToLong(Long::longValue).sum();
+        return (int)Math.max(1, (total + longest - 1) / longest);
+    }
+
+
+    /**
+     * Spreads the classes over the shards so each gets about the same total time: the longest class goes first, and
+     * each goes to the shard with the least time so far (the lowest-numbered one, for a tie). Ties between classes
+     * are broken by name, so the same durations always give the same assignment.
+     *
+     * @return the shard (counting from 1) for each class
+     */
+    public static Map<String, Integer> balance(Map<String, Long> durations, int count) {
+        val classes = new ArrayList<Map.Entry<String, Long>>(durations.entrySet());
+        classes.sort(Comparator.comparing((Map.Entry<String, Long> entry) -> entry.getValue()).reversed().
+            thenComparing(Map.Entry::getKey));
+
+        val totals = new long[count];
+        val assignments = new HashMap<String, Integer>();
+        for (Map.Entry<String, Long> entry : classes) {
+            int least = 0;
+            for (int i = 1; i < count; i++) {
+                if (totals[i] < totals[least]) least = i;
+            }
+            totals[least] += entry.getValue();
+            assignments.put(entry.getKey(), least + 1);
+        }
+        return assignments;
+    }
+
+
+    /**
+     * One part of the test classes to run, from the "i/n" syntax of {@link TestDefaultsPlugin#SHARD_PROPERTY}
+     * (where "i" counts from 1).
+     * <p>
+     * The classes with a known duration are {@link #balance(Map, int) balanced} over the parts; the rest are split
+     * by a hash of their name. Either way every machine agrees on the parts, as long as they share the durations
+     * (e.g., a checked-in file), and a class is always in exactly one part.
+     */
+    public static final class Shard implements Serializable {
+        public final int index;
+        public final int count;
+        private final Map<String, Integer> assignments;
+
+
+        Shard(int index, int count) {
+            this(index, count, new HashMap<>());
+        }
+
+
+        private Shard(int index, int count, Map<String, Integer> assignments) {
+            this.index = index;
+            this.count = count;
+            this.assignments = assignments;
+        }
+
+
+        /**
+         * The same shard, with the classes that have a duration balanced over the parts.
+         */
+        public Shard withDurations(Map<String, Long> durations) {
+            return new Shard(index, count, new HashMap<>(balance(durations, count)));
+        }
+
+
+        public static @Nullable Shard parse(@Nullable Object value) {
+            if (value == null || value.toString().trim().isEmpty()) return null;
+            val matcher = SHARD_PATTERN.matcher(value.toString().trim());
+            if (matcher.matches()) {
+                val index = Integer.parseInt(matcher.group(1));
+                val count = Integer.parseInt(matcher.group(2));
+                if (index >= 1 && index <= count) return new Shard(index, count);
+            }
+            throw new GradleException("\"" + TestDefaultsPlugin.SHARD_PROPERTY + "\" must be \"i/n\" with i from 1 to n " +
+                "(e.g., \"2/4\"), not \"" + value + "\"");
+        }
+
+
+        /**
+         * Is the class in this shard?
+         */
+        public boolean includes(String className) {
+            val assigned = assignments.get(className);
+            if (assigned != null) return assigned == index;
+            // String.hashCode() is the same on every JVM; mixing it spreads out names that only differ at the end
+            return Math.floorMod(className.hashCode() * 0x9E3779B9, count) == index - 1;
+        }
+
+
+        /**
+         * Stands for what the shard runs, to use as the task's input: the shard, and a digest of the assignment
+         * when there is one.
+         */
+        public String inputValue() {
+            if (assignments.isEmpty()) return toString();
+            val assigned = assignments.entrySet().stream().
+                map(entry -> entry.getKey() + "=" + entry.getValue()).collect(Collectors.toSet());
+            return this + " " + TestImpact.digest(assigned);
+        }
+
+
+        @Override
+        public String toString() {
+            return index + "/" + count;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The state the plugins share for the length of a build: between projects, and between the threads of a
+ * "--parallel" build.
+ * <p>
+ * Each value is created once, on its first request. Creating is done under a lock for just that value, so two
+ * threads asking for it at the same time can't both create it (e.g., open the git repository twice), while asking
+ * for other values doesn't wait on it; once it's there, asking for it doesn't lock. (So two creators mustn't ask for
+ * each other's values.) The state is kept by the {@link Gradle} instance, so nested builds (e.g., "buildSrc") have their
+ * own, and it's dropped when the build finishes so nothing is held onto between builds in the daemon. The values
+ * themselves need to be safe to use from several threads; e.g., by handing out immutable snapshots.
+ */
+public final class BuildState {
+    private static final Map<Gradle, Map<String, Holder>> STATES = Collections.synchronizedMap(new WeakHashMap<>());
+
+
+    private BuildState() {
+    }
+
+
+    /**
+     * Retrieves the value for the build, creating it if this is the first request.
+     *
+     * @param key     identifies the value; the class name of the value is a good choice
+     * @param creator creates the value; may return null, which is then the value for the build
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T buildState(Project project, String key, Supplier<T> creator) {
+        return (T)state(project.getGradle()).computeIfAbsent(key, k -> new Holder()).get(creator);
+    }
+
+
+    /**
+     * Retrieves the value for the project, creating it if this is the first request.
+     *
+     * @see #buildState(Project, String, Supplier)
+     */
+    public static <T> T projectState(Project project, String key, Supplier<T> creator) {
+        return buildState(project, project.getPath() + "#" + key, creator);
+    }
+
+
+    private static Map<String, Holder> state(Gradle gradle) {
+        synchronized (STATES) {
+            val state = STATES.get(gradle);
+            if (state != null) return state;
+
+            val newState = new ConcurrentHashMap<String, Holder>();
+            STATES.put(gradle, newState);
+            gradle.addBuildListener(new BuildAdapter() {
+                @Override
+                public void buildFinished(BuildResult result) {
+                    STATES.remove(gradle);
+                }
+            });
+            return newState;
+        }
+    }
+
+
+    /**
+     * A value, created once, on the first request. (Not created in {@link ConcurrentHashMap#computeIfAbsent}, since
+     * that can't be called again for the same map while it's running.)
+     */
+    private static final class Holder {
+        private volatile boolean created;
+        private @Nullable Object value;
+
+
+        @Nullable Object get(Supplier<?> creator) {
+            if (created) return value;
+            synchronized (this) {
+                if (!created) {
+                    value = creator.get();
+                    created = true;
+                }
+                return value;
+            }
+        }
+    }
+
+}
@@ -22,39 +22,46 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.gradle.api.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.File;
+import java.io.Serializable;
+import java.util.function.Supplier;
 
 @SuppressWarnings("RedundantCast")
 public final class GrGitUtils {
+    private static final Logger LOG = LoggerFactory.getLogger(GrGitUtils.class);
+
+    // not Grgit.class.getName(), which would need gradle-git to be there
+    private static final String GRGIT_STATE_KEY = "org.ajoberstar.grgit.Grgit";
 
     /**
-     * Retrieves the Grigit instance for the root project (cached in the "ext" properties). It's created if this is the
-     * first request.
+     * Retrieves the Grigit instance for the root project (kept in the {@link BuildState}). It's opened if this is
+     * the first request.
+     * <p>
+     * Nothing of gradle-git or JGit is touched unless {@link Integration#GRADLE_GIT} is available, so this can be
+     * called whether it is or not.
      *
      * @param project the project to get the Grgit instance for. If not the root project, the root project is used.
-     * @return null if this project is not have a git repository
+     * @return null if this project is not have a git repository, or gradle-git isn't on the classpath
      */
-    @SuppressWarnings({"unchecked", "deprecation"})
+    @SuppressWarnings("deprecation")
     public static @Nullable Grgit grgit(Project project) {
-        String key = Grgit.class.getName();
+        if (!Integration.GRADLE_GIT.isAvailable()) return null;
         val rootProject = project.getRootProject();
-        val ext = rootProject.getExtensions().getExtraProperties();
-        if (ext.has(key)) {
-            return ((AtomicReference<Grgit>)ext.get(key)).get();
-        }
-        else {
-            AtomicReference<Grgit> grgitRef;
-            try {
-                val grgit = Grgit.open(rootProject.getProjectDir());
-                grgitRef = new AtomicReference<>(grgit);
-            }
-            catch (Exception exp) {
-                grgitRef = new AtomicReference<>();
-            }
+        return BuildState.<@Nullable Grgit>buildState(rootProject, GRGIT_STATE_KEY, () -> openGrgit(rootProject));
+    }
 
-            ext.set(key, grgitRef);
-            return grgitRef.get();
+
+    @SuppressWarnings("deprecation")
+    private static @Nullable Grgit openGrgit(Project rootProject) {
+        if (!ProjectUtilsKt.hasGitRepository(rootProject)) return null;
+        try {
+            return Grgit.open(rootProject.getProjectDir());
+        }
+        catch (Exception exp) {
+            return null;
         }
     }
 
@@ -70,35 +77,52 @@ public final class GrGitUtils {
      * a git repository) then {@link #DEFAULT_USER_EMAIL} is used.
      */
     public static String userEmail(Project project) {
-        val rootExt = project.getRootProject().getExtensions().getExtraProperties();
+        return userEmailSupplier(project).get();
+    }
 
-        if (rootExt.has(EMAIL_CACHE_KEY)) {
-            return (String)rootExt.get(EMAIL_CACHE_KEY);
-        }
-        else {
-            val userEmail = detectUserEmail(project);
-            rootExt.set(EMAIL_CACHE_KEY, userEmail);
-            return userEmail;
-        }
+
+    /**
+     * Supplies the user's email from the git repository's configuration, the same as {@link #userEmail(Project)}.
+     * The repository is not read until the first call to {@link Supplier#get()}, and the supplier only holds onto
+     * the root project's directory, so it is safe to use from a task action.
+     */
+    public static Supplier<String> userEmailSupplier(Project project) {
+        val rootProject = project.getRootProject();
+        return BuildState.buildState(rootProject, EMAIL_CACHE_KEY, () -> new UserEmail(rootProject.getProjectDir()));
     }
 
 
-    private static String detectUserEmail(Project project) {
-        val grgit = grgit(project);
-        if (grgit == null) {
-            project.getLogger().warn("There is no git repository to detect the user's email address from," +
-                " so using \"{}\" instead", DEFAULT_USER_EMAIL);
+    @SuppressWarnings("deprecation")
+    private static String detectUserEmail(File rootDir) {
+        if (!Integration.GRADLE_GIT.isAvailable()) {
+            LOG.info("gradle-git is not on the classpath, so using \"{}\" for the user's email address",
+                DEFAULT_USER_EMAIL);
             return DEFAULT_USER_EMAIL;
         }
-        val storedConfig = grgit.getRepository().getJgit().getRepository().getConfig();
-        val userEmail = email(storedConfig);
-        if (StringUtils.isBlank(userEmail)) {
-            project.getLogger().warn("The git repository's \"user.email\" configuration is null, " +
-                "so using \"{}\" instead", DEFAULT_USER_EMAIL);
+
+        final Grgit grgit;
+        try {
+            grgit = Grgit.open(rootDir);
+        }
+        catch (Exception exp) {
+            LOG.warn("There is no git repository to detect the user's email address from," +
+                " so using \"{}\" instead", DEFAULT_USER_EMAIL);
             return DEFAULT_USER_EMAIL;
         }
-        else {
-            return (@NonNull String)userEmail;
+        try {
+            val storedConfig = grgit.getRepository().getJgit().getRepository().getConfig();
+            val userEmail = email(storedConfig);
+            if (StringUtils.isBlank(userEmail)) {
+                LOG.warn("The git repository's \"user.email\" configuration is null, " +
+                    "so using \"{}\" instead", DEFAULT_USER_EMAIL);
+                return DEFAULT_USER_EMAIL;
+            }
+            else {
+                return (@NonNull String)userEmail;
+            }
+        }
+        finally {
+            grgit.close();
         }
     }
 
@@ -107,4 +131,24 @@ public final class GrGitUtils {
         return storedConfig.getString("user", null, "email");
     }
 
+
+    private static final class UserEmail implements Supplier<String>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final File rootDir;
+        private transient @Nullable String userEmail;
+
+
+        UserEmail(File rootDir) {
+            this.rootDir = rootDir;
+        }
+
+
+        @Override
+        public synchronized String get() {
+            if (userEmail == null) userEmail = detectUserEmail(rootDir);
+            return (@NonNull String)userEmail;
+        }
+    }
+
 }
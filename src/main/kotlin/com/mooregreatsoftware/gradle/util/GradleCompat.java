@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.util.GradleVersion;
+
+/**
+ * Helpers for using features of Gradle versions newer than the one being compiled against.
+ */
+public final class GradleCompat {
+
+    private GradleCompat() {
+    }
+
+
+    /**
+     * Is the version of Gradle running the build at least the given version? (e.g., "3.4")
+     */
+    public static boolean isAtLeast(String version) {
+        return GradleVersion.current().getBaseVersion().compareTo(GradleVersion.version(version)) >= 0;
+    }
+
+
+    /**
+     * Can the configuration be resolved? Before Gradle 3.3 every configuration could be; since then some (e.g.,
+     * "implementation" and "api") are only for declaring dependencies.
+     */
+    public static boolean canBeResolved(Configuration configuration) {
+        return !isAtLeast("3.3") || (Boolean)InvokerHelper.getProperty(configuration, "canBeResolved");
+    }
+
+}
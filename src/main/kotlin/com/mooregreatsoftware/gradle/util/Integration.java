@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The optional libraries that some of the integrations need. They are not brought in by this plugin, so that
+ * builds that don't use them don't pay to load them; a build that does use them adds them to its buildscript
+ * classpath.
+ * <p>
+ * (The Bintray integration isn't listed since it's only used when the build applies JFrog's plugin itself.)
+ */
+public enum Integration {
+    /**
+     * Needed for the release and GitHub Pages integrations, and for reading the user's email from git.
+     */
+    GRADLE_GIT("org.ajoberstar:gradle-git:1.3.2", "org.ajoberstar.grgit.Grgit"),
+
+    /**
+     * Needed for the license integration.
+     */
+    LICENSE("gradle.plugin.nl.javadude.gradle.plugins:license-gradle-plugin:0.12.1",
+        "nl.javadude.gradle.plugins.license.LicensePlugin");
+
+    /**
+     * The coordinates to put on the buildscript classpath.
+     */
+    public final String coordinates;
+    private final String marker;
+    private volatile @Nullable Boolean available;
+
+
+    Integration(String coordinates, String markerClassName) {
+        this.coordinates = coordinates;
+        this.marker = markerClassName.replace('.', '/') + ".class";
+    }
+
+
+    /**
+     * Is the library on the classpath? This looks for the class file rather than loading the class.
+     */
+    public boolean isAvailable() {
+        Boolean isAvailable = available;
+        if (isAvailable == null) {
+            isAvailable = Integration.class.getClassLoader().getResource(marker) != null;
+            available = isAvailable;
+        }
+        return isAvailable;
+    }
+
+
+    /**
+     * The advice to give when the library is not available.
+     */
+    public String howToEnable() {
+        return "add \"classpath '" + coordinates + "'\" to the buildscript dependencies";
+    }
+
+}
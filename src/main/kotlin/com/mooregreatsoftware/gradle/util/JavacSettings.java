@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util;
+
+import lombok.val;
+import org.gradle.api.Project;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * The javac settings registered for a project by the various plugins (annotation processors, boot classpath, etc.)
+ * <p>
+ * This is what the compile task actions hold on to instead of the {@link Project}, so that nothing needs to reach
+ * back into the project model when the task executes.
+ *
+ * @see JavacUtils#createJavacArgs(JavacSettings)
+ */
+public final class JavacSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final String STATE_KEY = JavacSettings.class.getName();
+
+    // registered to while the projects are configured, and read when (possibly several) compile tasks run, so
+    // these are copied on write: a reader always iterates over a consistent snapshot, in the registration order
+    final Set<File> bootClasspath = new CopyOnWriteArraySet<>();
+    final Set<File> annotationProcessorLibFiles = new CopyOnWriteArraySet<>();
+    final Set<String> annotationProcessorClassNames = new CopyOnWriteArraySet<>();
+    final Set<JavacUtils.Option> annotationProcessorOptions = new CopyOnWriteArraySet<>();
+    final Set<String> javacOptions = new CopyOnWriteArraySet<>();
+
+
+    private JavacSettings() {
+        javacOptions.add("-Xlint:unchecked");
+    }
+
+
+    private JavacSettings(JavacSettings settings) {
+        bootClasspath.addAll(settings.bootClasspath);
+        annotationProcessorLibFiles.addAll(settings.annotationProcessorLibFiles);
+        annotationProcessorClassNames.addAll(settings.annotationProcessorClassNames);
+        annotationProcessorOptions.addAll(settings.annotationProcessorOptions);
+        javacOptions.addAll(settings.javacOptions);
+    }
+
+
+    /**
+     * Retrieves the settings for the project (kept in the {@link BuildState}). They are created if this is the
+     * first request.
+     */
+    public static JavacSettings javacSettings(Project project) {
+        return BuildState.projectState(project, STATE_KEY, JavacSettings::new);
+    }
+
+
+    /**
+     * A copy of these settings with another annotation processor added; e.g., for a task that runs a processor
+     * that the normal compile doesn't.
+     *
+     * @param options the processor's options, without the "-A"
+     */
+    public JavacSettings withProcessor(Collection<File> libFiles, Collection<String> classNames,
+                                       Collection<JavacUtils.Option> options, Collection<File> bootClasspathFiles) {
+        val settings = new JavacSettings(this);
+        settings.annotationProcessorLibFiles.addAll(libFiles);
+        settings.annotationProcessorClassNames.addAll(classNames);
+        settings.annotationProcessorOptions.addAll(options);
+        settings.bootClasspath.addAll(bootClasspathFiles);
+        return settings;
+    }
+
+}
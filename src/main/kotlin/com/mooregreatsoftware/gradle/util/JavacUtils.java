@@ -17,17 +17,19 @@ package com.mooregreatsoftware.gradle.util;
 
 import javaslang.collection.TreeSet;
 import lombok.val;
-import org.checkerframework.checker.nullness.qual.NonNull;
 import org.gradle.api.Project;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
-import static java.util.Collections.singletonList;
+import static com.mooregreatsoftware.gradle.util.JavacSettings.javacSettings;
 
 @SuppressWarnings("Convert2MethodRef")
 public final class JavacUtils {
@@ -38,57 +40,55 @@ public final class JavacUtils {
     }
 
 
-    public static LinkedHashSet<File> getMutableBootClasspath(Project project) {
-        return getSetFromExtraProperties(project, "javac.bootclasspath");
-    }
-
-
-    public static LinkedHashSet<File> getMutableAnnotationProcessorLibFiles(Project project) {
-        return getSetFromExtraProperties(project, "javac.annotationProcessor.lib.files");
+    /**
+     * A snapshot of the boot classpath registered for the project.
+     */
+    public static Set<File> getBootClasspath(Project project) {
+        return snapshot(javacSettings(project).bootClasspath);
     }
 
 
-    public static LinkedHashSet<String> getMutableAnnotationProcessorClassNames(Project project) {
-        return getSetFromExtraProperties(project, "javac.annotationProcessor.class.names");
+    /**
+     * A snapshot of the annotation processor libraries registered for the project.
+     */
+    public static Set<File> getAnnotationProcessorLibFiles(Project project) {
+        return snapshot(javacSettings(project).annotationProcessorLibFiles);
     }
 
 
-    private static LinkedHashSet<String> getMutableJavacOptions(Project project) {
-        return getSetFromExtraProperties(project, "javac.javac.options");
+    /**
+     * A snapshot of the annotation processor class names registered for the project.
+     */
+    public static Set<String> getAnnotationProcessorClassNames(Project project) {
+        return snapshot(javacSettings(project).annotationProcessorClassNames);
     }
 
 
-    public static LinkedHashSet<Option> getMutableAnnotationProcessorOptions(Project project) {
-        return getSetFromExtraProperties(project, "javac.annotationProcessor.options");
+    /**
+     * A snapshot of the annotation processor options registered for the project.
+     */
+    public static Set<Option> getAnnotationProcessorOptions(Project project) {
+        return snapshot(javacSettings(project).annotationProcessorOptions);
     }
 
 
-    @SuppressWarnings("unchecked")
-    private static <T> LinkedHashSet<T> getSetFromExtraProperties(Project project, String keyname) {
-        val ext = project.getExtensions().getExtraProperties();
-        if (ext.has(keyname)) {
-            return (@NonNull LinkedHashSet<T>)ext.get(keyname);
-        }
-        else {
-            val set = new LinkedHashSet<T>();
-            ext.set(keyname, set);
-            return set;
-        }
+    private static <T> Set<T> snapshot(Set<T> set) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(set));
     }
 
 
     public static void registerBootClasspath(Project project, Collection<File> files) {
-        getMutableBootClasspath(project).addAll(files);
+        javacSettings(project).bootClasspath.addAll(files);
     }
 
 
     public static void registerAnnotationProcessorLibFiles(Project project, Collection<File> files) {
-        getMutableAnnotationProcessorLibFiles(project).addAll(files);
+        javacSettings(project).annotationProcessorLibFiles.addAll(files);
     }
 
 
     public static void registerAnnotationProcessorClassnames(Project project, Collection<String> classnames) {
-        getMutableAnnotationProcessorClassNames(project).addAll(classnames);
+        javacSettings(project).annotationProcessorClassNames.addAll(classnames);
     }
 
 
@@ -96,7 +96,7 @@ public final class JavacUtils {
      * Register annotation processor arguments. Do not include the "-A". (e.g., instead of "-Awarn" use "warn")
      */
     public static void registerAnnotationProcessorOptions(Project project, Iterable<Option> options) {
-        getMutableAnnotationProcessorOptions(project).addAll(
+        javacSettings(project).annotationProcessorOptions.addAll(
             TreeSet.ofAll(options).map(it -> stripLeadingDashA(it)).toJavaSet()
         );
     }
@@ -109,21 +109,28 @@ public final class JavacUtils {
 
 
     public static List<String> createJavacArgs(Project project) {
+        return createJavacArgs(javacSettings(project));
+    }
+
+
+    /**
+     * The javac arguments for the settings. This does not touch the project, so it's safe to call from a task action.
+     */
+    public static List<String> createJavacArgs(JavacSettings settings) {
         val compilerArgs = new ArrayList<String>();
 
-        addProcessor(project, compilerArgs);
-        addProcessorPath(project, compilerArgs);
-        addAnnotationProcessorOptions(project, compilerArgs);
-        registerJavacOptions(project, singletonList("-Xlint:unchecked"));
-        addOtherCompilerArgs(project, compilerArgs);
-        addBootClasspath(project, compilerArgs);
+        addProcessor(settings, compilerArgs);
+        addProcessorPath(settings, compilerArgs);
+        addAnnotationProcessorOptions(settings, compilerArgs);
+        addOtherCompilerArgs(settings, compilerArgs);
+        addBootClasspath(settings, compilerArgs);
 
         return compilerArgs;
     }
 
 
-    private static void addBootClasspath(Project project, List<String> compilerArgs) {
-        final LinkedHashSet<File> bootClasspath = getMutableBootClasspath(project);
+    private static void addBootClasspath(JavacSettings settings, List<String> compilerArgs) {
+        val bootClasspath = settings.bootClasspath;
         if (!bootClasspath.isEmpty()) {
             compilerArgs.add("-Xbootclasspath/p:" +
                 TreeSet.ofAll(bootClasspath).
@@ -134,16 +141,16 @@ public final class JavacUtils {
     }
 
 
-    private static void addProcessor(Project project, List<String> compilerArgs) {
-        val classNames = getMutableAnnotationProcessorClassNames(project);
+    private static void addProcessor(JavacSettings settings, List<String> compilerArgs) {
+        val classNames = settings.annotationProcessorClassNames;
         if (classNames.isEmpty()) return;
         compilerArgs.add("-processor");
         compilerArgs.add(TreeSet.ofAll(classNames).mkString(","));
     }
 
 
-    private static void addProcessorPath(Project project, List<String> compilerArgs) {
-        val libFiles = getMutableAnnotationProcessorLibFiles(project);
+    private static void addProcessorPath(JavacSettings settings, List<String> compilerArgs) {
+        val libFiles = settings.annotationProcessorLibFiles;
         if (libFiles.isEmpty()) return;
         compilerArgs.add("-processorpath");
         compilerArgs.add(
@@ -152,27 +159,21 @@ public final class JavacUtils {
     }
 
 
-    private static void addAnnotationProcessorOptions(Project project, List<String> compilerArgs) {
-        TreeSet.ofAll(getMutableAnnotationProcessorOptions(project)).
+    private static void addAnnotationProcessorOptions(JavacSettings settings, List<String> compilerArgs) {
+        TreeSet.ofAll(settings.annotationProcessorOptions).
             map(o -> "-A" + o.name + "=" + o.value).
             forEach(it -> compilerArgs.add(it));
     }
 
 
-    private static void addOtherCompilerArgs(Project project, List<String> compilerArgs) {
-        getMutableJavacOptions(project).forEach(it -> compilerArgs.add(it));
+    private static void addOtherCompilerArgs(JavacSettings settings, List<String> compilerArgs) {
+        settings.javacOptions.forEach(it -> compilerArgs.add(it));
     }
 
 
-    /**
-     * Register "raw" javac arguments.
-     */
-    private static void registerJavacOptions(Project project, Collection<String> options) {
-        getMutableJavacOptions(project).addAll(options);
-    }
-
+    public static class Option implements Comparable<Option>, Serializable {
+        private static final long serialVersionUID = 1L;
 
-    public static class Option implements Comparable<Option> {
         public final String name;
         public final String value;
 
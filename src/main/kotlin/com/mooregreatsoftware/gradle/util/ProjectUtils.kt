@@ -51,34 +51,28 @@ import java.util.function.Supplier
  * If the project does not apply the Java plugin, the existence of .java files is still checked in the "standard"
  * locations: src/main/java, src/main/groovy, src/main/kotlin, src/main/scala.
  */
-fun Project.hasJavaSource(useCache: Boolean = true): Boolean {
-    val key = "project.hasJavaSource"
-    val ext = this.extensions.extraProperties
+fun Project.hasJavaSource(useCache: Boolean = true): Boolean =
+    if (useCache) BuildState.projectState(this, "project.hasJavaSource") { detectJavaSource(this) }
+    else detectJavaSource(this)
 
-    if (useCache) {
-        if (ext.has(key)) {
-            return ext.get(key) as Boolean
-        }
-    }
 
+private fun detectJavaSource(project: Project): Boolean {
     try {
         val hasJavaSrc = when {
-            hasJavaPlugin(project) -> hasJavaSourceWithJavaPlugin(this.convention)
+            hasJavaPlugin(project) -> hasJavaSourceWithJavaPlugin(project.convention)
             else -> {
-                val foundJavaFile = hasJavaSourceWithoutJavaPlugin(this.projectDir)
+                val foundJavaFile = hasJavaSourceWithoutJavaPlugin(project.projectDir)
                 if (foundJavaFile) {
-                    this.logger.warn("Found Java source files in a standard source directory, " +
+                    project.logger.warn("Found Java source files in a standard source directory, " +
                         "but the Java plugin has not been applied")
                 }
                 foundJavaFile
             }
         }
-        if (useCache) ext.set(key, hasJavaSrc)
         return hasJavaSrc
     }
     catch (exp: IOException) {
-        project.logger.error("Could not verify if " + this.name + " has Java source", exp)
-        if (useCache) ext.set(key, false)
+        project.logger.error("Could not verify if " + project.name + " has Java source", exp)
         return false
     }
 }
@@ -92,6 +86,12 @@ fun Project.allJavaProjects(): Iterable<Project> =
 
 fun Project.isRootProject() = this == this.rootProject
 
+/**
+ * Does the root project have a git repository (i.e., a ".git" in its directory)? This is the same place
+ * [GrGitUtils.grgit] opens the repository from, but checking this does not need JGit to be loaded.
+ */
+fun Project.hasGitRepository(): Boolean = File(this.rootProject.projectDir, ".git").exists()
+
 @Throws(IOException::class)
 private fun hasJavaSourceWithoutJavaPlugin(projectDir: File): Boolean {
     val srcMain = projectDir.toPath().resolve("src/main")
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util;
+
+import lombok.val;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.TaskDependency;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * "Should run after" ordering rules for the tasks in a project.
+ * <p>
+ * Instead of walking all of the tasks in the project when a rule is declared (which forces every task to exist
+ * at configuration time, and misses any task that is created later), a single shared {@link TaskDependency} is
+ * attached to each task. Gradle only resolves it for the tasks that actually end up in the task graph, so that is
+ * the only time the rules are evaluated. That also means a rule can look at things like the task's group, which
+ * are usually set after the task has been created.
+ * <p>
+ * On Gradle {@value #LAZY_TASKS_VERSION} and later it's attached with "configureEach", so only the tasks Gradle
+ * actually creates (the ones in the task graph, or that something else asked for) get it, and no task is created
+ * just to attach it. It can't wait for the task graph to be ready instead: the graph has already been ordered by
+ * then.
+ */
+public final class TaskOrderingRules implements TaskDependency {
+    private static final String STATE_KEY = TaskOrderingRules.class.getName();
+
+    /**
+     * The name of the rule that makes all tasks run after "clean".
+     *
+     * @see #allTasksShouldRunAfterClean(Project)
+     */
+    public static final String SHOULD_RUN_AFTER_CLEAN_RULE = "shouldRunAfterClean";
+
+    private static final String CLEAN_TASK_NAME = "clean";
+
+    /**
+     * The version that added lazily created tasks, and "configureEach" to configure only the ones that get created.
+     */
+    static final String LAZY_TASKS_VERSION = "4.9";
+
+    private final Map<String, Rule> rules = new LinkedHashMap<>();
+
+
+    private TaskOrderingRules() {
+    }
+
+
+    /**
+     * Retrieves the rules for the project (kept in the {@link BuildState}). They are created, and attached to the
+     * project's tasks, if this is the first request.
+     */
+    public static TaskOrderingRules taskOrderingRules(Project project) {
+        return BuildState.projectState(project, STATE_KEY, () -> {
+            val orderingRules = new TaskOrderingRules();
+            Action<Task> attach = task -> task.shouldRunAfter(orderingRules);
+            if (GradleCompat.isAtLeast(LAZY_TASKS_VERSION)) {
+                InvokerHelper.invokeMethod(project.getTasks(), "configureEach", attach);
+            }
+            else {
+                project.getTasks().all(attach);
+            }
+            return orderingRules;
+        });
+    }
+
+
+    /**
+     * Makes every task in the project (other than "clean" itself) run after "clean" if they are both in the
+     * task graph.
+     */
+    public static void allTasksShouldRunAfterClean(Project project) {
+        taskOrderingRules(project).shouldRunAfter(SHOULD_RUN_AFTER_CLEAN_RULE, CLEAN_TASK_NAME, task -> true);
+    }
+
+
+    /**
+     * Declares that tasks matching the predicate should run after the named task. Registering another rule with
+     * the same name replaces the previous one.
+     *
+     * @param ruleName       the identifier for the rule
+     * @param targetTaskName the name of the task (in the same project) that the matching tasks should run after
+     * @param appliesTo      the predicate for the tasks the rule applies to; not evaluated until Gradle is
+     *                       building the task graph
+     */
+    public TaskOrderingRules shouldRunAfter(String ruleName, String targetTaskName, Predicate<Task> appliesTo) {
+        rules.put(ruleName, new Rule(targetTaskName, appliesTo));
+        return this;
+    }
+
+
+    @Override
+    public Set<? extends Task> getDependencies(@Nullable Task task) {
+        if (task == null || rules.isEmpty()) return Collections.emptySet();
+
+        val tasks = task.getProject().getTasks();
+        val runAfter = new LinkedHashSet<Task>();
+        for (Rule rule : rules.values()) {
+            if (!rule.targetTaskName.equals(task.getName()) && rule.appliesTo.test(task)) {
+                val targetTask = tasks.findByName(rule.targetTaskName);
+                if (targetTask != null) runAfter.add(targetTask);
+            }
+        }
+        return runAfter;
+    }
+
+
+    private static final class Rule {
+        final String targetTaskName;
+        final Predicate<Task> appliesTo;
+
+
+        Rule(String targetTaskName, Predicate<Task> appliesTo) {
+            this.targetTaskName = targetTaskName;
+            this.appliesTo = appliesTo;
+        }
+    }
+
+}
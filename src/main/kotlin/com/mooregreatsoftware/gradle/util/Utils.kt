@@ -60,27 +60,53 @@ fun deleteDir(path: Path) {
 }
 
 
+// "1.8.0_60", "1.8.0", "1.7.0_80-ea"
+private val LEGACY_JDK_VERSION: Pattern = Pattern.compile("1\\.(\\d+)\\.(\\d+)(?:_(\\d+))?(?:[-+].*)?$")
+
+// "9", "9.0.4", "11.0.2", "17-ea", "17.0.1+12"
+private val JDK_VERSION: Pattern = Pattern.compile("(\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?(?:\\.\\d+)*(?:[-+].*)?$")
+
+@Volatile
+private var cachedJdkVersion: Pair<String, JdkVersion>? = null
+
+
+/**
+ * The version of the JDK running the build, parsed from the "java.version" system property. Since that hardly ever
+ * changes, the result is kept until it does.
+ *
+ * For Java 8 and earlier, "1.8.0_60" is `JdkVersion(1, 8, 0, 60)`. For Java 9 and later, "11.0.2" is
+ * `JdkVersion(11, 0, 2, 0)`.
+ */
 fun jdkVersion(): JdkVersion {
     val javaVer = System.getProperty("java.version")
-    val matcher = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)_(\\d+)$").matcher(javaVer)
-    if (matcher.matches()) {
-        val major = Integer.parseInt(matcher.group(1) as String)
-        val minor = Integer.parseInt(matcher.group(2) as String)
-        val patch = Integer.parseInt(matcher.group(3) as String)
-        val update = Integer.parseInt(matcher.group(4) as String)
-
-        return JdkVersion(major, minor, patch, update)
+    val cached = cachedJdkVersion
+    if (cached != null && cached.first == javaVer) return cached.second
+
+    val jdkVersion = parseJdkVersion(javaVer)
+    cachedJdkVersion = Pair(javaVer, jdkVersion)
+    return jdkVersion
+}
+
+
+private fun parseJdkVersion(javaVer: String): JdkVersion {
+    val legacy = LEGACY_JDK_VERSION.matcher(javaVer)
+    if (legacy.matches()) {
+        return JdkVersion(1, legacy.group(1).toInt(), legacy.group(2).toInt(), legacy.group(3)?.toInt() ?: 0)
     }
-    else {
-        throw IllegalArgumentException("Could not parse \"" + javaVer + "\"")
+
+    val current = JDK_VERSION.matcher(javaVer)
+    if (current.matches()) {
+        return JdkVersion(current.group(1).toInt(), current.group(2)?.toInt() ?: 0, current.group(3)?.toInt() ?: 0, 0)
     }
+
+    throw IllegalArgumentException("Could not parse \"" + javaVer + "\"")
 }
 
 
 val isBuggyJavac: Boolean
     get() {
         val jdkVersion = jdkVersion()
-        return jdkVersion.minor == 8 && jdkVersion.update < 45
+        return jdkVersion.major == 1 && jdkVersion.minor == 8 && jdkVersion.update < 45
     }
 
 
@@ -16,11 +16,15 @@
 package com.mooregreatsoftware.gradle;
 
 import org.gradle.api.Project;
+import org.gradle.api.execution.TaskExecutionGraphListener;
 import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.internal.event.ListenerBroadcast;
 import org.gradle.api.logging.LogLevel;
 import org.slf4j.ILoggerFactory;
 import org.slf4j.impl.StaticLoggerBinder;
 
+import java.lang.reflect.Field;
+
 import static com.mooregreatsoftware.gradle.util.LangUtils.tryRun;
 
 public class Projects {
@@ -35,6 +39,35 @@ public class Projects {
     }
 
 
+    /**
+     * Tells the listeners of the project's task graph that it's ready, as a build would before running any tasks.
+     *
+     * @return the given project
+     */
+    @SuppressWarnings("unchecked")
+    public static Project taskGraphReady(Project project) {
+        final Object taskGraph = project.getGradle().getTaskGraph();
+        tryRun(() -> {
+            Class<?> type = taskGraph.getClass();
+            while (type.getSuperclass() != null && !hasField(type, "graphListeners")) type = type.getSuperclass();
+            final Field field = type.getDeclaredField("graphListeners");
+            field.setAccessible(true);
+            final ListenerBroadcast<TaskExecutionGraphListener> listeners =
+                (ListenerBroadcast<TaskExecutionGraphListener>)field.get(taskGraph);
+            listeners.getSource().graphPopulated(project.getGradle().getTaskGraph());
+        });
+        return project;
+    }
+
+
+    private static boolean hasField(Class<?> type, String name) {
+        for (Field field : type.getDeclaredFields()) {
+            if (field.getName().equals(name)) return true;
+        }
+        return false;
+    }
+
+
     /**
      * Change the LogLevel used by the static instance of LoggerFactory.
      * <p>
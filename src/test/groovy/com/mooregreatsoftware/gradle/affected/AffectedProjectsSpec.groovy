@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.affected
+
+import nebula.test.ProjectSpec
+import org.eclipse.jgit.api.Git
+import org.gradle.api.Project
+import org.gradle.api.plugins.JavaPlugin
+
+class AffectedProjectsSpec extends ProjectSpec {
+    Project core
+    Project service
+    Project app
+    Project other
+
+
+    def setup() {
+        core = addSubproject("core")
+        service = addSubproject("service")
+        app = addSubproject("app")
+        other = addSubproject("other")
+        [core, service, app, other].each { it.plugins.apply(JavaPlugin) }
+        service.dependencies.add("compile", service.dependencies.project(path: ":core"))
+        app.dependencies.add("testCompile", app.dependencies.project(path: ":service"))
+    }
+
+
+    def "a change reaches everything that depends on it, directly or not"() {
+        expect:
+        AffectedProjects.withDependents([core] as Set) == [core, service, app] as Set
+        AffectedProjects.withDependents([service] as Set) == [service, app] as Set
+        AffectedProjects.withDependents([other] as Set) == [other] as Set
+    }
+
+
+    def "files belong to the project whose source or directory they are in"() {
+        other.sourceSets.main.java.srcDir(new File(projectDir, "shared/src"))
+
+        expect:
+        AffectedProjects.owners(project, [new File(core.projectDir, "src/main/java/Core.java")]) == [core] as Set
+        AffectedProjects.owners(project, [new File(app.projectDir, "build.gradle")]) == [app] as Set
+        AffectedProjects.owners(project, [new File(projectDir, "shared/src/Shared.java")]) == [other] as Set
+        AffectedProjects.owners(project, [new File(projectDir, "README.md")]) == [project] as Set
+    }
+
+
+    def "a change to the build affects every project"() {
+        expect:
+        AffectedProjects.isBuildFile(project, new File(projectDir, "build.gradle"))
+        AffectedProjects.isBuildFile(project, new File(projectDir, "gradle.properties"))
+        AffectedProjects.isBuildFile(project, new File(projectDir, "gradle/wrapper/gradle-wrapper.properties"))
+        AffectedProjects.isBuildFile(project, new File(projectDir, "buildSrc/src/main/groovy/Plugin.groovy"))
+        !AffectedProjects.isBuildFile(project, new File(core.projectDir, "build.gradle"))
+        AffectedProjects.owners(project, [new File(projectDir, "settings.gradle")]) == project.allprojects
+    }
+
+
+    def "changes are the commits since branching from the base plus what isn't committed"() {
+        def repoDir = new File(projectDir, "repo")
+        def git = Git.init().setDirectory(repoDir).call()
+        write(repoDir, ".gitignore", "build/\n")
+        write(repoDir, "base.txt", "base")
+        write(repoDir, "later-on-base.txt", "base")
+        git.add().addFilepattern(".").call()
+        git.commit().setMessage("base").call()
+        git.branchCreate().setName("base").call()
+
+        write(repoDir, "committed.txt", "feature")
+        git.add().addFilepattern(".").call()
+        git.commit().setMessage("feature").call()
+
+        git.checkout().setName("base").call()
+        write(repoDir, "later-on-base.txt", "moved on")
+        git.commit().setAll(true).setMessage("base moves on").call()
+        git.checkout().setName("master").call()
+
+        write(repoDir, "base.txt", "modified")
+        write(repoDir, "untracked.txt", "new")
+        write(repoDir, "build/output.txt", "ignored")
+
+        expect:
+        GitChanges.changedPaths(git, "base") == ["committed.txt", "base.txt", "untracked.txt"] as Set
+
+        cleanup:
+        git?.close()
+    }
+
+
+    static void write(File dir, String path, String text) {
+        def file = new File(dir, path)
+        file.parentFile.mkdirs()
+        file.text = text
+    }
+
+}
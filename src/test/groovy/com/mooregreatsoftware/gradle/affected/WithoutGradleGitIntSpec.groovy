@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.affected
+
+import com.google.common.base.Predicate
+import com.mooregreatsoftware.gradle.defaults.AbstractIntSpec
+import com.mooregreatsoftware.gradle.defaults.DefaultsPlugin
+import nebula.test.functional.GradleRunner
+
+/**
+ * gradle-git (and the JGit it brings) is optional, so the features that look at the changes have to work, by
+ * treating everything as changed, without it on the buildscript classpath.
+ */
+class WithoutGradleGitIntSpec extends AbstractIntSpec {
+
+    def setup() {
+        classpathFilter = { URL url ->
+            GradleRunner.CLASSPATH_DEFAULT.apply(url) && !url.path.contains("gradle-git") &&
+                !url.path.contains("org.eclipse.jgit")
+        } as Predicate<URL>
+
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults')
+
+        buildFile << """
+            apply plugin: 'java'
+            apply plugin: '${DefaultsPlugin.PLUGIN_ID}'
+
+            group = "com.mooregreatsoftware.gradle.defaults"
+
+            defaults {
+                orgId = "tester"
+                test.impactAnalysis = true
+            }
+        """.stripIndent()
+    }
+
+
+    def "buildAffected builds every project"() {
+        when:
+        def result = runTasks(BuildAffectedTask.TASK_NAME)
+
+        then:
+        result.success
+        result.standardOutput.contains("all the projects are affected")
+        result.wasExecuted(":compileJava")
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+
+    def "impact analysis runs all of the tests"() {
+        when:
+        def result = runTasks('test')
+
+        then:
+        result.success
+        !result.standardError.contains("NoClassDefFoundError")
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.analysis
+
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class DependencyAnalysisSpec extends Specification {
+
+    def "declared dependencies without any used classes are unused"() {
+        when:
+        def analysis = DependencyAnalysis.analyze(["a.Used"] as Set,
+            ["g:a": ["a.Used", "a.Other"] as Set, "g:b": ["b.Unused"] as Set, "g:resources": [] as Set],
+            ["g:a", "g:b", "g:resources"], [:])
+
+        then:
+        analysis.unused() == ["g:b"] as SortedSet
+        analysis.undeclared().isEmpty()
+        analysis.hasProblems()
+    }
+
+
+    def "only the checked dependencies can be unused"() {
+        when:
+        def analysis = DependencyAnalysis.analyze([] as Set,
+            ["g:a": ["a.Used"] as Set, "org.projectlombok:lombok": ["lombok.Data"] as Set], ["g:a"], [:])
+
+        then:
+        analysis.unused() == ["g:a"] as SortedSet
+    }
+
+
+    def "transitive dependencies used directly are undeclared"() {
+        when:
+        def analysis = DependencyAnalysis.analyze(["a.Used", "t.Used", "t.AlsoInA"] as Set,
+            ["g:a": ["a.Used", "t.AlsoInA"] as Set], ["g:a"],
+            ["g:t": ["t.Used", "t.AlsoInA", "t.NotUsed"] as Set, "g:u": ["u.NotUsed"] as Set])
+
+        then:
+        analysis.unused().isEmpty()
+        analysis.undeclared() == ["g:t": ["t.Used"] as SortedSet]
+    }
+
+
+    def "nothing to report"() {
+        when:
+        def analysis = DependencyAnalysis.analyze(["a.Used"] as Set, ["g:a": ["a.Used"] as Set], ["g:a"],
+            ["g:t": ["t.NotUsed"] as Set])
+
+        then:
+        !analysis.hasProblems()
+        DependencyAnalysisTask.report(analysis) == "No unused or undeclared dependencies\n"
+    }
+
+
+    def "the classes in a JAR"() {
+        def jar = File.createTempFile("classes", ".jar")
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { zip ->
+            ["com/example/A.class", 'com/example/A$Inner.class', "com/example/a.properties",
+             "META-INF/versions/9/com/example/A.class", "module-info.class"].each {
+                zip.putNextEntry(new ZipEntry(it))
+                zip.closeEntry()
+            }
+        }
+
+        expect:
+        DependencyAnalysis.readClassesIn(jar) == ["com.example.A", 'com.example.A$Inner'] as Set
+
+        cleanup:
+        jar?.delete()
+    }
+
+
+    def "the classes in a directory"() {
+        def dir = File.createTempDir()
+        new File(dir, "com/example").mkdirs()
+        new File(dir, "com/example/B.class").text = ""
+        new File(dir, "com/example/b.txt").text = ""
+
+        expect:
+        DependencyAnalysis.readClassesIn(dir) == ["com.example.B"] as Set
+
+        cleanup:
+        dir?.deleteDir()
+    }
+
+}
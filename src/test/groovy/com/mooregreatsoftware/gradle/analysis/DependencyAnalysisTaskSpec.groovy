@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.analysis
+
+import nebula.test.ProjectSpec
+import org.gradle.api.plugins.JavaPlugin
+
+class DependencyAnalysisTaskSpec extends ProjectSpec {
+
+    def "each source set gets a task, which is not part of check by default"() {
+        project.plugins.apply(JavaPlugin)
+
+        when:
+        DependencyAnalysisTask.register(project)
+
+        then:
+        project.tasks.getByName("analyzeDependencies") instanceof DependencyAnalysisTask
+        project.tasks.getByName("analyzeTestDependencies") instanceof DependencyAnalysisTask
+        !project.tasks.getByName("check").dependsOn.contains(project.tasks.getByName("analyzeDependencies"))
+    }
+
+
+    def "the tasks are part of check when asked for"() {
+        project.extensions.extraProperties.set(DependencyAnalysisTask.CHECK_PROPERTY, "true")
+        project.plugins.apply(JavaPlugin)
+
+        when:
+        DependencyAnalysisTask.register(project)
+
+        then:
+        project.tasks.getByName("check").dependsOn.containsAll([
+            project.tasks.getByName("analyzeDependencies"), project.tasks.getByName("analyzeTestDependencies")])
+    }
+
+
+    def "a task that's already there is left alone"() {
+        project.plugins.apply(JavaPlugin)
+        def existing = project.tasks.create("analyzeDependencies")
+
+        when:
+        DependencyAnalysisTask.register(project)
+
+        then:
+        project.tasks.getByName("analyzeDependencies").is(existing)
+    }
+
+
+    def "only the dependencies declared directly for the source set are checked"() {
+        project.plugins.apply(JavaPlugin)
+        project.dependencies.add("compile", "g:compiled:1")
+        project.dependencies.add("compileOnly", "org.projectlombok:lombok:1.16.16")
+        project.dependencies.add("testCompile", "g:tested:1")
+
+        when:
+        DependencyAnalysisTask.register(project)
+
+        then:
+        (project.tasks.getByName("analyzeDependencies") as DependencyAnalysisTask).checkedModules() ==
+            ["g:compiled"] as Set
+        (project.tasks.getByName("analyzeTestDependencies") as DependencyAnalysisTask).checkedModules() ==
+            ["g:tested"] as Set
+    }
+
+}
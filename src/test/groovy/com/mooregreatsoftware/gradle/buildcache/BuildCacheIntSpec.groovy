@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache
+
+import com.mooregreatsoftware.gradle.defaults.AbstractIntSpec
+import com.mooregreatsoftware.gradle.settings.DefaultsSettingsPlugin
+
+class BuildCacheIntSpec extends AbstractIntSpec {
+
+    def "outputs are pushed to, and then pulled from, the remote cache"() {
+        gradleVersion = "4.0"
+        def server = new StubBuildCacheServer("tester", "s3cret")
+        server.start()
+
+        def pluginClasses = new File(DefaultsSettingsPlugin.protectionDomain.codeSource.location.toURI())
+        settingsFile << """
+            buildscript {
+                dependencies {
+                    classpath files('${pluginClasses.absolutePath}')
+                }
+            }
+
+            apply plugin: ${DefaultsSettingsPlugin.name}
+
+            defaults {
+                buildCache {
+                    localEnabled = false
+                    remoteUrl = '${server.url()}'
+                    push = true
+                }
+            }
+        """.stripIndent()
+
+        file("gradle.properties") << """
+            ${BuildCacheExtension.USER_PROPERTY}=tester
+            ${BuildCacheExtension.KEY_PROPERTY}=s3cret
+        """.stripIndent()
+
+        buildFile << """
+            apply plugin: 'java'
+        """.stripIndent()
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.buildcache')
+
+        when:
+        def result = runTasks('compileJava', '--build-cache')
+
+        then:
+        result.success
+        result.wasExecuted(':compileJava')
+        server.putCount.get() > 0
+
+        when:
+        result = runTasks('clean', 'compileJava', '--build-cache')
+        def report = file("build/${BuildCacheReport.REPORT_DIR}/build-cache.txt").text
+
+        then:
+        result.success
+        result.standardOutput.contains(":compileJava FROM-CACHE")
+        server.hitCount.get() > 0
+        report.readLines().find { it.contains("JavaCompile") }.trim().startsWith("100%")
+
+        cleanup:
+        server.stop()
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+
+    def "the embedded cache node works as a remote cache"() {
+        gradleVersion = "4.0"
+        def server = new CacheServer(new LruCacheStore(new File(projectDir, "cache-node").toPath(), 10_000_000),
+            new InetSocketAddress("localhost", 0), 2, "builder", "s3cret")
+        server.start()
+
+        def pluginClasses = new File(DefaultsSettingsPlugin.protectionDomain.codeSource.location.toURI())
+        settingsFile << """
+            buildscript {
+                dependencies {
+                    classpath files('${pluginClasses.absolutePath}')
+                }
+            }
+
+            apply plugin: ${DefaultsSettingsPlugin.name}
+
+            defaults {
+                buildCache {
+                    localEnabled = false
+                    remoteUrl = '${server.url()}'
+                    push = true
+                    username = 'builder'
+                    password = 's3cret'
+                }
+            }
+        """.stripIndent()
+
+        buildFile << """
+            apply plugin: 'java'
+        """.stripIndent()
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.buildcache')
+
+        when:
+        def result = runTasks('compileJava', '--build-cache')
+
+        then:
+        result.success
+        server.metrics().puts > 0
+
+        when:
+        result = runTasks('clean', 'compileJava', '--build-cache')
+
+        then:
+        result.success
+        result.standardOutput.contains(":compileJava FROM-CACHE")
+        server.metrics().hits > 0
+
+        cleanup:
+        server.close()
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+}
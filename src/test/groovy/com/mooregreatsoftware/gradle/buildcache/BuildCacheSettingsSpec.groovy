@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class BuildCacheSettingsSpec extends Specification {
+
+    def buildCache = new StubBuildCacheConfiguration()
+    def extension = new BuildCacheExtension()
+
+
+    def "without a remote URL only the local cache is configured"() {
+        extension.localDirectory = "/tmp/cache"
+
+        when:
+        configure([:], [:])
+
+        then:
+        buildCache.local.enabled
+        buildCache.local.directory == "/tmp/cache"
+        buildCache.remote == null
+    }
+
+
+    @Unroll
+    def "push is #expected when set to #push with environment #environment"() {
+        extension.remoteUrl = "https://cache.example.com/cache/"
+        extension.push = push
+
+        when:
+        configure([:], environment)
+
+        then:
+        buildCache.remote.url == "https://cache.example.com/cache/"
+        buildCache.remote.push == expected
+
+        where:
+        push  | environment                     | expected
+        null  | [:]                             | false
+        null  | [CI: "true"]                    | true
+        null  | [CI: "false"]                   | false
+        null  | [JENKINS_URL: "http://jenkins"] | true
+        false | [CI: "true"]                    | false
+        true  | [:]                             | true
+    }
+
+
+    def "credentials come from the properties unless set"() {
+        extension.remoteUrl = "https://cache.example.com/cache/"
+
+        when:
+        configure([(BuildCacheExtension.USER_PROPERTY): "user", (BuildCacheExtension.KEY_PROPERTY): "key"], [:])
+
+        then:
+        buildCache.remote.credentials.username == "user"
+        buildCache.remote.credentials.password == "key"
+
+        when:
+        buildCache = new StubBuildCacheConfiguration()
+        extension.username = "other"
+        extension.password = "secret"
+        configure([(BuildCacheExtension.USER_PROPERTY): "user", (BuildCacheExtension.KEY_PROPERTY): "key"], [:])
+
+        then:
+        buildCache.remote.credentials.username == "other"
+        buildCache.remote.credentials.password == "secret"
+    }
+
+
+    def "no credentials unless both are set"() {
+        extension.remoteUrl = "https://cache.example.com/cache/"
+
+        when:
+        configure([(BuildCacheExtension.USER_PROPERTY): "user"], [:])
+
+        then:
+        buildCache.remote.credentials.username == null
+    }
+
+
+    def "the password is not in the extension's string"() {
+        extension.username = "user"
+        extension.password = "secret"
+
+        expect:
+        extension.toString().contains("user")
+        !extension.toString().contains("secret")
+    }
+
+
+    def "hit rates are reported by task type"() {
+        def report = new BuildCacheReport()
+
+        when:
+        report.record("JavaCompile", BuildCacheReport.FROM_CACHE, false)
+        report.record("JavaCompile", null, true)
+        report.record("JavaCompile", null, true)
+        report.record("Jar", BuildCacheReport.UP_TO_DATE, false)
+        def lines = report.report().readLines()
+
+        then:
+        lines.find { it.endsWith("JavaCompile") }.trim().split(/\s+/) == ["33%", "1", "2", "0", "JavaCompile"]
+        lines.find { it.endsWith("Jar") }.trim().split(/\s+/) == ["-", "0", "0", "1", "Jar"]
+        lines.last().trim().split(/\s+/) == ["33%", "1", "2", "1", "(all)"]
+    }
+
+
+    void configure(Map<String, Object> properties, Map<String, String> environment) {
+        BuildCacheSettings.configure(buildCache, extension, { properties[it] }, environment, StubHttpBuildCache)
+    }
+
+
+    static class StubBuildCacheConfiguration {
+        StubLocalBuildCache local = new StubLocalBuildCache()
+        StubHttpBuildCache remote
+
+
+        StubHttpBuildCache remote(Class type) {
+            remote = type.newInstance() as StubHttpBuildCache
+        }
+    }
+
+
+    static class StubLocalBuildCache {
+        boolean enabled = false
+        Object directory
+    }
+
+
+    static class StubHttpBuildCache {
+        Object url
+        boolean push
+        StubCredentials credentials = new StubCredentials()
+    }
+
+
+    static class StubCredentials {
+        String username
+        String password
+    }
+
+}
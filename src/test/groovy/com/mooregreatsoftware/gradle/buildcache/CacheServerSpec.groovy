@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class CacheServerSpec extends Specification {
+
+    Path dir = Files.createTempDirectory("cache-server")
+
+
+    def cleanup() {
+        dir.toFile().deleteDir()
+    }
+
+
+    def "the least recently used entries are removed past the byte cap"() {
+        def store = new LruCacheStore(dir, 30)
+
+        when:
+        put(store, "aaaaaaaa01", 10)
+        put(store, "aaaaaaaa02", 10)
+        put(store, "aaaaaaaa03", 10)
+        store.get("aaaaaaaa01")
+        put(store, "aaaaaaaa04", 10)
+
+        then:
+        store.get("aaaaaaaa02") == null
+        store.get("aaaaaaaa01") != null
+        store.get("aaaaaaaa03") != null
+        store.get("aaaaaaaa04") != null
+        store.totalBytes() == 30
+        !Files.exists(dir.resolve("aa/aaaaaaaa02"))
+    }
+
+
+    def "entries bigger than the cap are not stored"() {
+        def store = new LruCacheStore(dir, 5)
+
+        expect:
+        !put(store, "aaaaaaaa01", 10)
+        store.entryCount() == 0
+    }
+
+
+    def "the index is rebuilt from disk"() {
+        def store = new LruCacheStore(dir, 100)
+        put(store, "aaaaaaaa01", 10)
+        put(store, "bbbbbbbb02", 20)
+
+        when:
+        def reloaded = new LruCacheStore(dir, 100)
+
+        then:
+        reloaded.entryCount() == 2
+        reloaded.totalBytes() == 30
+        reloaded.get("bbbbbbbb02") != null
+    }
+
+
+    def "speaks the HTTP build cache protocol"() {
+        def server = new CacheServer(new LruCacheStore(dir, 1000), new InetSocketAddress("localhost", 0), 2, "builder", "s3cret")
+        server.start()
+        def entry = new URL(server.url() + "0123456789abcdef")
+
+        expect:
+        status(entry, "GET", "builder:s3cret") == 404
+
+        when:
+        def connection = entry.openConnection() as HttpURLConnection
+        connection.requestMethod = "PUT"
+        connection.setRequestProperty("Authorization", basic("builder:s3cret"))
+        connection.doOutput = true
+        connection.outputStream.withStream { it << "cached output" }
+
+        then:
+        connection.responseCode == 201
+        status(entry, "GET", "builder:s3cret") == 200
+        status(new URL(server.url() + "../etc/passwd"), "GET", "builder:s3cret") == 400
+
+        and:
+        server.metrics().hits == 1
+        server.metrics().misses == 1
+        server.metrics().puts == 1
+        server.metrics().bytesIn == "cached output".length()
+        new URL(server.url().replace(CacheServer.CACHE_PATH, CacheServer.METRICS_PATH)).text.contains("hits 1")
+
+        cleanup:
+        server?.close()
+    }
+
+
+    def "with credentials, every request to the cache needs them"() {
+        def server = new CacheServer(new LruCacheStore(dir, 1000), new InetSocketAddress("localhost", 0), 2, "builder", "s3cret")
+        server.start()
+        def entry = new URL(server.url() + "0123456789abcdef")
+
+        expect:
+        status(entry, "GET", null) == 401
+        status(entry, "PUT", null) == 401
+        status(entry, "PUT", "builder:wrong") == 401
+        server.metrics().puts == 0
+
+        cleanup:
+        server?.close()
+    }
+
+
+    def "without credentials, nothing can be stored"() {
+        def server = new CacheServer(new LruCacheStore(dir, 1000), new InetSocketAddress("localhost", 0), 2, null, null)
+        server.start()
+
+        expect:
+        status(new URL(server.url() + "0123456789abcdef"), "PUT", null) == 403
+        server.metrics().puts == 0
+
+        cleanup:
+        server?.close()
+    }
+
+
+    def "without credentials, it only listens on a loopback address"() {
+        when:
+        new CacheServer(new LruCacheStore(dir, 1000), new InetSocketAddress("0.0.0.0", 0), 2, null, null)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+
+    static boolean put(LruCacheStore store, String key, int size) {
+        store.put(key, new ByteArrayInputStream(new byte[size]))
+    }
+
+
+    static int status(URL url, String method, String credentials) {
+        def connection = url.openConnection() as HttpURLConnection
+        connection.requestMethod = method
+        if (credentials != null) connection.setRequestProperty("Authorization", basic(credentials))
+        if (method == "PUT") {
+            connection.doOutput = true
+            connection.outputStream.withStream { it << "cached output" }
+        }
+        connection.responseCode
+    }
+
+
+    static String basic(String credentials) {
+        "Basic " + credentials.bytes.encodeBase64()
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.buildcache;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static fi.iki.elonen.NanoHTTPD.Response.Status.CREATED;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NOT_FOUND;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.OK;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.UNAUTHORIZED;
+
+/**
+ * A stand-in for an HTTP build cache: entries are kept in memory, and requests are counted.
+ */
+public class StubBuildCacheServer extends NanoHTTPD {
+    public final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    public final AtomicInteger getCount = new AtomicInteger();
+    public final AtomicInteger hitCount = new AtomicInteger();
+    public final AtomicInteger putCount = new AtomicInteger();
+
+    private final @Nullable String expectedAuthorization;
+
+
+    public StubBuildCacheServer(@Nullable String username, @Nullable String password) {
+        super(0);
+        this.expectedAuthorization = (username == null || password == null) ? null :
+            "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    public String url() {
+        return "http://localhost:" + getListeningPort() + "/cache/";
+    }
+
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        if (expectedAuthorization != null && !expectedAuthorization.equals(session.getHeaders().get("authorization"))) {
+            return newFixedLengthResponse(UNAUTHORIZED, MIME_PLAINTEXT, "");
+        }
+
+        String key = session.getUri();
+        if (session.getMethod() == Method.GET) {
+            getCount.incrementAndGet();
+            byte[] entry = entries.get(key);
+            if (entry == null) return newFixedLengthResponse(NOT_FOUND, MIME_PLAINTEXT, "");
+            hitCount.incrementAndGet();
+            return newFixedLengthResponse(OK, "application/octet-stream", new ByteArrayInputStream(entry), entry.length);
+        }
+        else if (session.getMethod() == Method.PUT) {
+            putCount.incrementAndGet();
+            try {
+                entries.put(key, readBody(session));
+            }
+            catch (IOException e) {
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, e.toString());
+            }
+            return newFixedLengthResponse(CREATED, MIME_PLAINTEXT, "");
+        }
+        return newFixedLengthResponse(Response.Status.METHOD_NOT_ALLOWED, MIME_PLAINTEXT, "");
+    }
+
+
+    private static byte[] readBody(IHTTPSession session) throws IOException {
+        InputStream in = session.getInputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equalsIgnoreCase(session.getHeaders().get("transfer-encoding"))) {
+            int chunkLength;
+            while ((chunkLength = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+                copy(in, body, chunkLength);
+                readLine(in);
+            }
+            readLine(in);
+        }
+        else {
+            copy(in, body, Integer.parseInt(session.getHeaders().getOrDefault("content-length", "0")));
+        }
+        return body.toByteArray();
+    }
+
+
+    private static void copy(InputStream in, ByteArrayOutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[8192];
+        int remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (read < 0) throw new IOException("Request body ended early");
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c != '\r') line.append((char)c);
+        }
+        return line.toString();
+    }
+
+}
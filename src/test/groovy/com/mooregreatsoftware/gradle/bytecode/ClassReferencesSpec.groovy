@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.bytecode
+
+import spock.lang.Specification
+
+class ClassReferencesSpec extends Specification {
+
+    def "the references come from the constant pool"() {
+        when:
+        def refs = ClassReferences.read(ClassReferences.getResourceAsStream("ClassReferences.class"))
+
+        then:
+        refs.className() == ClassReferences.name
+        refs.references().containsAll(["java.io.DataInputStream", "java.util.TreeSet", "java.util.regex.Pattern",
+                                       "java.io.IOException"])
+        !refs.references().contains(ClassReferences.name)
+    }
+
+
+    def "classes only in descriptors and signatures are found"() {
+        when:
+        def refs = ClassReferences.read(Sample.getResourceAsStream('ClassReferencesSpec$Sample.class'))
+
+        then:
+        refs.className() == Sample.name
+        refs.references().containsAll(["java.util.concurrent.Callable", "java.util.Map", "java.net.URI",
+                                       "java.time.Duration"])
+    }
+
+
+    def "something that isn't a class file is rejected"() {
+        when:
+        ClassReferences.read(new ByteArrayInputStream("not a class".bytes))
+
+        then:
+        thrown(IOException)
+    }
+
+
+    @SuppressWarnings("GroovyUnusedDeclaration")
+    static abstract class Sample {
+        abstract java.util.Map<String, java.net.URI> lookup(java.util.concurrent.Callable<java.time.Duration> callable)
+    }
+
+}
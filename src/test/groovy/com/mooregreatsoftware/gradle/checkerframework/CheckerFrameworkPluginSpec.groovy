@@ -15,12 +15,15 @@
  */
 package com.mooregreatsoftware.gradle.checkerframework
 
+import com.mooregreatsoftware.gradle.defaults.BuildProfile
 import com.mooregreatsoftware.gradle.util.JavacUtils
 import com.mooregreatsoftware.gradle.java.ExtJavaPlugin
 import com.mooregreatsoftware.gradle.lang.AbstractAnnotationProcessorPluginSpec
 import com.mooregreatsoftware.gradle.lombok.LombokPlugin
 import groovy.transform.CompileStatic
+import org.gradle.api.tasks.compile.JavaCompile
 
+import static com.mooregreatsoftware.gradle.Projects.evaluate
 import static com.mooregreatsoftware.gradle.checkerframework.CheckerFrameworkPlugin.CHECKERFRAMEWORK_NULLNESS_CHECKER
 import static com.mooregreatsoftware.gradle.lombok.LombokExtension.DEFAULT_LOMBOK_VERSION
 import static com.mooregreatsoftware.gradle.lombok.LombokPlugin.LOMBOK_LAUNCH_ANNOTATION_PROCESSOR
@@ -76,6 +79,33 @@ class CheckerFrameworkPluginSpec extends AbstractAnnotationProcessorPluginSpec {
     }
 
 
+    def "the dev build profile runs the checker in its own task"() {
+        project.ext.set(BuildProfile.PROFILE_PROPERTY, "dev")
+        createPlugin()
+        project.plugins.apply(ExtJavaPlugin.PLUGIN_ID)
+
+        when:
+        evaluate project
+        configureTasks()
+
+        then:
+        !(project.tasks.getByName("compileJava") as JavaCompile).options.compilerArgs.join(" ").
+            contains(CHECKERFRAMEWORK_NULLNESS_CHECKER)
+
+        when:
+        def checkTask = project.tasks.getByName(NullnessCheckTask.TASK_NAME) as NullnessCheckTask
+        checkTask.actions.
+            collect { unwrap(it) }.
+            findAll { it.class.simpleName == "ConfigCompilerAction" }.
+            each { it.execute(checkTask) }
+        def args = checkTask.options.compilerArgs
+
+        then:
+        args[args.indexOf("-processor") + 1].split(",").contains(CHECKERFRAMEWORK_NULLNESS_CHECKER)
+        args.contains("-Awarns=true")
+    }
+
+
     static class CheckerFrameworkPluginWithLombokSpec extends CheckerFrameworkPluginSpec {
 
         @Override
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.defaults
+
+import nebula.test.ProjectSpec
+import org.gradle.api.GradleException
+
+import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension
+
+class BuildProfileSpec extends ProjectSpec {
+
+    def "the default is ci"() {
+        expect:
+        BuildProfile.buildProfile(project) == BuildProfile.CI
+    }
+
+
+    def "set in the extension"() {
+        defaultsExtension(project).profile = "dev"
+
+        expect:
+        BuildProfile.buildProfile(project) == BuildProfile.DEV
+    }
+
+
+    def "the project property takes precedence"() {
+        defaultsExtension(project).profile = "dev"
+        project.ext.set(BuildProfile.PROFILE_PROPERTY, "CI")
+
+        expect:
+        BuildProfile.buildProfile(project) == BuildProfile.CI
+    }
+
+
+    def "subprojects inherit the profile"() {
+        defaultsExtension(project).profile = "dev"
+        def subproject = addSubproject("sub")
+
+        expect:
+        BuildProfile.buildProfile(subproject) == BuildProfile.DEV
+    }
+
+
+    def "an unknown profile is rejected"() {
+        when:
+        defaultsExtension(project).profile = "fast"
+
+        then:
+        def e = thrown(GradleException)
+        e.message.contains("dev, ci")
+    }
+
+}
@@ -17,9 +17,12 @@ package com.mooregreatsoftware.gradle.defaults
 
 import com.mooregreatsoftware.gradle.Projects
 import com.mooregreatsoftware.gradle.groovy.ExtGroovyPlugin
+import com.mooregreatsoftware.gradle.ide.ExtIntellijPlugin
 import com.mooregreatsoftware.gradle.java.ExtJavaPlugin
 import com.mooregreatsoftware.gradle.kotlin.ExtKotlinPlugin
+import com.mooregreatsoftware.gradle.lombok.LombokPlugin
 import nebula.test.PluginProjectSpec
+import org.gradle.api.tasks.compile.AbstractCompile
 
 @SuppressWarnings("GroovyPointlessBoolean")
 class DefaultPluginSpec extends PluginProjectSpec {
@@ -98,4 +101,108 @@ class DefaultPluginSpec extends PluginProjectSpec {
         jarTask.manifest.attributes.get("Built-By") == "unknown@unknown"
     }
 
+
+
+    def "applied to a subproject only configures that subproject"() {
+        def subProj = addSubproject("subproj")
+        def otherProj = addSubproject("other")
+
+        when:
+        subProj.plugins.apply(DefaultsPlugin)
+
+        then:
+        DefaultsPlugin.isPerProjectMode(subProj)
+        subProj.plugins.hasPlugin(ExtIntellijPlugin)
+        !project.plugins.hasPlugin(ExtIntellijPlugin)
+        !otherProj.plugins.hasPlugin(ExtIntellijPlugin)
+    }
+
+
+    def "applied to the root project configures all projects"() {
+        def subProj = addSubproject("subproj")
+
+        when:
+        project.plugins.apply(DefaultsPlugin)
+
+        then:
+        !DefaultsPlugin.isPerProjectMode(subProj)
+        project.plugins.hasPlugin(ExtIntellijPlugin)
+        subProj.plugins.hasPlugin(ExtIntellijPlugin)
+    }
+
+
+    def "per-project mode on the root project only configures the root up front"() {
+        def subProj = addSubproject("subproj")
+        project.ext.set(DefaultsPlugin.PER_PROJECT_PROPERTY, "true")
+
+        when:
+        project.plugins.apply(DefaultsPlugin)
+
+        then:
+        DefaultsPlugin.isPerProjectMode(project)
+        project.plugins.hasPlugin(ExtIntellijPlugin)
+        !subProj.plugins.hasPlugin(ExtIntellijPlugin)
+    }
+
+
+    def "applying twice is harmless"() {
+        when:
+        project.plugins.apply(DefaultsPlugin)
+        project.plugins.apply(DefaultsPlugin)
+        def subProj = addSubproject("subproj")
+        subProj.plugins.apply(DefaultsPlugin)
+
+        then:
+        project.repositories.size() == 1
+        subProj.repositories.size() == 1
+    }
+
+
+    def "compile compatibility is known before the task runs"() {
+        project.plugins.apply("java")
+        project.plugins.apply(DefaultsPlugin)
+        DefaultsExtensionKt.defaultsExtension(project).compatibilityVersion = "1.7"
+        def compileJava = project.tasks.getByName("compileJava") as AbstractCompile
+
+        when:
+        Projects.evaluate(project)
+
+        then:
+        compileJava.sourceCompatibility == "1.7"
+        compileJava.targetCompatibility == "1.7"
+
+        when:
+        compileJava.sourceCompatibility = "1.6"
+
+        then:
+        compileJava.sourceCompatibility == "1.6"
+    }
+
+
+    def "annotation processors are detected in the source directories the build script sets"() {
+        project.plugins.apply("java")
+        project.plugins.apply(DefaultsPlugin.PLUGIN_ID)
+        project.group = "com.mooregreatsoftware.gradle.defaults"
+        def sourceDir = new File(projectDir, "src")
+        sourceDir.mkdirs()
+        new File(sourceDir, "UsesLombok.java").text = "import lombok.val; class UsesLombok {}"
+        project.sourceSets.main.java.srcDirs = [sourceDir]
+
+        when:
+        Projects.evaluate(project)
+
+        then:
+        project.plugins.hasPlugin(LombokPlugin.PLUGIN_ID)
+    }
+
+
+    def "git is not opened when there is no repository"() {
+        when:
+        project.plugins.apply(DefaultsPlugin)
+
+        then:
+        !project.ext.has("org.ajoberstar.grgit.Grgit")
+        !project.plugins.hasPlugin("com.mooregreatsoftware.release")
+    }
+
 }
@@ -343,6 +343,49 @@ class DefaultsPluginIntSpec extends AbstractIntSpec {
     }
 
 
+    def "github pages pick up the docs of the subprojects in per-project mode"() {
+        logLevel = LogLevel.INFO
+        file('gradle.properties') << "defaults.perProject=true\n"
+
+        buildFile << """
+            group = 'com.mooregreatsoftware.gradle.defaults.test'
+            description = 'Nice Gradle defaults'
+
+            apply plugin: "${DefaultsPlugin.PLUGIN_ID}"
+
+            defaults {
+                orgId = "tester"
+                bintrayRepo = "java-test"
+                compatibilityVersion = 1.8
+                orgName = "testing org"
+                vcsReadUrl = "${git.repository.config.getString("remote", "origin", "url")}"
+            }
+        """.stripIndent()
+
+        def subDir = addSubproject("submod")
+        createFile("build.gradle", subDir) << """
+            apply plugin: 'java'
+        """.stripIndent()
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults.submod', subDir)
+
+        git.add().addFilepattern(".").call()
+        git.commit().setMessage("the files").call()
+        git.push().setRemote("origin").setPushAll().call()
+
+        when:
+        def result = runTasks('prepareGhPages')
+
+        then:
+        result.rethrowFailure()
+        result.wasExecuted(':submod:javadoc')
+        fileExists('build/ghpages/submod/javadoc/index.html')
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+
     @CompileStatic
     void createLicenseHeader() {
         createFile("gradle/HEADER") << 'Copyright ${year} the original author or authors.\nTHIS CAN BE USED FREELY'
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.defaults
+
+import com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler
+import groovy.json.JsonSlurper
+import spock.lang.Unroll
+
+/**
+ * The optional integrations are only applied (and so their classes only loaded) by the builds that use them, as
+ * seen in the configuration time report.
+ */
+class DefaultsPluginStartupIntSpec extends AbstractIntSpec {
+
+    private static final String BINTRAY = "apply plugin: 'com.jfrog.bintray'"
+
+
+    @Unroll
+    def "#kind: only the integrations used are applied"() {
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults')
+        createLicenseHeader()
+
+        when:
+        def report = configTimings(openSource, extraPlugins)
+        def names = report.timings*.name
+
+        then:
+        names.any { it.contains("license") } == openSource
+        names.any { it.contains("bintray") } == !extraPlugins.isEmpty()
+
+        where:
+        kind                    | openSource | extraPlugins
+        "plain java library"    | false      | ""
+        "open-source library"   | true       | ""
+        "published via Bintray" | false      | BINTRAY
+    }
+
+
+    def "a plain java library loads fewer classes than one using the integrations"() {
+        // each build gets a JVM of its own, so nothing is already loaded by an earlier build
+        fork = true
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults')
+        createLicenseHeader()
+
+        when:
+        def plain = configTimings(false, "")
+        def full = configTimings(true, BINTRAY)
+
+        then:
+        integrationLoadedClasses(plain) == 0
+        integrationLoadedClasses(full) > 0
+        plain.loadedClasses < full.loadedClasses
+    }
+
+
+    /**
+     * Configures the build and returns its configuration time report.
+     */
+    def configTimings(boolean openSource, String extraPlugins) {
+        buildFile.text = """
+            ${extraPlugins}
+            apply plugin: '${DefaultsPlugin.PLUGIN_ID}'
+            apply plugin: 'java'
+
+            group = "com.mooregreatsoftware.gradle.defaults"
+
+            defaults {
+                orgId = "tester"
+                openSource = ${openSource}
+            }
+        """.stripIndent()
+        // a forked build won't share its JVM with a build that has different JVM arguments
+        file("gradle.properties") << "\norg.gradle.jvmargs=-Ddefaults.startupRun=${UUID.randomUUID()}\n"
+
+        def result = runTasks('help', "-P${ConfigurationProfiler.REPORT_PROPERTY}")
+        result.rethrowFailure()
+        return new JsonSlurper().parse(file('build/reports/defaults-config/config-timings.json'))
+    }
+
+
+    /**
+     * The classes loaded by the integrations' own plugin applications and callbacks.
+     */
+    static long integrationLoadedClasses(report) {
+        report.timings.findAll { it.name =~ /(?i)license|bintray/ }.sum(0L) { it.loadedClasses as long } as long
+    }
+
+}
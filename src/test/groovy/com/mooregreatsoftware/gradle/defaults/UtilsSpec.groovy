@@ -17,6 +17,7 @@ package com.mooregreatsoftware.gradle.defaults
 
 import com.mooregreatsoftware.gradle.util.JdkVersion
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import static com.mooregreatsoftware.gradle.util.UtilsKt.jdkVersion
 
@@ -41,4 +42,28 @@ class UtilsSpec extends Specification {
         System.setProperty("java.version", origVersion)
     }
 
+
+    @Unroll
+    def "parses \"#javaVersion\""() {
+        final origVersion = System.getProperty("java.version")
+
+        when:
+        System.setProperty("java.version", javaVersion)
+
+        then:
+        jdkVersion() == expected
+
+        cleanup:
+        System.setProperty("java.version", origVersion)
+
+        where:
+        javaVersion   | expected
+        "1.8.0"       | new JdkVersion(1, 8, 0, 0)
+        "1.7.0_80-ea" | new JdkVersion(1, 7, 0, 80)
+        "9"           | new JdkVersion(9, 0, 0, 0)
+        "11.0.2"      | new JdkVersion(11, 0, 2, 0)
+        "17-ea"       | new JdkVersion(17, 0, 0, 0)
+        "17.0.1+12"   | new JdkVersion(17, 0, 1, 0)
+    }
+
 }
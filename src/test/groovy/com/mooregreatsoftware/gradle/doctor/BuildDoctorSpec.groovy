@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.doctor
+
+import com.mooregreatsoftware.gradle.Projects
+import com.mooregreatsoftware.gradle.java.ExtJavaPlugin
+import com.mooregreatsoftware.gradle.util.JavacUtils
+import groovy.json.JsonSlurper
+import nebula.test.ProjectSpec
+import org.gradle.api.tasks.bundling.Jar
+import org.gradle.api.tasks.compile.JavaCompile
+
+import static com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt.defaultsExtension
+
+class BuildDoctorSpec extends ProjectSpec {
+
+    def setup() {
+        project.group = "com.mooregreatsoftware.gradle.defaults"
+        project.plugins.apply(ExtJavaPlugin.PLUGIN_ID)
+    }
+
+
+    def "the extra jars and the volatile manifests are found"() {
+        when:
+        Projects.evaluate(project)
+        def findings = BuildDoctor.examine(project)
+
+        then:
+        findings.findAll { it.id == "extra-archive" }*.taskPath as Set == [":sourcesJar", ":javadocJar"] as Set
+        findings.findAll { it.id == "volatile-manifest" }*.fix.unique() == ["defaults { reproducibleArchives = true }"]
+    }
+
+
+    def "only the plugin's own extra jars are reported"() {
+        project.tasks.create("testJar", Jar).classifier = "tests"
+
+        when:
+        Projects.evaluate(project)
+        def findings = BuildDoctor.extraArchives(project)
+
+        then:
+        findings*.taskPath as Set == [":sourcesJar", ":javadocJar"] as Set
+        findings*.fix.unique() ==
+            ["defaults { profile = 'dev' } for local builds (or \"-Pdefaults.profile=dev\"); it's only needed to publish"]
+    }
+
+
+    def "the extra jars aren't reported with the dev profile, which skips them"() {
+        defaultsExtension(project).profile = "dev"
+
+        when:
+        Projects.evaluate(project)
+
+        then:
+        BuildDoctor.extraArchives(project).isEmpty()
+    }
+
+
+    def "reproducible archives are not reported"() {
+        defaultsExtension(project).reproducibleArchives = true
+
+        when:
+        Projects.evaluate(project)
+
+        then:
+        BuildDoctor.volatileManifests(project).isEmpty()
+    }
+
+
+    def "a forked compiler is reported"() {
+        Projects.evaluate(project)
+        (project.tasks.getByName("compileJava") as JavaCompile).options.fork = true
+
+        expect:
+        BuildDoctor.forkedCompilers(project)*.taskPath == [":compileJava"]
+    }
+
+
+    def "the Checker Framework makes compiles with source non-incremental"() {
+        new File(projectDir, "src/main/java/Hello.java").with {
+            parentFile.mkdirs()
+            text = "public class Hello {}"
+        }
+        Projects.evaluate(project)
+        (project.tasks.getByName("compileJava") as JavaCompile).options.incremental = true
+        JavacUtils.registerAnnotationProcessorClassnames(project,
+            ["org.checkerframework.checker.nullness.NullnessChecker"])
+
+        when:
+        def findings = BuildDoctor.nonIncrementalCompiles(project)
+
+        then:
+        findings*.taskPath == [":compileJava"]
+        findings[0].estimatedMs == BuildDoctor.RECOMPILE_MS_PER_FILE
+    }
+
+
+    def "the task writes the findings as JSON"() {
+        Projects.evaluate(project)
+        DoctorTask.register(project)
+        def task = project.tasks.getByName(DoctorTask.TASK_NAME) as DoctorTask
+
+        when:
+        task.examine()
+        def json = new JsonSlurper().parse(new File(task.reportDir, "doctor.json"))
+
+        then:
+        json.findings.size() == BuildDoctor.examine(project).size()
+        json.findings.every { it.id && it.project && it.fix }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.environment
+
+import com.mooregreatsoftware.gradle.util.JdkVersion
+import nebula.test.ProjectSpec
+import org.gradle.api.tasks.compile.JavaCompile
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class BuildEnvironmentSpec extends ProjectSpec {
+
+    static final long GB = 1024L * 1024 * 1024
+
+
+    def "reads cgroup v2 limits"() {
+        def cgroup = cgroupDir(["cpu.max": "250000 100000", "memory.max": "${4 * GB}"])
+
+        expect:
+        BuildEnvironment.cpuLimit(cgroup) == 3
+        BuildEnvironment.memoryLimit(cgroup) == 4 * GB
+    }
+
+
+    def "reads cgroup v1 limits"() {
+        def cgroup = cgroupDir(["cpu/cpu.cfs_quota_us": "200000", "cpu/cpu.cfs_period_us": "100000",
+                                "memory/memory.limit_in_bytes": "${2 * GB}"])
+
+        expect:
+        BuildEnvironment.cpuLimit(cgroup) == 2
+        BuildEnvironment.memoryLimit(cgroup) == 2 * GB
+    }
+
+
+    def "no limits when there is no container, or it is unlimited"() {
+        def unlimitedV2 = cgroupDir(["cpu.max": "max 100000", "memory.max": "max"])
+        def unlimitedV1 = cgroupDir(["cpu/cpu.cfs_quota_us": "-1", "cpu/cpu.cfs_period_us": "100000",
+                                     "memory/memory.limit_in_bytes": "9223372036854771712"])
+        def none = cgroupDir([:])
+
+        expect:
+        [unlimitedV2, unlimitedV1, none].every {
+            BuildEnvironment.cpuLimit(it) == null && BuildEnvironment.memoryLimit(it) == null
+        }
+    }
+
+
+    @Unroll
+    def "#cores cores (limited to #cpuLimit) and #memoryGb GB get #workers workers and a #daemonMb MB daemon"() {
+        def environment = new BuildEnvironment(new JdkVersion(1, 8, 0, 121), "test", cores, cpuLimit, memoryGb * GB, null)
+
+        expect:
+        environment.suggestedWorkers() == workers
+        environment.suggestedDaemonHeapMb() == daemonMb
+        environment.suggestedGradleProperties() == [
+            (BuildEnvironment.WORKERS_MAX_PROPERTY): "$workers".toString(),
+            (BuildEnvironment.JVM_ARGS_PROPERTY)   : "-Xmx${daemonMb}m".toString()]
+
+        where:
+        cores | cpuLimit | memoryGb | workers | daemonMb
+        4     | null     | 16       | 4       | 4096
+        64    | null     | 256      | 64      | 8192
+        64    | 8        | 256      | 8       | 8192
+        16    | null     | 4        | 4       | 1024
+        2     | null     | 1        | 1       | 512
+    }
+
+
+    def "missing settings are added to the user's gradle.properties, not the project's"() {
+        def environment = new BuildEnvironment(new JdkVersion(1, 8, 0, 121), "test", 4, null, 16 * GB, null)
+        project.ext.set(BuildEnvironment.JVM_ARGS_PROPERTY, "-Xmx2g")
+        def gradleUserHomeDir = new File(projectDir, "build/gradle-user-home")
+
+        when:
+        environment.addMissingGradleProperties(project, gradleUserHomeDir)
+        def properties = new Properties()
+        new File(gradleUserHomeDir, "gradle.properties").withInputStream { properties.load(it) }
+
+        then:
+        properties.getProperty(BuildEnvironment.WORKERS_MAX_PROPERTY) == "4"
+        !properties.containsKey(BuildEnvironment.JVM_ARGS_PROPERTY)
+        !new File(projectDir, "gradle.properties").exists()
+    }
+
+
+    def "forked compilers without a heap get the suggested one"() {
+        def environment = new BuildEnvironment(new JdkVersion(1, 8, 0, 121), "test", 4, null, 16 * GB, null)
+        project.plugins.apply("java")
+        def compileJava = project.tasks.getByName("compileJava") as JavaCompile
+        def compileTestJava = project.tasks.getByName("compileTestJava") as JavaCompile
+        compileJava.options.fork = true
+        compileTestJava.options.fork = true
+        compileTestJava.options.forkOptions.memoryMaximumSize = "2g"
+
+        when:
+        [compileJava, compileTestJava].each { environment.applyCompilerHeap(it) }
+
+        then:
+        compileJava.options.forkOptions.memoryMaximumSize == "${environment.suggestedCompilerHeapMb()}m"
+        compileTestJava.options.forkOptions.memoryMaximumSize == "2g"
+    }
+
+
+    def "the environment is probed once per build"() {
+        expect:
+        BuildEnvironment.buildEnvironment(project).is(BuildEnvironment.buildEnvironment(project))
+        BuildEnvironment.buildEnvironment(project).cores() >= 1
+    }
+
+
+    Path cgroupDir(Map<String, String> files) {
+        def dir = Files.createTempDirectory(projectDir.toPath(), "cgroup")
+        files.each { name, content ->
+            def file = dir.resolve(name)
+            Files.createDirectories(file.parent)
+            file.toFile().text = content
+        }
+        return dir
+    }
+
+}
@@ -48,4 +48,76 @@ class ExtJavaPluginIntSpec extends AbstractIntSpec {
         println result?.standardError
     }
 
+
+    def "publishing with the dev build profile fails before anything runs"() {
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults')
+
+        buildFile << """
+            apply plugin: '${ExtJavaPlugin.PLUGIN_ID}'
+
+            defaults {
+                profile = 'dev'
+            }
+        """.stripIndent()
+
+        when:
+        def result = runTasksWithFailure('publishToMavenLocal')
+
+        then:
+        result.standardError.contains("with the \"dev\" build profile")
+        !result.wasExecuted(":compileJava")
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+
+    def "rebuilt jar with only new build information does not change the runtime classpath"() {
+        gradleVersion = "4.0"
+
+        buildFile << """
+            apply plugin: '${ExtJavaPlugin.PLUGIN_ID}'
+
+            dependencies {
+                runtime project(':submod')
+            }
+
+            class Consume extends DefaultTask {
+                @Classpath FileCollection classpath
+                @OutputFile File out = project.file("build/consumed.txt")
+
+                @TaskAction void consume() { out.text = classpath.files.toString() }
+            }
+
+            task consume(type: Consume) {
+                classpath = configurations.runtime
+            }
+        """.stripIndent()
+
+        def subprojDir = addSubproject("submod", """
+            apply plugin: '${ExtJavaPlugin.PLUGIN_ID}'
+        """.stripIndent())
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults.asubmod', subprojDir)
+
+        when:
+        def result = runTasks('consume')
+
+        then:
+        result.success
+        result.wasExecuted(':consume')
+
+        when:
+        result = runTasks(':submod:clean', 'consume')
+
+        then:
+        result.success
+        result.wasExecuted(':submod:jar')
+        result.wasUpToDate(':consume')
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
 }
@@ -16,8 +16,12 @@
 package com.mooregreatsoftware.gradle.java
 
 import com.mooregreatsoftware.gradle.Projects
+import com.mooregreatsoftware.gradle.defaults.DefaultsExtensionKt
+import com.mooregreatsoftware.gradle.lang.BuildInfoTask
+import com.mooregreatsoftware.gradle.lang.AbstractAnnotationProcessorPluginSpec
 import nebula.test.PluginProjectSpec
 import org.eclipse.jgit.api.Git
+import org.gradle.api.tasks.compile.JavaCompile
 import spock.lang.Subject
 
 class ExtJavaPluginSpec extends PluginProjectSpec {
@@ -75,4 +79,52 @@ class ExtJavaPluginSpec extends PluginProjectSpec {
         jarTask.manifest.attributes.get("Built-By") == "tester@test.com"
     }
 
+
+    def "the compiler arguments are set before any task runs, not by the task"() {
+        Projects.evaluate(project)
+        def compileJava = project.tasks.getByName("compileJava") as JavaCompile
+
+        expect:
+        compileJava.actions.
+            collect { AbstractAnnotationProcessorPluginSpec.unwrap(it) }.
+            every { !(it instanceof ExtJavaPlugin.ConfigCompilerAction) }
+
+        when:
+        Projects.taskGraphReady(project)
+
+        then:
+        compileJava.options.compilerArgs == ["-Xlint:unchecked"]
+    }
+
+
+    def "the dev build profile skips the sources and documentation"() {
+        DefaultsExtensionKt.defaultsExtension(project).profile = "dev"
+
+        when:
+        Projects.evaluate(project)
+
+        then:
+        ["sourcesJar", "javadoc", "javadocJar"].every { !project.tasks.getByName(it).enabled }
+        ExtJavaPlugin.jarTask(project).enabled
+    }
+
+
+    def "reproducible archives"() {
+        DefaultsExtensionKt.defaultsExtension(project).reproducibleArchives = true
+
+        when:
+        Projects.evaluate(project)
+
+        and:
+        def jarTask = ExtJavaPlugin.jarTask(project)
+        jarTask.execute()
+
+        then:
+        jarTask.manifest.attributes.keySet().intersect(["Built-By", "Built-Date"]).isEmpty()
+        jarTask.manifest.attributes.get("Implementation-Title") == project.name
+
+        and:
+        project.tasks.getByName("assemble").dependsOn.contains(project.tasks.getByName(BuildInfoTask.TASK_NAME))
+    }
+
 }
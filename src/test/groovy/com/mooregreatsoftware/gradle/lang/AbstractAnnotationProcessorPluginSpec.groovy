@@ -15,6 +15,7 @@
  */
 package com.mooregreatsoftware.gradle.lang
 
+import com.mooregreatsoftware.gradle.Projects
 import com.mooregreatsoftware.gradle.ide.ExtIntellijPlugin
 import com.mooregreatsoftware.gradle.java.ExtJavaPlugin
 import com.mooregreatsoftware.gradle.lombok.LombokExtension
@@ -23,7 +24,6 @@ import nebula.test.PluginProjectSpec
 import nebula.test.dependencies.DependencyGraph
 import nebula.test.dependencies.GradleDependencyGenerator
 import org.gradle.api.Action
-import org.gradle.api.DomainObjectCollection
 import org.gradle.api.Project
 import org.gradle.api.tasks.compile.JavaCompile
 
@@ -95,13 +95,8 @@ abstract class AbstractAnnotationProcessorPluginSpec extends PluginProjectSpec {
     }
 
 
-    protected DomainObjectCollection<JavaCompile> configureTasks() {
-        project.tasks.withType(JavaCompile, { task ->
-            task.actions.stream().
-                map({ unwrap(it) }).
-                filter({ it instanceof ExtJavaPlugin.ConfigCompilerAction }).
-                forEach({ it.execute(task) })
-        })
+    protected Project configureTasks() {
+        Projects.taskGraphReady(project)
     }
 
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.lang
+
+import nebula.test.ProjectSpec
+
+import java.nio.file.Files
+
+class ProcessorUsageSpec extends ProjectSpec {
+
+    def "detects lombok and checker framework references"() {
+        def lombokFile = javaFile("UsesLombok", "import lombok.val;")
+        def checkerFile = javaFile("UsesChecker", "@org.checkerframework.checker.nullness.qual.Nullable String s;")
+        def plainFile = javaFile("Plain", "String s;")
+        def cacheFile = projectDir.toPath().resolve("build/usage.txt")
+
+        expect:
+        usage([plainFile], cacheFile) == 0
+        usage([lombokFile, plainFile], cacheFile) == 1
+        usage([checkerFile], cacheFile) == 2
+        usage([lombokFile, checkerFile, plainFile], cacheFile) == 3
+    }
+
+
+    def "unchanged files are not read again"() {
+        def file = javaFile("Plain", "String s;")
+        def cacheFile = projectDir.toPath().resolve("build/usage.txt")
+
+        expect:
+        usage([file], cacheFile) == 0
+        Files.exists(cacheFile)
+
+        when: "same size and modification time, but different content"
+        def lastModified = file.lastModified()
+        file.text = "class Plain { lombok.x; }"
+        file.lastModified = lastModified
+
+        then:
+        usage([file], cacheFile) == 0
+
+        when:
+        file.text = "import lombok.val;"
+
+        then:
+        usage([file], cacheFile) == 1
+    }
+
+
+    def "projects without source sets are assumed to use everything"() {
+        expect:
+        ProcessorUsage.processorUsage(project).usesLombok()
+        ProcessorUsage.processorUsage(project).usesCheckerFramework()
+    }
+
+
+    def "only looks at projects' Java source"() {
+        project.plugins.apply("java")
+        javaFile("UsesLombok", "import lombok.val;")
+
+        expect:
+        ProcessorUsage.processorUsage(project).usesLombok()
+        !ProcessorUsage.processorUsage(project).usesCheckerFramework()
+    }
+
+
+    def "skipping the Checker Framework has to be asked for"() {
+        expect:
+        ProcessorUsage.onlyWhenUsed(project)
+        !ProcessorUsage.checkerFrameworkOnlyWhenUsed(project)
+
+        when:
+        project.ext.set(ProcessorUsage.CHECKER_FRAMEWORK_ONLY_WHEN_USED_PROPERTY, "true")
+
+        then:
+        ProcessorUsage.checkerFrameworkOnlyWhenUsed(project)
+
+        when:
+        project.ext.set(ProcessorUsage.ONLY_WHEN_USED_PROPERTY, "false")
+
+        then:
+        !ProcessorUsage.checkerFrameworkOnlyWhenUsed(project)
+    }
+
+
+    File javaFile(String className, String body) {
+        def file = new File(projectDir, "src/main/java/${className}.java")
+        file.parentFile.mkdirs()
+        file.text = "class ${className} { ${body} }"
+        return file
+    }
+
+
+    static int usage(Iterable<File> files, java.nio.file.Path cacheFile) {
+        ProcessorUsage.detect(files, cacheFile)
+    }
+
+}
@@ -41,6 +41,8 @@ class MavenPublishPublicationsIntSpec extends AbstractIntSpec {
 
             dependencies {
                 compile "org.scala-lang:scala-library:2.10.5"
+                runtime "commons-io:commons-io:2.4"
+                compileOnly "commons-lang:commons-lang:2.6"
             }
         """.stripIndent()
 
@@ -70,7 +72,51 @@ class MavenPublishPublicationsIntSpec extends AbstractIntSpec {
         xml.description.text() == "a test project"
         xml.version.text().trim().isEmpty() == false
         xml.dependencies.size() == 1
-        xml.dependencies[0].dependency.groupId.text() == "org.scala-lang"
+        xml.dependencies[0].dependency.collectEntries { [it.groupId.text(), it.scope.text()] } ==
+            ["org.scala-lang": "compile", "commons-io": "runtime"]
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+
+    def "good POM generation - java-library"() {
+        gradleVersion = "4.0"
+        writeJavaHelloWorld('com.mooregreatsoftware.gradle.defaults')
+        file('gradle.properties') << "defaults.javaLibrary=true\n"
+
+        buildFile << """
+            apply plugin: '${DefaultsPlugin.PLUGIN_ID}'
+            apply plugin: 'java'
+
+            group = "com.mooregreatsoftware.gradle.defaults"
+
+            defaults {
+                orgId = "testing"
+                compatibilityVersion = 1.7
+            }
+
+            dependencies {
+                api "org.scala-lang:scala-library:2.10.5"
+                compile "junit:junit:4.12"
+                implementation "commons-io:commons-io:2.4"
+                compileOnly "commons-lang:commons-lang:2.6"
+            }
+        """.stripIndent()
+
+        when:
+        def result = runTasks('generatePomFileForMainPublication')
+
+        then:
+        result.success
+
+        when:
+        def xml = new XmlParser(false, false).parse(file('build/publications/main/pom-default.xml'))
+
+        then:
+        xml.dependencies[0].dependency.collectEntries { [it.groupId.text(), it.scope.text()] } ==
+            ["org.scala-lang": "compile", "junit": "compile", "commons-io": "runtime"]
 
         cleanup:
         println result?.standardOutput
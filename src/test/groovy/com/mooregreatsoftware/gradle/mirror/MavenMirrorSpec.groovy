@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.mirror
+
+import nebula.test.ProjectSpec
+import org.gradle.api.GradleException
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.testfixtures.ProjectBuilder
+
+import java.nio.file.Files
+
+import static com.mooregreatsoftware.TestUtils.testLibsPath
+
+class MavenMirrorSpec extends ProjectSpec {
+
+    def "files go where Maven expects them"() {
+        def id = new DefaultModuleComponentIdentifier("com.example", "util", "1.0")
+
+        expect:
+        MavenMirror.path(id, null, "jar") == "com/example/util/1.0/util-1.0.jar"
+        MavenMirror.path(id, "sources", "jar") == "com/example/util/1.0/util-1.0-sources.jar"
+        MavenMirror.path(id, "", "pom") == "com/example/util/1.0/util-1.0.pom"
+    }
+
+
+    def "checksums are lower-case hex"() {
+        def file = Files.createTempFile("mirror", ".txt")
+        file.text = "hello"
+
+        expect:
+        MavenMirror.checksum(file, "SHA-1") == "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d"
+        MavenMirror.checksum(file, "MD5") == "5d41402abc4b2a76b9719d911017c592"
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+
+    def "the parent of a POM is read from its top-level element"() {
+        def pom = new File(projectDir, "child.pom")
+        pom.text = """<project xmlns="http://maven.apache.org/POM/4.0.0">
+            <parent>
+                <groupId>com.example</groupId>
+                <artifactId>parent</artifactId>
+                <version>3</version>
+            </parent>
+            <artifactId>child</artifactId>
+        </project>"""
+        def orphan = new File(projectDir, "orphan.pom")
+        orphan.text = "<project><artifactId>orphan</artifactId></project>"
+
+        expect:
+        MavenMirror.parent(pom) == ["com.example", "parent", "3"]
+        MavenMirror.parent(orphan) == null
+    }
+
+
+    def "a POM with a DTD isn't read"() {
+        def secret = Files.createTempFile("secret", ".txt").toFile()
+        secret.text = "leaked"
+        def pom = new File(projectDir, "evil.pom")
+        pom.text = """<?xml version="1.0"?>
+            <!DOCTYPE project [<!ENTITY secret SYSTEM "${secret.toURI()}">]>
+            <project><parent><groupId>&secret;</groupId><artifactId>a</artifactId><version>1</version></parent></project>
+            """.stripIndent().trim()
+
+        expect:
+        MavenMirror.parent(pom) == null
+    }
+
+
+    def "the mirror property can turn the mirror on, off, or point it somewhere else"() {
+        when:
+        if (value != null) project.extensions.extraProperties.set(MavenMirror.MIRROR_PROPERTY, value)
+
+        then:
+        MavenMirror.useMirror(project) == used
+        MavenMirror.mirrorDir(project) == project.file(dir)
+
+        where:
+        value          | used  | dir
+        null           | false | MavenMirror.DEFAULT_DIR
+        "true"         | true  | MavenMirror.DEFAULT_DIR
+        ""             | true  | MavenMirror.DEFAULT_DIR
+        "false"        | false | MavenMirror.DEFAULT_DIR
+        " FALSE "      | false | MavenMirror.DEFAULT_DIR
+        "other/mirror" | true  | "other/mirror"
+    }
+
+
+    def "the mirror has every resolved module, with checksums, and can replace the repositories"() {
+        project.repositories.maven { it.url = testLibsPath().toUri() }
+        project.configurations.create("mirrored")
+        project.dependencies.add("mirrored", "commons-lang:commons-lang:2.6")
+        def mirrorDir = new File(projectDir, "mirror")
+
+        MirrorTask.register(project)
+        def task = project.tasks.getByName(MirrorTask.TASK_NAME) as MirrorTask
+        task.mirrorDir = mirrorDir
+
+        when:
+        task.mirror()
+
+        then:
+        def moduleDir = new File(mirrorDir, "commons-lang/commons-lang/2.6")
+        new File(moduleDir, "commons-lang-2.6.jar").isFile()
+        new File(moduleDir, "commons-lang-2.6.jar.sha1").text ==
+            MavenMirror.checksum(new File(moduleDir, "commons-lang-2.6.jar").toPath(), "SHA-1")
+        new File(moduleDir, "commons-lang-2.6.jar.md5").isFile()
+        new File(moduleDir, "commons-lang-2.6.pom").text.contains("<artifactId>commons-lang</artifactId>")
+
+        when:
+        MavenMirror.rewireRepositories(project, mirrorDir)
+        def fromMirror = project.configurations.detachedConfiguration(
+            project.dependencies.create("commons-lang:commons-lang:2.6"))
+
+        then:
+        project.repositories*.name == [MavenMirror.REPOSITORY_NAME]
+        fromMirror.files*.name == ["commons-lang-2.6.jar"]
+    }
+
+
+    def "each project mirrors its own dependencies through its own repositories"() {
+        def sub = ProjectBuilder.builder().withName("sub").withParent(project).build()
+        // only the subproject knows where to find the module
+        sub.repositories.maven { it.url = testLibsPath().toUri() }
+        sub.configurations.create("mirrored")
+        sub.dependencies.add("mirrored", "commons-lang:commons-lang:2.6")
+        def mirrorDir = new File(projectDir, "mirror")
+        def (rootTask, subTask) = [project, sub].collect { prj ->
+            MirrorTask.register(prj)
+            def task = prj.tasks.getByName(MirrorTask.TASK_NAME) as MirrorTask
+            task.mirrorDir = mirrorDir
+            task
+        }
+
+        expect:
+        rootTask.taskDependencies.getDependencies(rootTask) == [subTask] as Set
+
+        when:
+        subTask.mirror()
+        rootTask.mirror()
+
+        then:
+        new File(mirrorDir, "commons-lang/commons-lang/2.6/commons-lang-2.6.jar").isFile()
+        new File(mirrorDir, "commons-lang/commons-lang/2.6/commons-lang-2.6.pom").isFile()
+    }
+
+
+    def "a minimal POM doesn't replace one that's there"() {
+        def id = new DefaultModuleComponentIdentifier("com.example", "util", "1.0")
+        def mirrorDir = new File(projectDir, "mirror")
+        def pom = new File(mirrorDir, MavenMirror.path(id, null, "pom"))
+        pom.parentFile.mkdirs()
+        pom.text = "<project><name>util</name></project>"
+
+        when:
+        new MavenMirror(mirrorDir).addMinimalPom(id)
+
+        then:
+        pom.text == "<project><name>util</name></project>"
+    }
+
+
+    def "using a mirror that hasn't been created fails"() {
+        when:
+        MavenMirror.rewireRepositories(project, new File(projectDir, "missing"))
+
+        then:
+        thrown(GradleException)
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.prefetch
+
+import nebula.test.ProjectSpec
+import org.gradle.testfixtures.ProjectBuilder
+
+import static com.mooregreatsoftware.TestUtils.testLibsPath
+
+class PrefetchTaskSpec extends ProjectSpec {
+
+    def "every configuration is resolved and shared artifacts are only fetched once"() {
+        project.repositories.maven { it.url = testLibsPath().toUri() }
+        ["one", "two"].each { project.configurations.create(it) }
+        project.dependencies.add("one", "commons-lang:commons-lang:2.6")
+        project.dependencies.add("two", "commons-lang:commons-lang:2.6")
+        project.dependencies.add("two", "commons-io:commons-io:2.4")
+
+        PrefetchTask.register(project)
+        def task = project.tasks.getByName(PrefetchTask.TASK_NAME) as PrefetchTask
+        task.maxThreads = 2
+
+        when:
+        task.prefetch()
+
+        then:
+        def report = task.report
+        report.configurations() == 2
+        report.artifacts() == 2
+        report.sharedArtifacts() == 1
+        report.bytes() == testLibsPath().resolve("commons-lang/commons-lang/2.6/commons-lang-2.6.jar").toFile().length() +
+            testLibsPath().resolve("commons-io/commons-io/2.4/commons-io-2.4.jar").toFile().length()
+        report.bytesByRepository().values().sum() == report.bytes()
+        task.reportFile.text.contains("Resolved 2 configurations")
+    }
+
+
+    def "each project resolves its own configurations, and the root reports on all of them"() {
+        def sub = ProjectBuilder.builder().withName("sub").withParent(project).build()
+        [project, sub].each { prj ->
+            prj.repositories.maven { it.url = testLibsPath().toUri() }
+            prj.configurations.create("libs")
+            PrefetchTask.register(prj)
+        }
+        project.dependencies.add("libs", "commons-lang:commons-lang:2.6")
+        sub.dependencies.add("libs", "commons-lang:commons-lang:2.6")
+        sub.dependencies.add("libs", "commons-io:commons-io:2.4")
+        def rootTask = project.tasks.getByName(PrefetchTask.TASK_NAME) as PrefetchTask
+        def subTask = sub.tasks.getByName(PrefetchTask.TASK_NAME) as PrefetchTask
+
+        expect:
+        rootTask.taskDependencies.getDependencies(rootTask) == [subTask] as Set
+
+        when:
+        subTask.prefetch()
+
+        then:
+        subTask.report.configurations() == 1
+        !rootTask.reportFile.exists()
+
+        when:
+        rootTask.prefetch()
+
+        then:
+        rootTask.report.configurations() == 2
+        rootTask.report.artifacts() == 2
+        rootTask.report.sharedArtifacts() == 1
+        rootTask.reportFile.text.contains("Resolved 2 configurations")
+    }
+
+
+    def "a missing module is reported without failing the prefetch"() {
+        project.repositories.maven { it.url = testLibsPath().toUri() }
+        project.configurations.create("missing")
+        project.dependencies.add("missing", "com.example:not-there:1.0")
+
+        PrefetchTask.register(project)
+        def task = project.tasks.getByName(PrefetchTask.TASK_NAME) as PrefetchTask
+
+        when:
+        task.prefetch()
+
+        then:
+        task.report.configurations() == 1
+        task.report.artifacts() == 0
+    }
+
+}
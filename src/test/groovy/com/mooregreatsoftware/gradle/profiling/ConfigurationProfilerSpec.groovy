@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.profiling
+
+import com.mooregreatsoftware.gradle.Projects
+import groovy.json.JsonSlurper
+import nebula.test.ProjectSpec
+import org.gradle.api.GradleException
+
+import static com.mooregreatsoftware.gradle.profiling.ConfigurationProfiler.configurationProfiler
+
+class ConfigurationProfilerSpec extends ProjectSpec {
+
+    def "nested timings are separated into self and total time"() {
+        when:
+        ConfigurationProfiler.time(project, "outer", {
+            sleep(5)
+            ConfigurationProfiler.time(project, "inner", { sleep(20) } as Runnable)
+        } as Runnable)
+
+        def timings = configurationProfiler(project).timings()
+        def outer = timings.find { it.name == "outer" }
+        def inner = timings.find { it.name == "inner" }
+
+        then:
+        outer.depth == 0
+        inner.depth == 1
+        outer.totalNanos >= inner.totalNanos
+        outer.selfNanos == outer.totalNanos - inner.totalNanos
+
+        and:
+        configurationProfiler(project).projectTotals().keySet() == [project.path] as Set
+    }
+
+
+    def "afterEvaluate callbacks are timed"() {
+        def ran = false
+        ConfigurationProfiler.afterEvaluate(project, "test callback", { ran = true })
+
+        when:
+        Projects.evaluate(project)
+
+        then:
+        ran
+        configurationProfiler(project).timings()*.name == ["afterEvaluate test callback"]
+    }
+
+
+    def "report is written when requested"() {
+        project.extensions.extraProperties.set(ConfigurationProfiler.REPORT_PROPERTY, "true")
+        ConfigurationProfiler.time(project, "something", {} as Runnable)
+        def profiler = configurationProfiler(project)
+
+        when:
+        profiler.configurationFinished(project)
+        def reportDir = new File(project.buildDir, ConfigurationProfiler.REPORT_DIR)
+        def json = new JsonSlurper().parse(new File(reportDir, "config-timings.json"))
+
+        then:
+        json.timings*.name == ["something"]
+        new File(reportDir, "config-timings.txt").text.contains("something")
+    }
+
+
+    def "over budget fails"() {
+        project.extensions.extraProperties.set(ConfigurationProfiler.BUDGET_PROPERTY, "1")
+        ConfigurationProfiler.time(project, "slow", { sleep(10) } as Runnable)
+
+        when:
+        configurationProfiler(project).configurationFinished(project)
+
+        then:
+        def exp = thrown(GradleException)
+        exp.message.contains(ConfigurationProfiler.BUDGET_PROPERTY)
+    }
+
+
+    def "a top N that isn't a number fails with a message saying so"() {
+        project.extensions.extraProperties.set(ConfigurationProfiler.REPORT_PROPERTY, "true")
+        project.extensions.extraProperties.set(ConfigurationProfiler.TOP_N_PROPERTY, "lots")
+        ConfigurationProfiler.time(project, "something", {} as Runnable)
+
+        when:
+        configurationProfiler(project).configurationFinished(project)
+
+        then:
+        def exp = thrown(GradleException)
+        exp.message.contains(ConfigurationProfiler.TOP_N_PROPERTY)
+        exp.message.contains("lots")
+    }
+
+
+    def "classes loaded are counted"() {
+        when:
+        ConfigurationProfiler.time(project, "load a class", {
+            Class.forName(NotLoadedUntilTimed.name, true, ConfigurationProfilerSpec.classLoader)
+        } as Runnable)
+
+        then:
+        configurationProfiler(project).timings().find { it.name == "load a class" }.selfLoadedClasses >= 1
+        configurationProfiler(project).loadedClasses() >= 1
+    }
+
+
+    static class NotLoadedUntilTimed {
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.repositories
+
+import nebula.test.ProjectSpec
+import spock.lang.Unroll
+
+import static com.mooregreatsoftware.TestUtils.testLibsPath
+
+class RepositoryRoutesSpec extends ProjectSpec {
+
+    def routes = new RepositoryRoutes()
+
+
+    def setup() {
+        routes.route("internal", "https://repo.example.com/maven") {
+            it.internal = true
+            it.groups "com.example.*"
+        }
+        routes.route("scala", "https://scala.example.com/maven") {
+            it.groups "org.scala-lang"
+        }
+        routes.internalGroups "com.example.*", "org.secret"
+    }
+
+
+    @Unroll
+    def "#pattern #description #group"() {
+        expect:
+        RepositoryRoutes.matches(pattern, group) == matches
+
+        where:
+        pattern         | group                | matches
+        "com.example"   | "com.example"        | true
+        "com.example"   | "com.example.util"   | false
+        "com.example.*" | "com.example"        | true
+        "com.example.*" | "com.example.util"   | true
+        "com.example.*" | "com.examples"       | false
+        "com.example.*" | "comXexample.util"   | false
+
+        description = matches ? "matches" : "does not match"
+    }
+
+
+    @Unroll
+    def "#repository #description #group"() {
+        expect:
+        routes.allows(repository, group) == allowed
+
+        where:
+        repository      | group               | allowed
+        "internal"      | "com.example.util"  | true
+        "internal"      | "org.secret"        | false
+        "internal"      | "junit"             | false
+        "scala"         | "org.scala-lang"    | true
+        "scala"         | "junit"             | false
+        "BintrayJCenter" | "junit"            | true
+        "BintrayJCenter" | "com.example.util" | false
+        "BintrayJCenter" | "org.scala-lang"   | false
+        "BintrayJCenter" | "org.secret"       | false
+
+        description = allowed ? "may be asked for" : "is never asked for"
+    }
+
+
+    def "an internal route without groups serves the internal groups that aren't routed elsewhere"() {
+        def proxy = new RepositoryRoutes()
+        proxy.route("proxy", "https://proxy.example.com/maven") { it.internal = true }
+        proxy.internalGroups "org.secret"
+
+        expect:
+        proxy.allows("proxy", "org.secret")
+        proxy.allows("proxy", "junit")
+        !proxy.allows("BintrayJCenter", "org.secret")
+    }
+
+
+    def "the content filter is what Gradle's content descriptor takes"() {
+        expect:
+        RepositoryRouting.contentFilter(routes, "internal")*.toString() ==
+            ['includeGroupByRegex("\\Qcom.example\\E(\\..*)?")']
+        RepositoryRouting.contentFilter(routes, "BintrayJCenter")*.toString() == [
+            'excludeGroupByRegex("\\Qcom.example\\E(\\..*)?")',
+            'excludeGroup("org.scala-lang")',
+            'excludeGroup("org.secret")']
+    }
+
+
+    def "routes go ahead of the other repositories and JCenter can be left out"() {
+        project.repositories.jcenter()
+        project.repositories.maven { it.name = "testLibs"; it.url = testLibsPath().toUri() }
+        routes.jcenter = false
+
+        when:
+        RepositoryRouting.apply(project, routes)
+
+        then:
+        RepositoryRouting.repositoryNames(project) == ["internal", "scala", "testLibs"]
+
+        when:
+        RepositoryRouting.apply(project, routes)
+
+        then:
+        RepositoryRouting.repositoryNames(project) == ["internal", "scala", "testLibs"]
+    }
+
+
+    def "lookups avoided are counted once per module and project"() {
+        def report = RepositoryLookupReport.repositoryLookupReport(project)
+        def names = ["internal", "scala", "BintrayJCenter"]
+
+        when:
+        report.record(":", "junit:junit", "junit", names, routes)
+        report.record(":", "junit:junit", "junit", names, routes)
+        report.record(":", "org.scala-lang:scala-library", "org.scala-lang", names, routes)
+        report.record(":", "com.example:util", "com.example", names, routes)
+
+        then:
+        report.avoided() == [internal: 2L, scala: 1L]
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.repositories
+
+import com.mooregreatsoftware.TestUtils
+import com.mooregreatsoftware.gradle.defaults.AbstractIntSpec
+import com.mooregreatsoftware.gradle.defaults.DefaultsPlugin
+
+class RepositoryRoutingIntSpec extends AbstractIntSpec {
+
+    def setup() {
+        buildFile << """
+            apply plugin: '${DefaultsPlugin.PLUGIN_ID}'
+
+            defaults {
+                repositories {
+                    route("libs", "${TestUtils.testLibsPath().toUri()}") {
+                        groups "commons-io"
+                    }
+                    internalGroups "commons-lang"
+                }
+            }
+
+            configurations {
+                io
+                lang
+            }
+
+            dependencies {
+                io "commons-io:commons-io:2.4"
+                lang "commons-lang:commons-lang:2.6"
+            }
+
+            task resolveIo {
+                doLast { println "resolved: " + configurations.io.files*.name }
+            }
+
+            task resolveLang {
+                doLast { println "resolved: " + configurations.lang.files*.name }
+            }
+        """.stripIndent()
+    }
+
+
+    def "a routed group comes from its route, and an internal group never from a public repository"() {
+        gradleVersion = RepositoryRouting.CONTENT_FILTERING_VERSION
+
+        when:
+        def result = runTasks('resolveIo')
+
+        then:
+        result.success
+        result.standardOutput.contains("resolved: [commons-io-2.4.jar]")
+
+        when:
+        result = runTasks('resolveLang')
+
+        then:
+        // test-libs has commons-lang, but the only repositories for it aren't internal
+        !result.success
+        result.standardError.contains("commons-lang:commons-lang:2.6")
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+
+    def "without content filtering, internal groups are warned about"() {
+        when:
+        def result = runTasks('help')
+
+        then:
+        result.success
+        result.standardOutput.contains("The internal groups (commons-lang) may be asked for from the public repositories")
+
+        cleanup:
+        println result?.standardOutput
+        println result?.standardError
+    }
+
+}
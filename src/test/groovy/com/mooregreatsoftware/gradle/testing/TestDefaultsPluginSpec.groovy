@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing
+
+import com.mooregreatsoftware.gradle.environment.BuildEnvironment
+import nebula.test.ProjectSpec
+import org.gradle.api.tasks.testing.Test
+import spock.lang.Unroll
+
+import java.util.jar.JarFile
+
+class TestDefaultsPluginSpec extends ProjectSpec {
+
+    @Unroll
+    def "#cores cores and #classes test classes get #forks forks"() {
+        expect:
+        TestDefaultsPlugin.maxParallelForks(cores, classes) == forks
+
+        where:
+        cores | classes | forks
+        1     | 100     | 1
+        8     | 0       | 1
+        8     | 5       | 1
+        8     | 25      | 3
+        8     | 1000    | 4
+    }
+
+
+    @Unroll
+    def "a peak of #peakMb MB gets a heap of #heap"() {
+        expect:
+        TestDefaultsPlugin.maxHeapSize(peakMb * 1024 * 1024, 4096) == heap
+
+        where:
+        peakMb | heap
+        10     | "256m"
+        200    | "320m"
+        1000   | "1536m"
+        3000   | "4096m"
+    }
+
+
+    def "the forks come from the history of the test classes"() {
+        expect:
+        TestDefaultsPlugin.maxParallelForks(8, [:], 0) == 4
+        TestDefaultsPlugin.maxParallelForks(8, (1..100).collectEntries { ["Class$it".toString(), 10L] }, 0) == 4
+        TestDefaultsPlugin.maxParallelForks(8, (1..100).collectEntries { ["Class$it".toString(), it == 1 ? 1000L : 10L] }, 0) == 2
+    }
+
+
+    def "without a history, the forks come from the number of test classes"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        TestDefaultsPlugin.testDefaultsExtension(project).autoTune = true
+        def classesDir = project.sourceSets.test.output.classesDir
+        (1..15).each { classFile(classesDir, "com/example/Class${it}Spec.class") }
+        classFile(classesDir, "com/example/Class1Spec\$1.class")
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+
+        then:
+        TestDefaultsPlugin.testClasses(test) == 15
+        test.maxParallelForks == TestDefaultsPlugin.maxParallelForks(BuildEnvironment.buildEnvironment(project).cores(), 15)
+    }
+
+
+    def "the agent gets a jar of its own, given relative to the working directory"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        TestDefaultsPlugin.testDefaultsExtension(project).autoTune = true
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+        def agentArg = test.jvmArgs.find { it.startsWith("-javaagent:") }
+
+        then:
+        agentArg == "-javaagent:build/defaults/peak-heap-agent.jar=build/defaults/test-history/test-heap"
+        new JarFile(new File(project.buildDir, "defaults/peak-heap-agent.jar")).withCloseable { jar ->
+            jar.manifest.mainAttributes.getValue("Premain-Class") == PeakHeapAgent.name &&
+                jar.entries().toList()*.name.findAll { it.endsWith(".class") } ==
+                ["com/mooregreatsoftware/gradle/testing/PeakHeapAgent.class"]
+        }
+    }
+
+
+    def "the largest peak of the test JVMs is recorded, and the agent's files removed"() {
+        def history = TestHistory.testHistory(project.buildDir, "test")
+        def peakHeapDir = new File(project.buildDir, "peaks")
+        peakHeapDir.mkdirs()
+        new File(peakHeapDir, "${PeakHeapAgent.FILE_PREFIX}1.txt").text = "1000"
+        new File(peakHeapDir, "${PeakHeapAgent.FILE_PREFIX}2.txt").text = "3000"
+        new File(peakHeapDir, "${PeakHeapAgent.FILE_PREFIX}3.txt").text = "junk"
+
+        expect:
+        history.peakHeapBytes() == null
+
+        when:
+        TestDefaultsPlugin.recordPeakHeap(history, peakHeapDir)
+
+        then:
+        history.peakHeapBytes() == 3000
+        peakHeapDir.listFiles().length == 0
+    }
+
+
+    def "the extension and the history are applied when the project is evaluated"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        def extension = TestDefaultsPlugin.testDefaultsExtension(project)
+        extension.autoTune = true
+        extension.maxParallelForks = 3
+        extension.leakProne = true
+        TestHistory.testHistory(project.buildDir, "test").recordPeakHeapBytes(200 * 1024 * 1024)
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+
+        then:
+        test.maxParallelForks == 3
+        test.forkEvery == TestDefaultsExtension.LEAK_PRONE_FORK_EVERY
+        test.maxHeapSize == "320m"
+    }
+
+
+    @Unroll
+    def "a value of #forks forks set on the task is left alone"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        def extension = TestDefaultsPlugin.testDefaultsExtension(project)
+        extension.autoTune = true
+        extension.maxParallelForks = 4
+        extension.maxHeapSize = "2g"
+        def test = project.tasks.getByName("test") as Test
+        test.maxParallelForks = forks
+        test.maxHeapSize = "128m"
+
+        when:
+        project.evaluate()
+
+        then:
+        test.maxParallelForks == forks
+        test.maxHeapSize == "128m"
+
+        where:
+        forks << [1, 5]
+    }
+
+
+    def "nothing is changed unless auto-tuning is turned on"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        TestHistory.testHistory(project.buildDir, "test").recordPeakHeapBytes(200 * 1024 * 1024)
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+
+        then:
+        test.actions.size() == 1
+        test.maxParallelForks == 1
+        test.maxHeapSize == null
+        test.jvmArgs.every { !it.startsWith("-javaagent") }
+    }
+
+
+    def "class durations are merged into the history"() {
+        def history = TestHistory.testHistory(project.buildDir, "test")
+
+        when:
+        history.recordClassDurations([A: 10L, B: 20L])
+        history.recordClassDurations([B: 30L, C: 40L])
+
+        then:
+        history.classDurations() == [A: 10L, B: 30L, C: 40L]
+    }
+
+
+    def "a shard only runs its part of the test classes, and is an input of the task"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        project.ext.set(TestDefaultsPlugin.SHARD_PROPERTY, "1/2")
+        def classesDir = project.sourceSets.test.output.classesDir
+        def names = ["ASpec", "BSpec", "CSpec", "DSpec", "ESpec", "FSpec"]
+        names.each { classFile(classesDir, "com/example/${it}.class") }
+        classFile(classesDir, "com/example/ASpec\$1.class")
+        def shard = TestSchedule.Shard.parse("1/2")
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+
+        then:
+        test.inputs.properties[TestDefaultsPlugin.SHARD_INPUT] == "1/2"
+        // a nested class goes along with its outer class
+        test.candidateClassFiles.files*.name.collect { it - ~/(\$.*)?\.class$/ } as Set ==
+            names.findAll { shard.includes("com.example.$it") } as Set
+    }
+
+
+    def "the shared durations balance the shards"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        project.ext.set(TestDefaultsPlugin.SHARD_PROPERTY, "2/2")
+        def classesDir = project.sourceSets.test.output.classesDir
+        ["SlowSpec", "ASpec", "BSpec"].each { classFile(classesDir, "com/example/${it}.class") }
+        project.file("gradle/test-durations/test.txt").with {
+            parentFile.mkdirs()
+            text = "900\tcom.example.SlowSpec\n400\tcom.example.ASpec\n400\tcom.example.BSpec\n"
+        }
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+
+        then:
+        test.inputs.properties[TestDefaultsPlugin.SHARD_INPUT].startsWith("2/2 ")
+        test.candidateClassFiles.files*.name as Set == ["ASpec.class", "BSpec.class"] as Set
+    }
+
+
+    def "without an index every test runs, and the selection is an input of the task"() {
+        project.plugins.apply("java")
+        project.plugins.apply(TestDefaultsPlugin.PLUGIN_ID)
+        TestDefaultsPlugin.testDefaultsExtension(project).impactAnalysis = true
+
+        when:
+        project.evaluate()
+        def test = project.tasks.getByName("test") as Test
+
+        then:
+        test.inputs.properties[TestImpact.SELECTION_INPUT] == TestImpact.FULL_RUN
+    }
+
+
+    static void classFile(File classesDir, String path) {
+        def file = new File(classesDir, path)
+        file.parentFile.mkdirs()
+        file.bytes = new byte[0]
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing
+
+import com.mooregreatsoftware.gradle.bytecode.ClassReferences
+import com.mooregreatsoftware.gradle.testing.TestImpactIndex.ClassFile
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class TestImpactIndexSpec extends Specification {
+
+    static File classFile(Class type) {
+        new File(type.getResource(type.simpleName + ".class").toURI())
+    }
+
+    def classFiles = [TestImpactIndex, ClassReferences, TestHistory].collectEntries { [(it.name): ClassFile.of(classFile(it))] }
+
+
+    def "a class is affected by a change to a class it uses"() {
+        def index = new TestImpactIndex()
+        index.update(classFiles)
+
+        expect:
+        index.unaffectedClasses([ClassReferences.name] as Set) == [TestHistory.name] as Set
+        index.unaffectedClasses([TestHistory.name] as Set) == [ClassReferences.name, TestImpactIndex.name] as Set
+    }
+
+
+    def "nothing is known to be unaffected when a changed class isn't in the index"() {
+        def index = new TestImpactIndex()
+        index.update(classFiles)
+
+        expect:
+        index.unaffectedClasses([ClassReferences.name, "com.example.NewClass"] as Set) == null
+    }
+
+
+    def "classes in jars are indexed too"() {
+        def jar = File.createTempFile("classes", ".jar")
+        new JarOutputStream(jar.newOutputStream()).withCloseable { out ->
+            out.putNextEntry(new JarEntry("com/mooregreatsoftware/gradle/bytecode/ClassReferences.class"))
+            out.write(classFile(ClassReferences).bytes)
+            out.closeEntry()
+        }
+        def index = new TestImpactIndex()
+
+        when:
+        def read = index.update([(TestImpactIndex.name): classFiles[TestImpactIndex.name],
+                                 (ClassReferences.name): ClassFile.inJar(jar, "com/mooregreatsoftware/gradle/bytecode/ClassReferences.class")])
+
+        then:
+        read == 2
+        index.unaffectedClasses([ClassReferences.name] as Set) == [] as Set
+
+        cleanup:
+        jar.delete()
+    }
+
+
+    def "the index is saved compactly and only changed classes are read again"() {
+        def file = File.createTempFile("impact", ".gz")
+        def index = new TestImpactIndex()
+
+        when:
+        def read = index.update(classFiles)
+        index.recordRun(false)
+        index.save(file)
+        def loaded = TestImpactIndex.load(file)
+
+        then:
+        read == 3
+        loaded.runsSinceFullRun() == 1
+        loaded.update(classFiles) == 0
+        loaded.unaffectedClasses([ClassReferences.name] as Set) == [TestHistory.name] as Set
+
+        when:
+        loaded.update(classFiles.findAll { it.key != TestHistory.name })
+
+        then:
+        loaded.unaffectedClasses([TestHistory.name] as Set) == null
+
+        cleanup:
+        file.delete()
+    }
+
+
+    def "an unreadable index is empty"() {
+        def file = File.createTempFile("impact", ".gz")
+        file.text = "garbage"
+
+        expect:
+        TestImpactIndex.load(file).isEmpty()
+
+        cleanup:
+        file.delete()
+    }
+
+
+    def "changed source files map to their outermost classes"() {
+        def main = Paths.get("/work/core/src/main/java")
+        def kotlin = Paths.get("/work/core/src/main/kotlin")
+        def resources = Paths.get("/work/core/src/main/resources")
+        def dirs = [main, kotlin, resources]
+
+        expect:
+        TestImpact.classNames([main.resolve("com/example/Util.java"), Paths.get("/work/README.md")], dirs) ==
+            ["com.example.Util"] as Set
+        TestImpact.classNames([kotlin.resolve("com/example/Extensions.kt")], dirs) ==
+            ["com.example.Extensions", "com.example.ExtensionsKt"] as Set
+        TestImpact.classNames([resources.resolve("com/example/messages.properties")], dirs) == null
+    }
+
+
+    def "a changed build script means every test runs"() {
+        def dirs = [Paths.get("/work/core/src/main/java")]
+
+        expect:
+        TestImpact.classNames([Paths.get("/work/core/build.gradle")], dirs) == null
+        TestImpact.classNames([Paths.get("/work/core/gradle.properties")], dirs) == null
+        TestImpact.classNames([Paths.get("/work/docs/index.adoc")], dirs) == [] as Set
+    }
+
+
+    def "the class files come from the classpath's directories, and from the jars under the build directories"() {
+        def root = Files.createTempDirectory("impact")
+        def classesDir = root.resolve("build/classes/test")
+        Files.createDirectories(classesDir.resolve("com/example"))
+        Files.copy(classFile(TestHistory).toPath(), classesDir.resolve("com/example/UtilSpec.class"))
+        def buildJar = root.resolve("build/libs/core.jar").toFile()
+        def otherJar = root.resolve("libs/other.jar").toFile()
+        [buildJar, otherJar].each { jar ->
+            jar.parentFile.mkdirs()
+            new JarOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+                out.putNextEntry(new JarEntry("com/example/${jar.name - '.jar'}/Util.class"))
+                out.write(classFile(TestHistory).bytes)
+            }
+        }
+
+        when:
+        def classFiles = TestImpact.classFiles([classesDir.toFile(), buildJar, otherJar], [root.resolve("build").toFile()])
+
+        then:
+        classFiles.keySet() == ["com.example.UtilSpec", "com.example.core.Util"] as Set
+
+        cleanup:
+        root?.toFile()?.deleteDir()
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.testing
+
+import org.gradle.api.GradleException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TestScheduleSpec extends Specification {
+
+    def "forks beyond what the longest class allows don't help"() {
+        expect:
+        TestSchedule.usefulForks([Slow: 1000L, A: 100L, B: 100L]) == 2
+        TestSchedule.usefulForks([A: 100L, B: 100L, C: 100L, D: 100L]) == 4
+        TestSchedule.usefulForks([:]) == Integer.MAX_VALUE
+    }
+
+
+    def "each class is in exactly one shard"() {
+        def classNames = (1..200).collect { "com.example.Class${it}Spec".toString() }
+        def shards = (1..3).collect { TestSchedule.Shard.parse("$it/3") }
+
+        expect:
+        classNames.every { className -> shards.count { it.includes(className) } == 1 }
+        shards.every { shard -> classNames.count { shard.includes(it) } > 40 }
+    }
+
+
+    def "balancing the shards evens out their total durations"() {
+        def durations = [A: 100L, B: 90L, C: 60L, D: 50L, E: 40L, F: 30L, G: 20L, H: 10L]
+
+        when:
+        def assignments = TestSchedule.balance(durations, 2)
+        def totals = (1..2).collect { shard -> durations.findAll { assignments[it.key] == shard }.values().sum() }
+
+        then:
+        totals == [200L, 200L]
+        // the longest classes are placed first, so they end up in different shards
+        assignments.A != assignments.B
+    }
+
+
+    def "balanced shards use the durations, and fall back to the hash for classes without one"() {
+        def durations = [Slow: 1000L, A: 100L, B: 100L, C: 100L]
+        def shards = (1..2).collect { TestSchedule.Shard.parse("$it/2").withDurations(durations) }
+        def classNames = durations.keySet() + (1..50).collect { "com.example.New${it}Spec".toString() }
+
+        expect:
+        classNames.every { className -> shards.count { it.includes(className) } == 1 }
+        shards[0].includes("Slow")
+        ["A", "B", "C"].every { shards[1].includes(it) }
+        shards[0].inputValue() != shards[1].inputValue()
+        shards[0].inputValue() == TestSchedule.Shard.parse("1/2").withDurations(durations).inputValue()
+        TestSchedule.Shard.parse("1/2").inputValue() == "1/2"
+    }
+
+
+    @Unroll
+    def "\"#value\" is not a valid shard"() {
+        when:
+        TestSchedule.Shard.parse(value)
+
+        then:
+        thrown(GradleException)
+
+        where:
+        value << ["0/2", "3/2", "1", "a/b"]
+    }
+
+
+    def "no value means no shard"() {
+        expect:
+        TestSchedule.Shard.parse(null) == null
+        TestSchedule.Shard.parse(" ") == null
+        TestSchedule.Shard.parse("2/4").toString() == "2/4"
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util
+
+import nebula.test.ProjectSpec
+import org.gradle.testfixtures.ProjectBuilder
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+class BuildStateSpec extends ProjectSpec {
+
+    def "a value is only created once, even when asked for by several threads at the same time"() {
+        def created = new AtomicInteger()
+        def start = new CountDownLatch(1)
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def futures = (1..8).collect {
+            executor.submit({
+                start.await()
+                BuildState.buildState(project, "key", { created.incrementAndGet(); new Object() } as Supplier)
+            } as Callable)
+        }
+        start.countDown()
+        def values = futures.collect { it.get() }
+
+        then:
+        created.get() == 1
+        values.unique().size() == 1
+
+        cleanup:
+        executor?.shutdown()
+    }
+
+
+    def "a value being created doesn't hold up the other values"() {
+        def creating = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def executor = Executors.newSingleThreadExecutor()
+
+        when:
+        def slow = executor.submit({
+            BuildState.buildState(project, "slow", { creating.countDown(); release.await(); "slow" } as Supplier)
+        } as Callable)
+        creating.await()
+        def fast = BuildState.buildState(project, "fast", { "fast" } as Supplier)
+        release.countDown()
+
+        then:
+        fast == "fast"
+        slow.get() == "slow"
+
+        cleanup:
+        release.countDown()
+        executor?.shutdown()
+    }
+
+
+    def "a creator can ask for other state"() {
+        expect:
+        BuildState.buildState(project, "outer", {
+            BuildState.buildState(project, "inner", { "inner" } as Supplier) + " outer"
+        } as Supplier) == "inner outer"
+    }
+
+
+    def "null is remembered"() {
+        def created = new AtomicInteger()
+        def creator = { created.incrementAndGet(); null } as Supplier
+
+        when:
+        def first = BuildState.buildState(project, "key", creator)
+        def second = BuildState.buildState(project, "key", creator)
+
+        then:
+        first == null
+        second == null
+        created.get() == 1
+    }
+
+
+    def "project state is per project, build state is shared"() {
+        def subproject = addSubproject("sub")
+
+        expect:
+        BuildState.projectState(project, "key", { "root" } as Supplier) == "root"
+        BuildState.projectState(subproject, "key", { "sub" } as Supplier) == "sub"
+
+        and:
+        BuildState.buildState(project, "key", { "root" } as Supplier) == "root"
+        BuildState.buildState(subproject, "key", { "sub" } as Supplier) == "root"
+    }
+
+
+    def "each build has its own state"() {
+        def otherBuild = ProjectBuilder.builder().build()
+
+        expect:
+        BuildState.buildState(project, "key", { "this build" } as Supplier) == "this build"
+        BuildState.buildState(otherBuild, "key", { "other build" } as Supplier) == "other build"
+    }
+
+
+    def "readers of the javac settings get snapshots"() {
+        JavacUtils.registerAnnotationProcessorClassnames(project, ["a.Processor"])
+
+        when:
+        def snapshot = JavacUtils.getAnnotationProcessorClassNames(project)
+        JavacUtils.registerAnnotationProcessorClassnames(project, ["b.Processor"])
+
+        then:
+        snapshot == ["a.Processor"] as Set
+        JavacUtils.getAnnotationProcessorClassNames(project) == ["a.Processor", "b.Processor"] as Set
+
+        when:
+        snapshot.add("c.Processor")
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gradle.util
+
+import nebula.test.ProjectSpec
+import org.gradle.api.Task
+import org.gradle.api.plugins.BasePlugin
+
+import static com.mooregreatsoftware.gradle.util.TaskOrderingRules.allTasksShouldRunAfterClean
+import static com.mooregreatsoftware.gradle.util.TaskOrderingRules.taskOrderingRules
+
+class TaskOrderingRulesSpec extends ProjectSpec {
+
+    def "tasks created after the rule is declared run after clean"() {
+        project.plugins.apply(BasePlugin)
+        allTasksShouldRunAfterClean(project)
+
+        when:
+        def later = project.tasks.create("later")
+
+        then:
+        shouldRunAfter(later) == ["clean"] as Set
+        shouldRunAfter(project.tasks.getByName("clean")).isEmpty()
+    }
+
+
+    def "tasks created before the rule is declared run after clean too"() {
+        project.plugins.apply(BasePlugin)
+        def earlier = project.tasks.create("earlier")
+
+        when:
+        allTasksShouldRunAfterClean(project)
+
+        then:
+        shouldRunAfter(earlier) == ["clean"] as Set
+    }
+
+
+    def "rules are only evaluated when the task graph asks"() {
+        project.plugins.apply(BasePlugin)
+        def evaluated = []
+        taskOrderingRules(project).shouldRunAfter("publishAfterBuild", "build", { Task task ->
+            evaluated << task.name
+            task.group == "publishing"
+        })
+
+        def publishTask = project.tasks.create("publishSomething")
+
+        expect:
+        evaluated.isEmpty()
+
+        when:
+        // group is commonly set after the task has been created
+        publishTask.group = "publishing"
+
+        then:
+        shouldRunAfter(publishTask) == ["build"] as Set
+        evaluated == ["publishSomething"]
+    }
+
+
+    def "registering a rule twice does not duplicate it"() {
+        project.plugins.apply(BasePlugin)
+        allTasksShouldRunAfterClean(project)
+        allTasksShouldRunAfterClean(project)
+
+        when:
+        def task = project.tasks.create("aTask")
+
+        then:
+        task.shouldRunAfter.getDependencies(task).size() == 1
+    }
+
+
+    static Set<String> shouldRunAfter(Task task) {
+        task.shouldRunAfter.getDependencies(task).collect { it.name } as Set
+    }
+
+}